@@ -0,0 +1,38 @@
+package aws.benchmark;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Generates invoice XML documents of a given size: a header with the {@code date} and {@code time} tags
+ * followed by as many line items as needed.
+ */
+
+class InvoiceXml {
+
+    static byte[] generate(int targetBytes) {
+        StringBuilder xml = new StringBuilder(targetBytes + 512);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<invoice>\n")
+                .append("  <header>\n")
+                .append("    <number>INV-2019-000123</number>\n")
+                .append("    <date>2019/05/01</date>\n")
+                .append("    <time>2019/05/01 10:15:30</time>\n")
+                .append("    <customer>ACME Corporation</customer>\n")
+                .append("  </header>\n")
+                .append("  <items>\n");
+        int line = 0;
+        while (xml.length() < targetBytes) {
+            line++;
+            xml.append("    <item>\n")
+                    .append("      <line>").append(line).append("</line>\n")
+                    .append("      <sku>SKU-").append(100000 + line).append("</sku>\n")
+                    .append("      <description>Widget, standard size &amp; colour</description>\n")
+                    .append("      <quantity>").append(line % 7 + 1).append("</quantity>\n")
+                    .append("      <price>").append(line % 100).append(".99</price>\n")
+                    .append("    </item>\n");
+        }
+        xml.append("  </items>\n")
+                .append("</invoice>\n");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
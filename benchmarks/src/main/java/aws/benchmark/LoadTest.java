@@ -0,0 +1,168 @@
+package aws.benchmark;
+
+import aws.dynamoDB.service.DynamoService;
+import aws.dynamoDB.util.InvoiceStatus;
+import aws.local.FaultInjector;
+import aws.local.InMemoryDynamoDB;
+import aws.local.InMemoryS3;
+import aws.local.InMemorySQS;
+import aws.metrics.Metrics;
+import aws.metrics.MetricsSnapshot;
+import aws.s3.service.S3Service;
+import aws.sqs.service.SQSConsumer;
+import aws.sqs.service.SQSService;
+import aws.sqs.util.SQSMessage;
+import aws.sqs.util.SQSUtil;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.google.common.util.concurrent.RateLimiter;
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+
+import java.io.ByteArrayInputStream;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives the upload -> message -> status -> move flow against the in-memory stand-ins at a target rate
+ * and prints throughput and latency percentiles of the flow and of every service operation.
+ * <p>
+ * Producers upload an invoice to {@code incoming/}, create its DynamoDB item and send the SQS message;
+ * an {@link SQSConsumer} reads the invoice fields, sets the status to MOVING, moves the file to {@code moved/}
+ * and sets the status to UPLOADED. Options, all optional:
+ * <pre>
+ * --rate=200 --duration=30 --size=4096 --producers=16 --workers=32
+ * --latency=5 --jitter=5 --dynamodb-capacity=0 --sqs-capacity=0 --s3-capacity=0 --throttle-probability=0
+ * </pre>
+ * Run with {@code java -cp benchmarks/target/benchmarks.jar aws.benchmark.LoadTest --rate=500}.
+ */
+
+public class LoadTest {
+
+    private static final String REGION = "local";
+    private static final String BUCKET = "invoices";
+    private static final String TABLE = "invoices";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        double rate = Double.parseDouble(options.getOrDefault("rate", "200"));
+        int durationSeconds = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int size = Integer.parseInt(options.getOrDefault("size", "4096"));
+        int producers = Integer.parseInt(options.getOrDefault("producers", "16"));
+        int workers = Integer.parseInt(options.getOrDefault("workers", "32"));
+
+        LogManager.getRootLogger().setLevel(Level.WARN);
+
+        InMemoryS3 s3 = new InMemoryS3();
+        InMemoryDynamoDB dynamoDB = new InMemoryDynamoDB();
+        InMemorySQS sqs = new InMemorySQS();
+        dynamoDB.createTable(TABLE, "fileName", "date");
+        String queueUrl = sqs.createQueue("invoices").getQueueUrl();
+        sqs.createQueue("invoices-dlq");
+        configureFaults(options, s3, dynamoDB, sqs);
+
+        S3Service s3Service = new S3Service(REGION, s3);
+        DynamoService dynamoService = new DynamoService(REGION, TABLE, dynamoDB);
+        SQSService sqsService = new SQSService(REGION, queueUrl, "invoices-dlq", sqs);
+
+        byte[] invoice = InvoiceXml.generate(size);
+        Map<String, Long> startTimes = new ConcurrentHashMap<>();
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        SQSConsumer consumer = sqsService.createConsumer(message -> {
+            SQSMessage sqsMessage = SQSUtil.parseMessage(message);
+            String sourceKey = SQSUtil.getSourceKey("incoming", sqsMessage);
+            s3Service.getInvoiceFields(BUCKET, sourceKey);
+            dynamoService.updateInvoiceStatus(sqsMessage.getFileName(), sqsMessage.getDate(), InvoiceStatus.MOVING.toString());
+            s3Service.moveFile(BUCKET, sourceKey, SQSUtil.getDestinationKey("moved", sqsMessage));
+            dynamoService.updateInvoiceStatus(sqsMessage.getFileName(), sqsMessage.getDate(), InvoiceStatus.UPLOADED.toString());
+
+            Long start = startTimes.remove(sqsMessage.getFileName());
+            if (start != null) {
+                Metrics.get("loadtest.flow").record(System.nanoTime() - start, true, invoice.length);
+                completed.incrementAndGet();
+            }
+        });
+        consumer.setWorkerThreads(workers);
+        consumer.setMaxInFlight(workers * 4);
+        consumer.start();
+
+        System.out.printf("Running %d s at %.0f invoices/s (%d bytes each)%n", durationSeconds, rate, size);
+        ExecutorService producerPool = Executors.newFixedThreadPool(producers);
+        RateLimiter limiter = RateLimiter.create(rate);
+        long begin = System.nanoTime();
+        long end = begin + TimeUnit.SECONDS.toNanos(durationSeconds);
+        while (System.nanoTime() < end) {
+            limiter.acquire();
+            String fileName = "invoice-" + started.incrementAndGet() + ".xml";
+            producerPool.execute(() -> {
+                try {
+                    startTimes.put(fileName, System.nanoTime());
+                    upload(s3, fileName, invoice);
+                    LocalDateTime time = LocalDateTime.now();
+                    String date = "2019/05/01";
+                    dynamoService.createInvoiceItem(fileName, BUCKET, date, time, InvoiceStatus.COPIED.toString());
+                    sqsService.sendMessage(SQSUtil.generateMessage(BUCKET, fileName, date, time));
+                } catch (Exception e) {
+                    startTimes.remove(fileName);
+                    failed.incrementAndGet();
+                }
+            });
+        }
+        producerPool.shutdown();
+        producerPool.awaitTermination(1, TimeUnit.MINUTES);
+
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!startTimes.isEmpty() && System.nanoTime() < drainDeadline) {
+            Thread.sleep(100);
+        }
+        double elapsedSeconds = (System.nanoTime() - begin) / 1e9;
+        consumer.stop();
+
+        System.out.printf("Started %d, completed %d, failed to start %d, unfinished %d, consumer failures %d%n",
+                started.get(), completed.get(), failed.get(), startTimes.size(), consumer.getFailedCount());
+        System.out.printf("Throughput: %.1f invoices/s over %.1f s%n", completed.get() / elapsedSeconds, elapsedSeconds);
+        for (MetricsSnapshot snapshot : Metrics.snapshot()) {
+            System.out.println(snapshot);
+        }
+    }
+
+    private static void upload(InMemoryS3 s3, String fileName, byte[] invoice) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType("application/xml");
+        s3.putObject(new PutObjectRequest(BUCKET, "incoming/" + fileName, new ByteArrayInputStream(invoice), metadata));
+    }
+
+    private static void configureFaults(Map<String, String> options, InMemoryS3 s3, InMemoryDynamoDB dynamoDB, InMemorySQS sqs) {
+        long latency = Long.parseLong(options.getOrDefault("latency", "5"));
+        long jitter = Long.parseLong(options.getOrDefault("jitter", "5"));
+        double throttleProbability = Double.parseDouble(options.getOrDefault("throttle-probability", "0"));
+        for (FaultInjector faults : new FaultInjector[]{s3.getFaults(), dynamoDB.getFaults(), sqs.getFaults()}) {
+            faults.setLatencyMillis(latency);
+            faults.setLatencyJitterMillis(jitter);
+            faults.setThrottleProbability(throttleProbability);
+        }
+        s3.getFaults().setMaxRequestsPerSecond(Double.parseDouble(options.getOrDefault("s3-capacity", "0")));
+        dynamoDB.getFaults().setMaxRequestsPerSecond(Double.parseDouble(options.getOrDefault("dynamodb-capacity", "0")));
+        sqs.getFaults().setMaxRequestsPerSecond(Double.parseDouble(options.getOrDefault("sqs-capacity", "0")));
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Options must be given as --name=value: " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,75 @@
+package aws.benchmark;
+
+import aws.sqs.util.SQSBatch;
+import aws.sqs.util.SQSMessage;
+import aws.sqs.util.SQSUtil;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQS message serialization ({@code SQSUtil.generateMessage}) and body parsing,
+ * both for a single body and for a full 10-record event.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SQSMessageBenchmark {
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2019, 5, 1, 10, 15, 30);
+
+    private String body;
+    private SQSEvent event;
+
+    @Setup
+    public void setUp() throws Exception {
+        body = SQSUtil.generateMessage("invoices-bucket", "invoice-000123.xml", "2019/05/01", TIME);
+
+        List<SQSEvent.SQSMessage> records = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            SQSEvent.SQSMessage record = new SQSEvent.SQSMessage();
+            record.setMessageId("message-" + i);
+            record.setBody(SQSUtil.generateMessage("invoices-bucket", "invoice-00012" + i + ".xml", "2019/05/01", TIME));
+            records.add(record);
+        }
+        event = new SQSEvent();
+        event.setRecords(records);
+    }
+
+    @Benchmark
+    public String generateMessage() throws Exception {
+        return SQSUtil.generateMessage("invoices-bucket", "invoice-000123.xml", "2019/05/01", TIME);
+    }
+
+    @Benchmark
+    public SQSMessage parseMessage() throws Exception {
+        return SQSUtil.parseMessage(body);
+    }
+
+    @Benchmark
+    public SQSBatch parseEvent() throws Exception {
+        return SQSUtil.parseMessages(event);
+    }
+
+    @Benchmark
+    public String legacyFieldGetters() throws Exception {
+        return SQSUtil.getBucketName(event) + SQSUtil.getFileName(event) + SQSUtil.getDate(event);
+    }
+}
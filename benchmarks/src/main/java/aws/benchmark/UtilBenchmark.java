@@ -0,0 +1,67 @@
+package aws.benchmark;
+
+import aws.dynamoDB.service.DynamoService;
+import aws.s3.util.S3Util;
+import com.amazonaws.services.lambda.runtime.events.S3Event;
+import com.amazonaws.services.s3.event.S3EventNotification;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Small per-event helpers: {@code DynamoService.formatTime}, {@code S3Util.getFileKey} URL decoding
+ * and {@code S3Util.checkFileExtensionIsXml}.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UtilBenchmark {
+
+    private static final String EVENT_JSON = "{\"Records\":[{"
+            + "\"eventVersion\":\"2.0\",\"eventSource\":\"aws:s3\",\"awsRegion\":\"eu-west-1\","
+            + "\"eventTime\":\"2019-05-01T10:15:30.000Z\",\"eventName\":\"ObjectCreated:Put\","
+            + "\"s3\":{\"s3SchemaVersion\":\"1.0\",\"configurationId\":\"config\","
+            + "\"bucket\":{\"name\":\"invoices-bucket\",\"arn\":\"arn:aws:s3:::invoices-bucket\"},"
+            + "\"object\":{\"key\":\"uploaded/invoice+2019%2F05+%23123.xml\",\"size\":2048,"
+            + "\"eTag\":\"etag\",\"versionId\":\"1\",\"sequencer\":\"0055AED6DCD90281E5\"}}}]}";
+
+    private final LocalDateTime time = LocalDateTime.of(2019, 5, 1, 10, 15, 30);
+    private S3Event s3Event;
+
+    @Setup
+    public void setUp() {
+        S3EventNotification notification = S3EventNotification.parseJson(EVENT_JSON);
+        s3Event = new S3Event(notification.getRecords());
+    }
+
+    @Benchmark
+    public String formatTime() {
+        return DynamoService.formatTime(time);
+    }
+
+    @Benchmark
+    public String getFileKey() throws Exception {
+        return S3Util.getFileKey(s3Event);
+    }
+
+    @Benchmark
+    public String checkFileExtensionIsXml() throws Exception {
+        String fileName = "invoice-000123.xml";
+        S3Util.checkFileExtensionIsXml(fileName);
+        return fileName;
+    }
+}
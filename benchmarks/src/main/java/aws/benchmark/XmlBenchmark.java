@@ -0,0 +1,80 @@
+package aws.benchmark;
+
+import aws.local.InMemoryS3;
+import aws.s3.service.S3Service;
+import aws.s3.util.XmlFields;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Date/time extraction from invoice XML of several sizes.
+ * {@code domDateAndTime} goes through {@code S3Service.getXmlContent} (a DOM per document),
+ * {@code streamingDateAndTime} through the single-pass {@code S3Service.getInvoiceFields}.
+ * The object is served by an {@link InMemoryS3}, so no network time is measured.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XmlBenchmark {
+
+    private static final String BUCKET = "invoices-bucket";
+    private static final String KEY = "invoice.xml";
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
+
+    @Param({"1024", "65536", "1048576"})
+    public int size;
+
+    private S3Service s3Service;
+
+    @Setup
+    public void setUp() {
+        byte[] xml = InvoiceXml.generate(size);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType("application/xml");
+        metadata.setContentLength(xml.length);
+
+        InMemoryS3 s3 = new InMemoryS3();
+        s3.putObject(new PutObjectRequest(BUCKET, KEY, new ByteArrayInputStream(xml), metadata));
+        s3Service = new S3Service("eu-west-1", s3);
+    }
+
+    @Benchmark
+    public Document domParse() throws Exception {
+        return s3Service.getXmlContent(BUCKET, KEY);
+    }
+
+    @Benchmark
+    public LocalDateTime domDateAndTime() throws Exception {
+        Document doc = s3Service.getXmlContent(BUCKET, KEY);
+        String date = doc.getElementsByTagName(XmlFields.DATE_TAG).item(0).getTextContent();
+        String time = doc.getElementsByTagName(XmlFields.TIME_TAG).item(0).getTextContent();
+        return date.isEmpty() ? null : LocalDateTime.parse(time, TIME_FORMATTER);
+    }
+
+    @Benchmark
+    public LocalDateTime streamingDateAndTime() throws Exception {
+        XmlFields fields = s3Service.getInvoiceFields(BUCKET, KEY);
+        return fields.getDate().isEmpty() ? null : fields.getTime();
+    }
+}
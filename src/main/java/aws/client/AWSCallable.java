@@ -0,0 +1,12 @@
+package aws.client;
+
+import exception.AWSException;
+
+/**
+ * A blocking service call that may fail with {@link AWSException}, run asynchronously by {@link AsyncSupport}.
+ */
+
+@FunctionalInterface
+public interface AWSCallable<T> {
+    T call() throws AWSException;
+}
@@ -0,0 +1,115 @@
+package aws.client;
+
+import aws.metrics.SdkMetricsCollector;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * This is a registry of AWS clients shared by {@link aws.s3.service.S3Service}, {@link aws.dynamoDB.service.DynamoService}
+ * and {@link aws.sqs.service.SQSService}.
+ * One client, with its connection pool, is built per service and region and reused by every service instance,
+ * so creating a service in a Lambda handler does not create a new client.
+ * {@link #setClientSettings(ClientSettings)} applies to clients built after the call.
+ * Every client reports request latency, retries and throttling errors to {@link aws.metrics.Metrics}.
+ * The DynamoDB and SQS clients don't retry throttling errors themselves; their {@link ThrottleGuard}s do.
+ */
+
+public class AWSClientRegistry {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(AWSClientRegistry.class);
+
+    private static final Map<String, Object> CLIENTS = new ConcurrentHashMap<>();
+
+    private static final SdkMetricsCollector METRICS_COLLECTOR = new SdkMetricsCollector();
+
+    private static volatile ClientSettings clientSettings = new ClientSettings();
+
+    public static AmazonS3 getS3Client(String region) {
+        return getClient("s3", region, r -> AmazonS3ClientBuilder.standard()
+                .withClientConfiguration(clientSettings.toClientConfiguration())
+                .withMetricsCollector(METRICS_COLLECTOR)
+                .withRegion(r)
+                .build());
+    }
+
+    public static AmazonDynamoDB getDynamoDbClient(String region) {
+        return getClient("dynamodb", region, r -> AmazonDynamoDBClientBuilder.standard()
+                .withClientConfiguration(clientSettings.toClientConfiguration().withRetryPolicy(
+                        Throttling.withoutThrottlingRetries(PredefinedRetryPolicies.getDynamoDBDefaultRetryPolicy())))
+                .withMetricsCollector(METRICS_COLLECTOR)
+                .withRegion(r)
+                .build());
+    }
+
+    public static AmazonSQS getSQSClient(String region) {
+        return getClient("sqs", region, r -> AmazonSQSClientBuilder.standard()
+                .withClientConfiguration(clientSettings.toClientConfiguration().withRetryPolicy(
+                        Throttling.withoutThrottlingRetries(PredefinedRetryPolicies.getDefaultRetryPolicy())))
+                .withMetricsCollector(METRICS_COLLECTOR)
+                .withRegion(r)
+                .build());
+    }
+
+    /**
+     * Registers the client returned for the region from now on, e.g. an in-memory stand-in from {@code aws.local}.
+     * Services created with a region use it from their next call, since they look the client up on every call;
+     * services created with an injected client, consumers and buffered senders keep theirs.
+     */
+    public static void setS3Client(String region, AmazonS3 client) {
+        CLIENTS.put("s3:" + region, client);
+    }
+
+    public static void setDynamoDbClient(String region, AmazonDynamoDB client) {
+        CLIENTS.put("dynamodb:" + region, client);
+    }
+
+    public static void setSQSClient(String region, AmazonSQS client) {
+        CLIENTS.put("sqs:" + region, client);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T getClient(String service, String region, Function<String, T> factory) {
+        return (T) CLIENTS.computeIfAbsent(service + ":" + region, key -> {
+            LOGGER.debug("Building {} client for region {}", service, region);
+            return factory.apply(region);
+        });
+    }
+
+    public static ClientSettings getClientSettings() {
+        return clientSettings;
+    }
+
+    public static void setClientSettings(ClientSettings clientSettings) {
+        AWSClientRegistry.clientSettings = clientSettings;
+    }
+
+    /**
+     * Shuts down all registered clients; the next call builds new ones with the current settings.
+     * Services created with a region only look their client up on every call and continue with the new clients.
+     * Injected clients are not affected. Stop {@link aws.sqs.service.SQSConsumer}s and disable SQS buffering
+     * before the call, since they keep the client they were started with.
+     */
+    public static void shutdown() {
+        for (Object client : CLIENTS.values()) {
+            if (client instanceof AmazonS3) {
+                ((AmazonS3) client).shutdown();
+            } else if (client instanceof AmazonDynamoDB) {
+                ((AmazonDynamoDB) client).shutdown();
+            } else if (client instanceof AmazonSQS) {
+                ((AmazonSQS) client).shutdown();
+            }
+        }
+        CLIENTS.clear();
+    }
+}
@@ -0,0 +1,111 @@
+package aws.client;
+
+/**
+ * Token bucket whose rate follows throttling responses (additive increase, multiplicative decrease).
+ * The bucket is open until {@link #onThrottle()} is first called; from then on it holds at most one second of tokens.
+ * Callers that find the bucket empty reserve a token and sleep until it is due, so waiting callers are served in order.
+ */
+
+public class AdaptiveRateLimiter {
+
+    private static final long MEASURE_WINDOW_NANOS = 500_000_000L;
+    private static final double MEASURE_SMOOTHING = 0.8;
+    private static final long THROTTLE_GRACE_NANOS = 100_000_000L;
+
+    private final ThrottleSettings settings;
+
+    private boolean enabled;
+    private double rate;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private long lastThrottle;
+
+    private double measuredRate;
+    private long windowStart = System.nanoTime();
+    private int windowRequests;
+
+    public AdaptiveRateLimiter(ThrottleSettings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Blocks until a request may be sent.
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (!enabled) {
+            return;
+        }
+        double limit = settings.getMaxRate() > 0 ? settings.getMaxRate() : Double.MAX_VALUE;
+        rate = Math.min(limit, rate + settings.getIncreasePerSecond() / Math.max(rate, 1));
+    }
+
+    public synchronized void onThrottle() {
+        long now = System.nanoTime();
+        if (enabled && now - lastThrottle < THROTTLE_GRACE_NANOS) {
+            return;
+        }
+        lastThrottle = now;
+        double sendingRate = Math.max(currentRate(now), settings.getMinRate());
+        double base = enabled ? Math.min(rate, sendingRate) : sendingRate;
+        rate = Math.max(settings.getMinRate(), base * settings.getDecreaseFactor());
+        if (settings.getMaxRate() > 0) {
+            rate = Math.min(rate, settings.getMaxRate());
+        }
+        if (!enabled) {
+            enabled = true;
+            tokens = 0;
+            lastRefill = now;
+        } else {
+            tokens = Math.min(tokens, 0);
+        }
+    }
+
+    /**
+     * @return current rate in requests per second, or 0 while the limiter is open
+     */
+    public synchronized double getRate() {
+        return enabled ? rate : 0;
+    }
+
+    public synchronized double getMeasuredRate() {
+        return measuredRate;
+    }
+
+    private synchronized long reserve() {
+        long now = System.nanoTime();
+        measure(now);
+        if (!enabled) {
+            return 0;
+        }
+        tokens = Math.min(Math.max(rate, 1), tokens + (now - lastRefill) * rate / 1e9);
+        lastRefill = now;
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) (-tokens / rate * 1e9);
+    }
+
+    private double currentRate(long now) {
+        if (measuredRate > 0) {
+            return measuredRate;
+        }
+        long elapsed = Math.max(now - windowStart, 1_000_000);
+        return windowRequests * 1e9 / elapsed;
+    }
+
+    private void measure(long now) {
+        windowRequests++;
+        long elapsed = now - windowStart;
+        if (elapsed >= MEASURE_WINDOW_NANOS) {
+            double windowRate = windowRequests * 1e9 / elapsed;
+            measuredRate = measuredRate == 0 ? windowRate : MEASURE_SMOOTHING * windowRate + (1 - MEASURE_SMOOTHING) * measuredRate;
+            windowStart = now;
+            windowRequests = 0;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package aws.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This is a util class that runs blocking service calls on an executor and returns them as {@link CompletableFuture}s.
+ * A failed call completes the future exceptionally with the original {@link exception.AWSException}.
+ * Services use the shared default executor unless they are given their own.
+ */
+
+public class AsyncSupport {
+
+    public static final int DEFAULT_THREADS = 32;
+
+    private static volatile ExecutorService defaultExecutor;
+
+    /**
+     * Runs {@code callable} on {@code executor}, or on {@link #getDefaultExecutor()} when it is null.
+     * This is how the {@code *Async} methods of the services run, with the executor set by their {@code setAsyncExecutor}.
+     */
+    public static <T> CompletableFuture<T> supply(Executor executor, AWSCallable<T> callable) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return callable.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor == null ? getDefaultExecutor() : executor);
+    }
+
+    /**
+     * @return the shared executor of {@value #DEFAULT_THREADS} daemon threads, created on first use
+     */
+    public static ExecutorService getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            synchronized (AsyncSupport.class) {
+                if (defaultExecutor == null) {
+                    AtomicInteger counter = new AtomicInteger();
+                    defaultExecutor = Executors.newFixedThreadPool(DEFAULT_THREADS, runnable -> {
+                        Thread thread = new Thread(runnable, "aws-async-" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return defaultExecutor;
+    }
+}
@@ -0,0 +1,132 @@
+package aws.client;
+
+import com.amazonaws.ClientConfiguration;
+
+/**
+ * This class holds the connection and retry settings applied to the AWS clients created by {@link AWSClientRegistry}.
+ * The defaults are the SDK defaults, except that TCP keep-alive is enabled
+ * and idle connections are kept for 60 seconds to be reused across invocations.
+ */
+
+public class ClientSettings {
+    private int maxConnections = ClientConfiguration.DEFAULT_MAX_CONNECTIONS;
+    private int connectionTimeout = ClientConfiguration.DEFAULT_CONNECTION_TIMEOUT;
+    private int socketTimeout = ClientConfiguration.DEFAULT_SOCKET_TIMEOUT;
+    private int requestTimeout = ClientConfiguration.DEFAULT_REQUEST_TIMEOUT;
+    private int clientExecutionTimeout = ClientConfiguration.DEFAULT_CLIENT_EXECUTION_TIMEOUT;
+    private long connectionMaxIdleMillis = 60_000;
+    private long connectionTTL = ClientConfiguration.DEFAULT_CONNECTION_TTL;
+    private boolean tcpKeepAlive = true;
+    private int maxErrorRetry = -1;
+    private boolean throttledRetries = ClientConfiguration.DEFAULT_THROTTLE_RETRIES;
+    private int maxConsecutiveRetriesBeforeThrottling = ClientConfiguration.DEFAULT_MAX_CONSECUTIVE_RETRIES_BEFORE_THROTTLING;
+
+    public ClientConfiguration toClientConfiguration() {
+        ClientConfiguration configuration = new ClientConfiguration()
+                .withMaxConnections(maxConnections)
+                .withConnectionTimeout(connectionTimeout)
+                .withSocketTimeout(socketTimeout)
+                .withRequestTimeout(requestTimeout)
+                .withClientExecutionTimeout(clientExecutionTimeout)
+                .withConnectionMaxIdleMillis(connectionMaxIdleMillis)
+                .withConnectionTTL(connectionTTL)
+                .withTcpKeepAlive(tcpKeepAlive)
+                .withThrottledRetries(throttledRetries)
+                .withMaxConsecutiveRetriesBeforeThrottling(maxConsecutiveRetriesBeforeThrottling);
+        if (maxErrorRetry >= 0) {
+            configuration.setMaxErrorRetry(maxErrorRetry);
+        }
+        return configuration;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    public void setConnectionTimeout(int connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    public int getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    public void setSocketTimeout(int socketTimeout) {
+        this.socketTimeout = socketTimeout;
+    }
+
+    public int getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public void setRequestTimeout(int requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    public int getClientExecutionTimeout() {
+        return clientExecutionTimeout;
+    }
+
+    public void setClientExecutionTimeout(int clientExecutionTimeout) {
+        this.clientExecutionTimeout = clientExecutionTimeout;
+    }
+
+    public long getConnectionMaxIdleMillis() {
+        return connectionMaxIdleMillis;
+    }
+
+    public void setConnectionMaxIdleMillis(long connectionMaxIdleMillis) {
+        this.connectionMaxIdleMillis = connectionMaxIdleMillis;
+    }
+
+    public long getConnectionTTL() {
+        return connectionTTL;
+    }
+
+    public void setConnectionTTL(long connectionTTL) {
+        this.connectionTTL = connectionTTL;
+    }
+
+    public boolean isTcpKeepAlive() {
+        return tcpKeepAlive;
+    }
+
+    public void setTcpKeepAlive(boolean tcpKeepAlive) {
+        this.tcpKeepAlive = tcpKeepAlive;
+    }
+
+    /**
+     * @return maximum number of SDK retries, or -1 for the default of each service
+     */
+    public int getMaxErrorRetry() {
+        return maxErrorRetry;
+    }
+
+    public void setMaxErrorRetry(int maxErrorRetry) {
+        this.maxErrorRetry = maxErrorRetry;
+    }
+
+    public boolean isThrottledRetries() {
+        return throttledRetries;
+    }
+
+    public void setThrottledRetries(boolean throttledRetries) {
+        this.throttledRetries = throttledRetries;
+    }
+
+    public int getMaxConsecutiveRetriesBeforeThrottling() {
+        return maxConsecutiveRetriesBeforeThrottling;
+    }
+
+    public void setMaxConsecutiveRetriesBeforeThrottling(int maxConsecutiveRetriesBeforeThrottling) {
+        this.maxConsecutiveRetriesBeforeThrottling = maxConsecutiveRetriesBeforeThrottling;
+    }
+}
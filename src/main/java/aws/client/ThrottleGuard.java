@@ -0,0 +1,131 @@
+package aws.client;
+
+import aws.metrics.Metrics;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Runs SDK calls against one table or queue through an {@link AdaptiveRateLimiter}.
+ * Throttling errors lower the rate and are retried with decorrelated jitter
+ * ({@code sleep = min(maxDelay, random(baseDelay, previousSleep * 3))}) up to {@code maxAttempts};
+ * other errors are rethrown at once. The same delays are used between resubmissions of unprocessed batch items,
+ * see {@link #backoff(long)}. Obtained with {@link Throttling#guard(String, String)}.
+ */
+
+public class ThrottleGuard {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ThrottleGuard.class);
+
+    private static final Set<String> THROTTLING_ERROR_CODES = new HashSet<>(Arrays.asList(
+            "ProvisionedThroughputExceededException", "ThrottlingException", "Throttling", "RequestLimitExceeded",
+            "RequestThrottled", "RequestThrottledException", "TooManyRequestsException", "SlowDown"));
+
+    private final String name;
+    private final ThrottleSettings settings;
+    private final AdaptiveRateLimiter limiter;
+
+    ThrottleGuard(String name, ThrottleSettings settings) {
+        this.name = name;
+        this.settings = settings;
+        this.limiter = new AdaptiveRateLimiter(settings);
+    }
+
+    public <T> T call(Supplier<T> call) {
+        long delay = settings.getBaseDelayMillis();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                limiter.acquire();
+                T result = call.get();
+                limiter.onSuccess();
+                return result;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AmazonClientException("Interrupted while waiting to call " + name, e);
+            } catch (AmazonServiceException e) {
+                if (!isThrottling(e)) {
+                    throw e;
+                }
+                onThrottle();
+                if (attempt >= settings.getMaxAttempts()) {
+                    LOGGER.error("{} still throttled after {} attempts: {}", name, attempt, e.getErrorCode());
+                    throw e;
+                }
+                delay = nextDelay(delay);
+                LOGGER.debug("{} throttled ({}), retrying in {} ms at {} requests/s", name, e.getErrorCode(), delay, limiter.getRate());
+                sleep(delay, e);
+            }
+        }
+    }
+
+    public void run(Runnable call) {
+        call(() -> {
+            call.run();
+            return null;
+        });
+    }
+
+    /**
+     * Reports a throttling signal that did not surface as an exception, e.g. unprocessed batch items.
+     */
+    public void onThrottle() {
+        limiter.onThrottle();
+        Metrics.get("throttle." + name).increment(1);
+    }
+
+    /**
+     * Waits before resubmitting unprocessed batch items, with the decorrelated jitter of throttled calls.
+     *
+     * @param previousDelay delay returned by the previous call for the same batch, or 0 for the first one
+     * @return the delay waited
+     */
+    public long backoff(long previousDelay) throws InterruptedException {
+        long delay = nextDelay(Math.max(previousDelay, settings.getBaseDelayMillis()));
+        Thread.sleep(delay);
+        return delay;
+    }
+
+    public void acquire() throws InterruptedException {
+        limiter.acquire();
+    }
+
+    public void onSuccess() {
+        limiter.onSuccess();
+    }
+
+    public static boolean isThrottling(Exception e) {
+        return e instanceof AmazonServiceException
+                && (THROTTLING_ERROR_CODES.contains(((AmazonServiceException) e).getErrorCode())
+                || ((AmazonServiceException) e).getStatusCode() == 429);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public AdaptiveRateLimiter getLimiter() {
+        return limiter;
+    }
+
+    private long nextDelay(long previous) {
+        long base = settings.getBaseDelayMillis();
+        long upper = Math.max(base + 1, previous * 3);
+        return Math.min(settings.getMaxDelayMillis(), ThreadLocalRandom.current().nextLong(base, upper));
+    }
+
+    private static void sleep(long millis, AmazonServiceException cause) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw cause;
+        }
+    }
+}
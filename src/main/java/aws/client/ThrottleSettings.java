@@ -0,0 +1,86 @@
+package aws.client;
+
+/**
+ * This class holds the client-side throttling settings of one table or queue, see {@link Throttling}.
+ * The rate limiter stays open until the first throttling error, then starts at the measured request rate
+ * reduced by {@code decreaseFactor} and grows again by {@code increasePerSecond} requests/s for every second without throttling.
+ * Rates are in requests per second; {@code maxRate} of 0 means no upper bound.
+ */
+
+public class ThrottleSettings {
+    private double minRate = 1;
+    private double maxRate = 0;
+    private double decreaseFactor = 0.7;
+    private double increasePerSecond = 5;
+    private int maxAttempts = 8;
+    private long baseDelayMillis = 25;
+    private long maxDelayMillis = 5000;
+
+    public ThrottleSettings copy() {
+        ThrottleSettings copy = new ThrottleSettings();
+        copy.minRate = minRate;
+        copy.maxRate = maxRate;
+        copy.decreaseFactor = decreaseFactor;
+        copy.increasePerSecond = increasePerSecond;
+        copy.maxAttempts = maxAttempts;
+        copy.baseDelayMillis = baseDelayMillis;
+        copy.maxDelayMillis = maxDelayMillis;
+        return copy;
+    }
+
+    public double getMinRate() {
+        return minRate;
+    }
+
+    public void setMinRate(double minRate) {
+        this.minRate = minRate;
+    }
+
+    public double getMaxRate() {
+        return maxRate;
+    }
+
+    public void setMaxRate(double maxRate) {
+        this.maxRate = maxRate;
+    }
+
+    public double getDecreaseFactor() {
+        return decreaseFactor;
+    }
+
+    public void setDecreaseFactor(double decreaseFactor) {
+        this.decreaseFactor = decreaseFactor;
+    }
+
+    public double getIncreasePerSecond() {
+        return increasePerSecond;
+    }
+
+    public void setIncreasePerSecond(double increasePerSecond) {
+        this.increasePerSecond = increasePerSecond;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getBaseDelayMillis() {
+        return baseDelayMillis;
+    }
+
+    public void setBaseDelayMillis(long baseDelayMillis) {
+        this.baseDelayMillis = baseDelayMillis;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public void setMaxDelayMillis(long maxDelayMillis) {
+        this.maxDelayMillis = maxDelayMillis;
+    }
+}
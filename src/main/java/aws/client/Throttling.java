@@ -0,0 +1,64 @@
+package aws.client;
+
+import com.amazonaws.retry.RetryPolicy;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This is a registry of {@link ThrottleGuard}s shared by all service instances, one per service and resource
+ * (DynamoDB table or SQS queue URL), so every caller of a table adapts to the same throttling signal.
+ * Settings can be given per resource with {@link #setSettings(String, String, ThrottleSettings)}
+ * before first use; other resources use {@link #getDefaultSettings()}.
+ * The DynamoDB and SQS clients of {@link AWSClientRegistry} leave throttling errors to the guards, see
+ * {@link #withoutThrottlingRetries(RetryPolicy)}, so a throttled request is sent at most {@code maxAttempts} times.
+ */
+
+public class Throttling {
+
+    private static final Map<String, ThrottleGuard> GUARDS = new ConcurrentHashMap<>();
+    private static final Map<String, ThrottleSettings> SETTINGS = new ConcurrentHashMap<>();
+
+    private static volatile ThrottleSettings defaultSettings = new ThrottleSettings();
+
+    public static ThrottleGuard guard(String service, String resource) {
+        String name = service + ":" + resource;
+        return GUARDS.computeIfAbsent(name, key -> new ThrottleGuard(key,
+                SETTINGS.getOrDefault(key, defaultSettings).copy()));
+    }
+
+    /**
+     * Sets the settings of one table or queue, replacing its guard and the rate it has learned.
+     */
+    public static void setSettings(String service, String resource, ThrottleSettings settings) {
+        String name = service + ":" + resource;
+        SETTINGS.put(name, settings.copy());
+        GUARDS.remove(name);
+    }
+
+    public static ThrottleSettings getDefaultSettings() {
+        return defaultSettings;
+    }
+
+    /**
+     * Applies to guards created after the call.
+     */
+    public static void setDefaultSettings(ThrottleSettings defaultSettings) {
+        Throttling.defaultSettings = defaultSettings;
+    }
+
+    /**
+     * @return {@code policy} that no longer retries throttling errors, so they reach the guard at once;
+     * other errors are retried as before
+     */
+    public static RetryPolicy withoutThrottlingRetries(RetryPolicy policy) {
+        RetryPolicy.RetryCondition condition = policy.getRetryCondition();
+        return new RetryPolicy((request, exception, retriesAttempted) -> !ThrottleGuard.isThrottling(exception)
+                && condition.shouldRetry(request, exception, retriesAttempted),
+                policy.getBackoffStrategy(), policy.getMaxErrorRetry(), policy.isMaxErrorRetryInClientConfigHonored());
+    }
+
+    public static void reset() {
+        GUARDS.clear();
+    }
+}
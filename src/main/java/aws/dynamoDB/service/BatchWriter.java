@@ -0,0 +1,143 @@
+package aws.dynamoDB.service;
+
+import aws.client.ThrottleGuard;
+import aws.client.Throttling;
+import aws.dynamoDB.util.BatchWriteResult;
+import aws.dynamoDB.util.InvoiceItem;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes invoice items with {@code BatchWriteItem} requests of up to 25 items, several batches in parallel.
+ * {@code UnprocessedItems} are resubmitted with the backoff of the table's {@link ThrottleGuard} until they drain
+ * or the attempts run out; items still unprocessed are reported as failed.
+ * Batches go through the table's {@link ThrottleGuard}, and unprocessed items lower its rate.
+ */
+
+class BatchWriter {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(BatchWriter.class);
+
+    static final int MAX_BATCH_SIZE = 25;
+
+    private final AmazonDynamoDB client;
+    private final String tableName;
+    private final int concurrency;
+    private final int maxAttempts;
+
+    BatchWriter(AmazonDynamoDB client, String tableName, int concurrency, int maxAttempts) {
+        this.client = client;
+        this.tableName = tableName;
+        this.concurrency = Math.max(1, concurrency);
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    BatchWriteResult write(List<InvoiceItem> items) throws InterruptedException {
+        // BatchWriteItem rejects a batch with two requests for the same key, the last item wins
+        Map<String, InvoiceItem> uniqueItems = new LinkedHashMap<>();
+        for (InvoiceItem item : items) {
+            uniqueItems.put(key(item.getFileName(), item.getDate()), item);
+        }
+        List<InvoiceItem> toWrite = new ArrayList<>(uniqueItems.values());
+
+        BatchWriteResult result = new BatchWriteResult();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            for (int from = 0; from < toWrite.size(); from += MAX_BATCH_SIZE) {
+                List<InvoiceItem> batch = toWrite.subList(from, Math.min(from + MAX_BATCH_SIZE, toWrite.size()));
+                executor.execute(() -> writeBatch(batch, result));
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    private void writeBatch(List<InvoiceItem> batch, BatchWriteResult result) {
+        Map<String, InvoiceItem> itemsByKey = new HashMap<>();
+        List<WriteRequest> writeRequests = new ArrayList<>(batch.size());
+        for (InvoiceItem item : batch) {
+            itemsByKey.put(key(item.getFileName(), item.getDate()), item);
+            writeRequests.add(new WriteRequest(new PutRequest(toAttributeValues(item))));
+        }
+
+        Map<String, List<WriteRequest>> request = Collections.singletonMap(tableName, writeRequests);
+        ThrottleGuard guard = Throttling.guard("dynamodb", tableName);
+        long delay = 0;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                List<WriteRequest> unprocessed;
+                guard.acquire();
+                try {
+                    BatchWriteItemResult batchResult = client.batchWriteItem(new BatchWriteItemRequest(request));
+                    unprocessed = batchResult.getUnprocessedItems().getOrDefault(tableName, Collections.emptyList());
+                } catch (ProvisionedThroughputExceededException e) {
+                    unprocessed = request.get(tableName);
+                }
+                result.addWritten(request.get(tableName).size() - unprocessed.size());
+
+                if (unprocessed.isEmpty()) {
+                    guard.onSuccess();
+                    return;
+                }
+                guard.onThrottle();
+                if (attempt >= maxAttempts) {
+                    LOGGER.error("{} items were not written to table {} after {} attempts", unprocessed.size(), tableName, attempt);
+                    result.addFailed(toInvoiceItems(unprocessed, itemsByKey));
+                    return;
+                }
+                LOGGER.debug("{} unprocessed items in table {}, retrying (attempt {})", unprocessed.size(), tableName, attempt);
+                delay = guard.backoff(delay);
+                request = Collections.singletonMap(tableName, unprocessed);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.addFailed(toInvoiceItems(request.get(tableName), itemsByKey));
+        } catch (Exception e) {
+            LOGGER.error("Unable to write {} items to table {}: {}", request.get(tableName).size(), tableName, e.getMessage());
+            result.addFailed(toInvoiceItems(request.get(tableName), itemsByKey));
+        }
+    }
+
+    private static List<InvoiceItem> toInvoiceItems(List<WriteRequest> writeRequests, Map<String, InvoiceItem> itemsByKey) {
+        List<InvoiceItem> items = new ArrayList<>(writeRequests.size());
+        for (WriteRequest writeRequest : writeRequests) {
+            Map<String, AttributeValue> item = writeRequest.getPutRequest().getItem();
+            items.add(itemsByKey.get(key(item.get("fileName").getS(), item.get("date").getS())));
+        }
+        return items;
+    }
+
+    static Map<String, AttributeValue> toAttributeValues(InvoiceItem item) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put("fileName", new AttributeValue(item.getFileName()));
+        values.put("date", new AttributeValue(item.getDate()));
+        values.put("bucketName", new AttributeValue(item.getBucketName()));
+        values.put("moving_time", new AttributeValue(DynamoService.formatTime(item.getTime())));
+        values.put("file_status", new AttributeValue(item.getStatus()));
+        return values;
+    }
+
+    private static String key(String fileName, String date) {
+        return fileName + '\u0000' + date;
+    }
+}
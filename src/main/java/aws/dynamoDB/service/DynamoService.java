@@ -1,17 +1,37 @@
 package aws.dynamoDB.service;
 
+import aws.client.AWSClientRegistry;
+import aws.client.AsyncSupport;
+import aws.client.ThrottleGuard;
+import aws.client.ThrottleSettings;
+import aws.client.Throttling;
+import aws.dynamoDB.util.BatchWriteResult;
+import aws.dynamoDB.util.InvoiceItem;
+import aws.dynamoDB.util.InvoiceKey;
 import aws.dynamoDB.util.InvoiceStatus;
+import aws.dynamoDB.util.StatusUpdateSummary;
+import aws.metrics.Metrics;
+import aws.metrics.OperationTimer;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.dynamodbv2.document.*;
 import com.amazonaws.services.dynamodbv2.document.spec.DeleteItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
 import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
+import com.amazonaws.services.dynamodbv2.model.AmazonDynamoDBException;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
 import com.amazonaws.services.dynamodbv2.model.ReturnValue;
 import com.amazonaws.services.dynamodbv2.model.ScanRequest;
-import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import exception.AWSException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,63 +39,324 @@ import org.slf4j.LoggerFactory;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This is a service that works with the AWS Service - DynamoDB.
  * It includes methods to:
  * <ol>
- *     <li>CREATE an item</li>
- *     <li>GET an item</li>
+ *     <li>CREATE an item or many items at once</li>
+ *     <li>GET an item or many items at once</li>
  *     <li>UPDATE the status {@link aws.dynamoDB.util.InvoiceStatus} of an item</li>
  *     <li>DELETE an item</li>
  * </ol>
+ * Reads can optionally go through an in-memory item cache, see {@link #enableItemCache(long, long)}.
  */
 
 public class DynamoService {
 
     private static Logger LOGGER = LoggerFactory.getLogger(DynamoService.class);
-    private static DynamoDB dynamoDB;
-    private static String tableName;
+    private static volatile DynamoService sharedService;
+    private static volatile Cache<List<String>, Item> itemCache;
 
-    private String region;
+    private static final int MAX_BATCH_GET_SIZE = 100;
+    private static final int MAX_BATCH_GET_ATTEMPTS = 10;
 
+    private String tableName;
+    private AmazonDynamoDB client;
+    private boolean sharedClient;
+    private AmazonDynamoDB dynamoDBClient;
+    private DynamoDB dynamoDB;
+    private String region;
+    private int scanSegments = 1;
+    private String statusIndexName;
+    private int statusUpdateConcurrency = 8;
+    private int batchWriteConcurrency = 4;
+    private int batchWriteMaxAttempts = 10;
+    private Executor asyncExecutor;
+    private volatile boolean statusIndexAvailable = true;
+
+    /**
+     * Creates the service with the shared client of the region. The service becomes the one used by the static
+     * lookups {@link #getInvoiceItem(String, String)} and {@link #getInvoiceItems(Collection)}: the last one created
+     * wins, so creating a service for another table redirects them to that table. Use {@link #getItem(String, String)}
+     * and {@link #getItems(Collection)} to read through a specific service.
+     */
     public DynamoService(String region,String tableName) {
        this.tableName = tableName;
        this.region = region;
-       dynamoDB = initDynamoDbClient();
+       sharedClient = true;
+       synchronized (DynamoService.class) {
+           DynamoService previous = sharedService;
+           if (previous != null && !Objects.equals(tableName, previous.tableName)) {
+               LOGGER.info("Static DynamoService lookups now read table {} instead of {}", tableName, previous.tableName);
+           }
+           sharedService = this;
+       }
+    }
+
+    /**
+     * Creates the service with the given client instead of the shared one, e.g. an {@link aws.local.InMemoryDynamoDB}.
+     * The client and table belong to this instance; it is used by the static lookups only if no other service exists.
+     */
+    public DynamoService(String region, String tableName, AmazonDynamoDB client) {
+        this.tableName = tableName;
+        this.region = region;
+        this.client = client;
+        synchronized (DynamoService.class) {
+            if (sharedService == null) {
+                sharedService = this;
+            }
+        }
     }
 
     public void createInvoiceItem(String fileName, String bucketName, String date, LocalDateTime time, String status) throws AWSException {
+        try (OperationTimer timer = Metrics.timer("dynamodb.createInvoiceItem")) {
+            putInvoiceItem(fileName, bucketName, date, time, status);
+            timer.success();
+        }
+    }
+
+    private void putInvoiceItem(String fileName, String bucketName, String date, LocalDateTime time, String status) throws AWSException {
         checkNotNull(fileName, bucketName, date, time, status);
 
         String stringTime = formatTime(time);
         try {
-            dynamoDB.getTable(tableName)
-                    .putItem(new Item()
-                            .withPrimaryKey("fileName", fileName, "date", date)
-                            .withString("bucketName", bucketName)
-                            .withString("moving_time", stringTime)
-                            .withString("file_status", status));
+            Item item = new Item()
+                    .withPrimaryKey("fileName", fileName, "date", date)
+                    .withString("bucketName", bucketName)
+                    .withString("moving_time", stringTime)
+                    .withString("file_status", status);
+            throttle().call(() -> dynamoDB().getTable(tableName).putItem(item));
             LOGGER.info("DynamoDB {} item created: fileName - {}, date - {}", tableName, fileName, date);
         } catch (Exception e) {
             LOGGER.error("Unable to add item {} - {} to DynamoDB table {}: {}", fileName, date, tableName, e.getMessage());
             throw new AWSException("Unable to add item: " + fileName + " " + date + " in " + tableName);
+        } finally {
+            invalidateCachedItem(fileName, date);
         }
     }
 
+    public CompletableFuture<Void> createInvoiceItemAsync(String fileName, String bucketName, String date, LocalDateTime time, String status) {
+        return AsyncSupport.supply(asyncExecutor, () -> {
+            createInvoiceItem(fileName, bucketName, date, time, status);
+            return null;
+        });
+    }
+
+    public CompletableFuture<BatchWriteResult> createInvoiceItemsAsync(List<InvoiceItem> items) {
+        return AsyncSupport.supply(asyncExecutor, () -> createInvoiceItems(items));
+    }
+
+    public CompletableFuture<Item> getInvoiceItemAsync(String fileName, String date) {
+        return AsyncSupport.supply(asyncExecutor, () -> getInvoiceItem(fileName, date));
+    }
+
+    public CompletableFuture<Map<InvoiceKey, Item>> getInvoiceItemsAsync(Collection<InvoiceKey> keys) {
+        return AsyncSupport.supply(asyncExecutor, () -> getInvoiceItems(keys));
+    }
+
+    public CompletableFuture<Void> updateInvoiceStatusAsync(String fileName, String date, String status) {
+        return AsyncSupport.supply(asyncExecutor, () -> {
+            updateInvoiceStatus(fileName, date, status);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> deleteInvoiceItemAsync(String fileName, String date) {
+        return AsyncSupport.supply(asyncExecutor, () -> {
+            deleteInvoiceItem(fileName, date);
+            return null;
+        });
+    }
+
+    /**
+     * Writes many items with {@code BatchWriteItem} requests of 25 items, running {@link #getBatchWriteConcurrency()}
+     * batches in parallel and resubmitting unprocessed items with the backoff of the table's throttle guard.
+     *
+     * @return number of written items and the items that could not be written
+     */
+    public BatchWriteResult createInvoiceItems(List<InvoiceItem> items) throws AWSException {
+        if (items == null) {
+            throw new AWSException("Can't create DynamoDB records: list of items is null");
+        }
+        for (InvoiceItem item : items) {
+            checkNotNull(item.getFileName(), item.getBucketName(), item.getDate(), item.getTime(), item.getStatus());
+        }
+
+        try {
+            BatchWriteResult result = new BatchWriter(client(), tableName, batchWriteConcurrency, batchWriteMaxAttempts).write(items);
+            LOGGER.info("DynamoDB {} items created: {}", tableName, result);
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AWSException("Interrupted while adding items to " + tableName);
+        } finally {
+            for (InvoiceItem item : items) {
+                invalidateCachedItem(item.getFileName(), item.getDate());
+            }
+        }
+    }
+
+    /**
+     * Reads the item with the service used by the static lookups, see {@link #getItem(String, String)}.
+     */
     public static Item getInvoiceItem(String fileName, String date) throws AWSException {
+        return shared().getItem(fileName, date);
+    }
+
+    /**
+     * Reads the item, going through the item cache when it is enabled with {@link #enableItemCache(long, long)}.
+     */
+    public Item getItem(String fileName, String date) throws AWSException {
+        try (OperationTimer timer = Metrics.timer("dynamodb.getInvoiceItem")) {
+            Item result = lookupInvoiceItem(fileName, date);
+            timer.success();
+            return result;
+        }
+    }
+
+    private Item lookupInvoiceItem(String fileName, String date) throws AWSException {
+        Cache<List<String>, Item> cache = itemCache;
+        if (cache == null) {
+            return readInvoiceItem(fileName, date);
+        }
+        try {
+            return cache.get(cacheKey(fileName, date), () -> readInvoiceItem(fileName, date));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof AWSException) {
+                throw (AWSException) e.getCause();
+            }
+            throw new AWSException("Unable to read item: " + fileName + " " + date);
+        }
+    }
+
+    /**
+     * Reads many items with the service used by the static lookups, see {@link #getItems(Collection)}.
+     */
+    public static Map<InvoiceKey, Item> getInvoiceItems(Collection<InvoiceKey> keys) throws AWSException {
+        return shared().getItems(keys);
+    }
+
+    /**
+     * Reads many items with {@code BatchGetItem} requests of up to 100 keys, resubmitting unprocessed keys
+     * with the backoff of the table's throttle guard. Items already in the item cache are not requested again.
+     *
+     * @return found items by key; keys without an item in the table are absent from the map
+     */
+    public Map<InvoiceKey, Item> getItems(Collection<InvoiceKey> keys) throws AWSException {
+        Map<InvoiceKey, Item> items = new HashMap<>();
+        Cache<List<String>, Item> cache = itemCache;
+        List<InvoiceKey> toRead = new ArrayList<>();
+        for (InvoiceKey key : new LinkedHashSet<>(keys)) {
+            Item cached = cache == null ? null : cache.getIfPresent(cacheKey(key.getFileName(), key.getDate()));
+            if (cached != null) {
+                items.put(key, cached);
+            } else {
+                toRead.add(key);
+            }
+        }
+
+        for (int from = 0; from < toRead.size(); from += MAX_BATCH_GET_SIZE) {
+            List<InvoiceKey> batch = toRead.subList(from, Math.min(from + MAX_BATCH_GET_SIZE, toRead.size()));
+            try {
+                readInvoiceItems(batch, items);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AWSException("Interrupted while reading items from " + tableName);
+            } catch (AWSException e) {
+                throw e;
+            } catch (Exception e) {
+                LOGGER.error("Unable to read {} items from DynamoDB table {}: {}", batch.size(), tableName, e.getMessage());
+                throw new AWSException("Unable to read " + batch.size() + " items from " + tableName + ": " + e.getMessage());
+            }
+        }
+
+        if (cache != null) {
+            for (InvoiceKey key : toRead) {
+                Item item = items.get(key);
+                if (item != null) {
+                    cache.put(cacheKey(key.getFileName(), key.getDate()), item);
+                }
+            }
+        }
+        LOGGER.debug("BatchGetItem from DynamoDB table {} succeeded: {} of {} items found", tableName, items.size(), keys.size());
+        return items;
+    }
+
+    private void readInvoiceItems(List<InvoiceKey> batch, Map<InvoiceKey, Item> items) throws AWSException, InterruptedException {
+        List<Map<String, AttributeValue>> keyValues = new ArrayList<>(batch.size());
+        for (InvoiceKey key : batch) {
+            Map<String, AttributeValue> keyValue = new HashMap<>();
+            keyValue.put("fileName", new AttributeValue(key.getFileName()));
+            keyValue.put("date", new AttributeValue(key.getDate()));
+            keyValues.add(keyValue);
+        }
+
+        Map<String, KeysAndAttributes> request = Collections.singletonMap(tableName, new KeysAndAttributes().withKeys(keyValues));
+        ThrottleGuard guard = throttle();
+        long delay = 0;
+        for (int attempt = 1; ; attempt++) {
+            BatchGetItemResult result;
+            try {
+                BatchGetItemRequest batchRequest = new BatchGetItemRequest(request);
+                result = guard.call(() -> client().batchGetItem(batchRequest));
+            } catch (AmazonDynamoDBException e) {
+                if (!ThrottleGuard.isThrottling(e)) {
+                    throw e;
+                }
+                LOGGER.error("BatchGetItem from table {} still throttled after retries: {}", tableName, e.getMessage());
+                throw new AWSException("BatchGetItem from " + tableName + " still throttled after retries: " + e.getMessage());
+            }
+            for (Map<String, AttributeValue> item : result.getResponses().getOrDefault(tableName, Collections.emptyList())) {
+                items.put(new InvoiceKey(item.get("fileName").getS(), item.get("date").getS()), ItemUtils.toItem(item));
+            }
+
+            KeysAndAttributes unprocessed = result.getUnprocessedKeys().get(tableName);
+            if (unprocessed == null || unprocessed.getKeys().isEmpty()) {
+                return;
+            }
+            guard.onThrottle();
+            if (attempt >= MAX_BATCH_GET_ATTEMPTS) {
+                LOGGER.error("{} keys were not read from table {} after {} attempts", unprocessed.getKeys().size(), tableName, attempt);
+                throw new AWSException(unprocessed.getKeys().size() + " keys were not read from " + tableName + " after " + attempt + " attempts");
+            }
+            LOGGER.debug("{} unprocessed keys in table {}, retrying (attempt {})", unprocessed.getKeys().size(), tableName, attempt);
+            delay = guard.backoff(delay);
+            request = Collections.singletonMap(tableName, unprocessed);
+        }
+    }
+
+    private Item readInvoiceItem(String fileName, String date) throws AWSException {
         GetItemSpec spec = new GetItemSpec().withPrimaryKey("fileName", fileName, "date", date);
 
         Table table;
         Item outcome;
         try {
-            table = dynamoDB.getTable(tableName);
+            table = dynamoDB().getTable(tableName);
 
             LOGGER.debug("Attempting to read the item from DynamoDB table...");
-            outcome = table.getItem(spec);
+            outcome = throttle().call(() -> table.getItem(spec));
         }
         catch (Exception e) {
             LOGGER.error("Unable to read item: {} - {}: {}", fileName, date, e.getMessage());
@@ -90,101 +371,280 @@ public class DynamoService {
     }
 
     public void updateInvoiceStatus(String fileName, String date, String status) throws AWSException{
+        try (OperationTimer timer = Metrics.timer("dynamodb.updateInvoiceStatus")) {
+            writeInvoiceStatus(fileName, date, status);
+            timer.success();
+        }
+    }
+
+    private void writeInvoiceStatus(String fileName, String date, String status) throws AWSException {
        checkNotNull(fileName, date, status);
 
         Table table;
         UpdateItemSpec updateItemSpec;
 
         try {
-            table = dynamoDB.getTable(tableName);
+            table = dynamoDB().getTable(tableName);
 
-            updateItemSpec = new UpdateItemSpec().withReturnValues(ReturnValue.ALL_NEW)
+            updateItemSpec = new UpdateItemSpec().withReturnValues(ReturnValue.NONE)
                     .withPrimaryKey("fileName", fileName, "date", date)
                     .withUpdateExpression("set file_status = :file_status")
                     .withValueMap(new ValueMap()
                             .withString(":file_status", status));
 
             LOGGER.debug("Updating the item in DynamoDB table...");
-            UpdateItemOutcome outcome = table.updateItem(updateItemSpec);
+            throttle().call(() -> table.updateItem(updateItemSpec));
             LOGGER.info("Item [{} - {}] status in table \"{}\" updated -> {}", fileName, date, tableName, status);
         }
         catch (Exception e) {
             LOGGER.error("Unable to update item [{} - {}]: ", fileName, date, e.getMessage());
             throw new AWSException("Unable to update item DynamoDB table " +  fileName + " - " + e.getMessage());
         }
+        finally {
+            invalidateCachedItem(fileName, date);
+        }
     }
 
     public void deleteInvoiceItem(String fileName, String date) throws AWSException {
         Table table;
 
         try {
-            table = dynamoDB.getTable(tableName);
+            table = dynamoDB().getTable(tableName);
 
             DeleteItemSpec deleteItemSpec = new DeleteItemSpec()
                     .withPrimaryKey(new PrimaryKey("fileName", fileName, "date", date));
 
             LOGGER.debug("Deleting item from DynamoDB table...");
-            table.deleteItem(deleteItemSpec);
+            throttle().call(() -> table.deleteItem(deleteItemSpec));
             LOGGER.info("Item {} - {} successfully deleted", fileName, date);
         }
         catch (Exception e) {
             LOGGER.error("Unable to delete item {} - {} from DynamoDB table: {}", fileName, date, e.getMessage());
             throw new AWSException("Unable to delete item DynamoDB table: " + fileName + " " + date);
         }
+        finally {
+            invalidateCachedItem(fileName, date);
+        }
     }
 
-    public void updateInvoiceStatusAfterChecking(String firstKeyName, String secondKeyName, InvoiceStatus status) throws AWSException {
-        List<Map<String, AttributeValue>> listOfItems = listInvoiceItemsToMove();
-        try {
-            if (!listOfItems.isEmpty()) {
-                for (Map<String, AttributeValue> item : listOfItems) {
-                    String fileName = String.valueOf(item.get(firstKeyName).getS());
-                    String date = String.valueOf(item.get(secondKeyName).getS());
-                    updateInvoiceStatus(fileName, date, String.valueOf(status));
-                }
+    /**
+     * Moves every item ready to move from {@link InvoiceStatus#UPLOADED} to {@code status}.
+     * Updates run with at most {@link #getStatusUpdateConcurrency()} in flight and are conditional on the item
+     * still being {@code UPLOADED}, so items already taken by another worker are skipped.
+     */
+    public StatusUpdateSummary updateInvoiceStatusAfterChecking(String firstKeyName, String secondKeyName, InvoiceStatus status) throws AWSException {
+        StatusUpdateSummary summary = new StatusUpdateSummary();
+        int concurrency = Math.max(1, statusUpdateConcurrency);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        Semaphore inFlight = new Semaphore(concurrency * 2);
+
+        try (Stream<Map<String, AttributeValue>> items = streamInvoiceItemsToMove()) {
+            Iterator<Map<String, AttributeValue>> iterator = items.iterator();
+            while (iterator.hasNext()) {
+                Map<String, AttributeValue> item = iterator.next();
+                String fileName = String.valueOf(item.get(firstKeyName).getS());
+                String date = String.valueOf(item.get(secondKeyName).getS());
+
+                inFlight.acquire();
+                executor.execute(() -> {
+                    try {
+                        transitionStatus(fileName, date, InvoiceStatus.UPLOADED, status, summary);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
             }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
         }catch (Exception e) {
+            executor.shutdownNow();
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
             LOGGER.error("Error occurred while updating status in {} to {}: {}", tableName, status, e.getMessage());
             throw new AWSException("Error occurred while updating status in " + tableName + " to " + status + ": " + e.getMessage());
         }
+        LOGGER.info("Items status in table \"{}\" updated -> {}: {}", tableName, status, summary);
+        return summary;
     }
 
-    public List<Map<String, AttributeValue>> listInvoiceItemsToMove() throws AWSException {
+    private void transitionStatus(String fileName, String date, InvoiceStatus from, InvoiceStatus to, StatusUpdateSummary summary) {
+        UpdateItemSpec updateItemSpec = new UpdateItemSpec().withReturnValues(ReturnValue.NONE)
+                .withPrimaryKey("fileName", fileName, "date", date)
+                .withUpdateExpression("set file_status = :file_status")
+                .withConditionExpression("file_status = :expected_status")
+                .withValueMap(new ValueMap()
+                        .withString(":file_status", to.toString())
+                        .withString(":expected_status", from.toString()));
         try {
-            AmazonDynamoDB client = AmazonDynamoDBClientBuilder.standard().build();
-
-            LocalDateTime now = LocalDateTime.now();
-            String stringNow = formatTime(now);
+            throttle().call(() -> dynamoDB().getTable(tableName).updateItem(updateItemSpec));
+            summary.addUpdated();
+            LOGGER.debug("Item [{} - {}] status in table \"{}\" updated -> {}", fileName, date, tableName, to);
+        } catch (ConditionalCheckFailedException e) {
+            summary.addSkipped();
+            LOGGER.debug("Item [{} - {}] is no longer {}, skipped", fileName, date, from);
+        } catch (Exception e) {
+            summary.addFailed(fileName, date, e.getMessage());
+            LOGGER.error("Unable to update item [{} - {}]: {}", fileName, date, e.getMessage());
+        } finally {
+            invalidateCachedItem(fileName, date);
+        }
+    }
 
-            Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
-            expressionAttributeValues.put(":moving_time", new AttributeValue().withS(stringNow));
-            expressionAttributeValues.put(":file_status", new AttributeValue().withS(InvoiceStatus.UPLOADED.toString()));
+    public List<Map<String, AttributeValue>> listInvoiceItemsToMove() throws AWSException {
+        try (Stream<Map<String, AttributeValue>> items = streamInvoiceItemsToMove()) {
+            return items.collect(Collectors.toList());
+        }catch (Exception e) {
+            LOGGER.error("Error occurred while getting list of items in table {}: {}", tableName ,e.getMessage());
+            throw new AWSException("Error occurred while getting list of items in table " + tableName + ": " + e.getMessage());
+        }
+    }
 
-            ScanRequest scanRequest = new ScanRequest()
+    /**
+     * Lazily reads the items ready to move.
+     * When {@link #getStatusIndexName()} is set, the status/time index ({@code file_status} partition key,
+     * {@code moving_time} sort key) is queried with a range condition, so only matching items are read.
+     * Otherwise, or if the index does not exist, the whole table is scanned, following pagination
+     * and splitting the scan into {@link #getScanSegments()} parallel segments.
+     * The stream must be closed to stop a scan early; failures are thrown as unchecked exceptions while consuming it.
+     */
+    public Stream<Map<String, AttributeValue>> streamInvoiceItemsToMove() {
+        String stringNow = formatTime(LocalDateTime.now());
+
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeValues.put(":moving_time", new AttributeValue().withS(stringNow));
+        expressionAttributeValues.put(":file_status", new AttributeValue().withS(InvoiceStatus.UPLOADED.toString()));
+
+        if (statusIndexName != null && statusIndexAvailable) {
+            QueryRequest queryRequest = new QueryRequest()
                     .withTableName(tableName)
-                    .withFilterExpression("moving_time = :moving_time or moving_time < :moving_time and file_status = :file_status")
+                    .withIndexName(statusIndexName)
+                    .withKeyConditionExpression("file_status = :file_status and moving_time <= :moving_time")
                     .withExpressionAttributeValues(expressionAttributeValues);
+            try {
+                QueryIterator iterator = new QueryIterator(client(), queryRequest);
+                return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false);
+            } catch (AmazonDynamoDBException e) {
+                if (isMissingIndex(e)) {
+                    LOGGER.warn("Index {} is not available in table {}, falling back to scan: {}", statusIndexName, tableName, e.getMessage());
+                    statusIndexAvailable = false;
+                } else {
+                    throw e;
+                }
+            }
+        }
 
-            ScanResult result = client.scan(scanRequest);
-            return new ArrayList<>(result.getItems());
-        }catch (Exception e) {
-            LOGGER.error("Error occurred while getting list of items in table {}: {}", tableName ,e.getMessage());
-            throw new AWSException("Error occurred while getting list of items in table " + tableName + ": " + e.getMessage());
+        ScanRequest scanRequest = new ScanRequest()
+                .withTableName(tableName)
+                .withFilterExpression("moving_time = :moving_time or moving_time < :moving_time and file_status = :file_status")
+                .withExpressionAttributeValues(expressionAttributeValues);
+
+        return scan(scanRequest, scanSegments);
+    }
+
+    /**
+     * Only a missing index falls back to a scan; other validation errors, e.g. a wrong key name, are real mistakes.
+     */
+    private boolean isMissingIndex(AmazonDynamoDBException e) {
+        if (e instanceof ResourceNotFoundException) {
+            return true;
+        }
+        String message = e.getErrorMessage();
+        return "ValidationException".equals(e.getErrorCode()) && message != null
+                && message.contains("does not have the specified index") && message.contains(statusIndexName);
+    }
+
+    private Stream<Map<String, AttributeValue>> scan(ScanRequest scanRequest, int totalSegments) {
+        SegmentedScanIterator iterator = new SegmentedScanIterator(client(), scanRequest, totalSegments);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
+    /**
+     * Enables a read-through cache in front of {@link #getInvoiceItem(String, String)}.
+     * Entries expire {@code ttlMillis} after being read and the least recently used ones are evicted above {@code maxSize}.
+     * Items changed through this service are invalidated; changes made by other writers are visible after the TTL.
+     */
+    public static void enableItemCache(long ttlMillis, long maxSize) {
+        itemCache = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        LOGGER.debug("Item cache enabled: ttl {} ms, max size {}", ttlMillis, maxSize);
+    }
+
+    public static void disableItemCache() {
+        itemCache = null;
+    }
+
+    public static void invalidateItemCache() {
+        Cache<List<String>, Item> cache = itemCache;
+        if (cache != null) {
+            cache.invalidateAll();
         }
     }
 
+    /**
+     * @return hit/miss statistics of the item cache, or empty statistics when the cache is disabled
+     */
+    public static CacheStats getItemCacheStats() {
+        Cache<List<String>, Item> cache = itemCache;
+        return cache == null ? new CacheStats(0, 0, 0, 0, 0, 0) : cache.stats();
+    }
+
+    private void invalidateCachedItem(String fileName, String date) {
+        Cache<List<String>, Item> cache = itemCache;
+        if (cache != null) {
+            cache.invalidate(cacheKey(fileName, date));
+        }
+    }
+
+    private List<String> cacheKey(String fileName, String date) {
+        return Arrays.asList(tableName, fileName, date);
+    }
+
+    private static DynamoService shared() throws AWSException {
+        DynamoService service = sharedService;
+        if (service == null) {
+            LOGGER.error("No DynamoService has been created for the static lookups");
+            throw new AWSException("No DynamoService has been created for the static lookups");
+        }
+        return service;
+    }
+
     public static String formatTime(LocalDateTime time) {
         DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
         return dtf.format(time);
     }
 
-    private DynamoDB initDynamoDbClient() {
-        DynamoDB dynamoDB = null;
-        try {
-            AmazonDynamoDB client = AmazonDynamoDBClientBuilder.standard().withRegion(region).build();
-            dynamoDB = new DynamoDB(client);
-        } catch (Exception e) {
-            LOGGER.error("Error while initializing DynamoDBClient: {}", e.getMessage());
+    /**
+     * Sets the client-side throttling of this table, see {@link Throttling}.
+     */
+    public void setThrottleSettings(ThrottleSettings throttleSettings) {
+        Throttling.setSettings("dynamodb", tableName, throttleSettings);
+    }
+
+    private ThrottleGuard throttle() {
+        return Throttling.guard("dynamodb", tableName);
+    }
+
+    /**
+     * A client from the registry is looked up on every call, so the service gets a new one after
+     * {@link AWSClientRegistry#shutdown()}; an injected client is used as is.
+     */
+    private AmazonDynamoDB client() {
+        return sharedClient ? AWSClientRegistry.getDynamoDbClient(region) : client;
+    }
+
+    /**
+     * @return document API wrapper of the current client, created again only when the client changes
+     */
+    private synchronized DynamoDB dynamoDB() {
+        AmazonDynamoDB current = client();
+        if (current != dynamoDBClient) {
+            dynamoDBClient = current;
+            dynamoDB = current == null ? null : new DynamoDB(current);
         }
         return dynamoDB;
     }
@@ -209,6 +669,58 @@ public class DynamoService {
         return tableName;
     }
 
+    public int getScanSegments() {
+        return scanSegments;
+    }
+
+    public void setScanSegments(int scanSegments) {
+        this.scanSegments = scanSegments;
+    }
+
+    public String getStatusIndexName() {
+        return statusIndexName;
+    }
+
+    public void setStatusIndexName(String statusIndexName) {
+        this.statusIndexName = statusIndexName;
+        this.statusIndexAvailable = true;
+    }
+
+    public int getStatusUpdateConcurrency() {
+        return statusUpdateConcurrency;
+    }
+
+    public void setStatusUpdateConcurrency(int statusUpdateConcurrency) {
+        this.statusUpdateConcurrency = statusUpdateConcurrency;
+    }
+
+    public int getBatchWriteConcurrency() {
+        return batchWriteConcurrency;
+    }
+
+    public void setBatchWriteConcurrency(int batchWriteConcurrency) {
+        this.batchWriteConcurrency = batchWriteConcurrency;
+    }
+
+    public int getBatchWriteMaxAttempts() {
+        return batchWriteMaxAttempts;
+    }
+
+    public void setBatchWriteMaxAttempts(int batchWriteMaxAttempts) {
+        this.batchWriteMaxAttempts = batchWriteMaxAttempts;
+    }
+
+    public Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * @see AsyncSupport#supply
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
     public String getRegion() {
         return region;
     }
@@ -0,0 +1,53 @@
+package aws.dynamoDB.service;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily iterates over all items of a DynamoDB query, fetching the next page only when the current one is consumed.
+ * The first page is fetched on construction, so errors such as a missing index surface immediately.
+ */
+
+class QueryIterator implements Iterator<Map<String, AttributeValue>> {
+
+    private final AmazonDynamoDB client;
+    private final QueryRequest request;
+
+    private Iterator<Map<String, AttributeValue>> current;
+    private Map<String, AttributeValue> lastEvaluatedKey;
+
+    QueryIterator(AmazonDynamoDB client, QueryRequest request) {
+        this.client = client;
+        this.request = request.clone();
+        fetchPage();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext() && lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty()) {
+            request.setExclusiveStartKey(lastEvaluatedKey);
+            fetchPage();
+        }
+        return current.hasNext();
+    }
+
+    @Override
+    public Map<String, AttributeValue> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    private void fetchPage() {
+        QueryResult result = client.query(request);
+        current = result.getItems().iterator();
+        lastEvaluatedKey = result.getLastEvaluatedKey();
+    }
+}
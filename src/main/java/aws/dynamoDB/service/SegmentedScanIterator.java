@@ -0,0 +1,137 @@
+package aws.dynamoDB.service;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Lazily iterates over all items of a DynamoDB scan.
+ * The scan is split into {@code Segment}/{@code TotalSegments} workers that follow {@code LastEvaluatedKey}
+ * and hand pages over through a bounded queue, so at most a few pages per segment are held in memory.
+ * Closing the iterator stops all workers.
+ */
+
+class SegmentedScanIterator implements Iterator<Map<String, AttributeValue>>, AutoCloseable {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(SegmentedScanIterator.class);
+
+    private static final int PAGES_PER_SEGMENT = 2;
+
+    private final BlockingQueue<Page> pages;
+    private final ExecutorService executor;
+    private final int totalSegments;
+
+    private int finishedSegments;
+    private Iterator<Map<String, AttributeValue>> current = Collections.emptyIterator();
+
+    SegmentedScanIterator(AmazonDynamoDB client, ScanRequest template, int totalSegments) {
+        this.totalSegments = Math.max(1, totalSegments);
+        this.pages = new ArrayBlockingQueue<>(this.totalSegments * PAGES_PER_SEGMENT);
+        this.executor = Executors.newFixedThreadPool(this.totalSegments, runnable -> {
+            Thread thread = new Thread(runnable, "dynamodb-scan-" + template.getTableName());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (int segment = 0; segment < this.totalSegments; segment++) {
+            ScanRequest request = template.clone();
+            if (this.totalSegments > 1) {
+                request.withSegment(segment).withTotalSegments(this.totalSegments);
+            }
+            executor.execute(() -> scanSegment(client, request));
+        }
+    }
+
+    private void scanSegment(AmazonDynamoDB client, ScanRequest request) {
+        try {
+            Map<String, AttributeValue> lastEvaluatedKey;
+            do {
+                ScanResult result = client.scan(request);
+                if (!result.getItems().isEmpty()) {
+                    pages.put(new Page(result.getItems(), null));
+                }
+                lastEvaluatedKey = result.getLastEvaluatedKey();
+                request.setExclusiveStartKey(lastEvaluatedKey);
+            } while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+            pages.put(Page.END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            LOGGER.error("Scan of segment {} in table {} failed: {}", request.getSegment(), request.getTableName(), e.getMessage());
+            try {
+                pages.put(new Page(null, e));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (finishedSegments == totalSegments) {
+                close();
+                return false;
+            }
+            Page page = takePage();
+            if (page.error != null) {
+                close();
+                throw page.error;
+            }
+            if (page == Page.END) {
+                finishedSegments++;
+            } else {
+                current = page.items.iterator();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Map<String, AttributeValue> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private Page takePage() {
+        try {
+            return pages.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IllegalStateException("Interrupted while waiting for scan results", e);
+        }
+    }
+
+    private static class Page {
+        static final Page END = new Page(Collections.emptyList(), null);
+
+        final List<Map<String, AttributeValue>> items;
+        final RuntimeException error;
+
+        Page(List<Map<String, AttributeValue>> items, RuntimeException error) {
+            this.items = items;
+            this.error = error;
+        }
+    }
+}
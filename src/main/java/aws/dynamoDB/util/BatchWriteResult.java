@@ -0,0 +1,44 @@
+package aws.dynamoDB.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class represents the outcome of a bulk write to a DynamoDB table:
+ * the number of written items and the items that could not be written and may be resubmitted.
+ */
+
+public class BatchWriteResult {
+
+    private final AtomicInteger written = new AtomicInteger();
+    private final List<InvoiceItem> failed = Collections.synchronizedList(new ArrayList<>());
+
+    public void addWritten(int count) {
+        written.addAndGet(count);
+    }
+
+    public void addFailed(List<InvoiceItem> items) {
+        failed.addAll(items);
+    }
+
+    public int getWritten() {
+        return written.get();
+    }
+
+    public List<InvoiceItem> getFailed() {
+        synchronized (failed) {
+            return new ArrayList<>(failed);
+        }
+    }
+
+    public boolean isSuccessful() {
+        return failed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "BatchWriteResult{written=" + written + ", failed=" + failed.size() + "}";
+    }
+}
@@ -1,6 +1,9 @@
 package aws.dynamoDB.util;
 
+import aws.dynamoDB.service.DynamoService;
+import aws.idempotency.IdempotencyStore;
 import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.lambda.runtime.events.DynamodbEvent;
 import exception.AWSException;
 import org.slf4j.Logger;
@@ -8,6 +11,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static aws.dynamoDB.service.DynamoService.getInvoiceItem;
 
@@ -23,6 +27,140 @@ public class DynamoUtil {
         return isEventNameModify && isFileStatusMoving;
     }
 
+    /**
+     * Processes every record of the event without reading the table: readiness is decided from the record images.
+     * {@code handler} is called for each record whose {@code attrName} changed to {@code attrValue}.
+     * Processing stops at the first record that can't be decided or whose handler throws: Lambda retries a stream
+     * from the failed record on, so records after it would otherwise run twice and possibly out of order.
+     * Requires the stream view type {@code NEW_AND_OLD_IMAGES} (or {@code NEW_IMAGE}, without transition detection).
+     */
+    public static StreamBatchResult processFilesReadyToMove(DynamodbEvent dynamodbEvent, String attrName, String attrValue,
+                                                            StreamRecordHandler handler) {
+        return processFilesReadyToMove(dynamodbEvent, attrName, attrValue, handler, null);
+    }
+
+    /**
+     * Same as {@link #processFilesReadyToMove(DynamodbEvent, String, String, StreamRecordHandler)}, but claims
+     * each record's event ID in {@code idempotencyStore} first: redeliveries of completed records are counted
+     * as skipped, and a record still being processed by another invocation fails the batch from that record on,
+     * so that it is retried.
+     */
+    public static StreamBatchResult processFilesReadyToMove(DynamodbEvent dynamodbEvent, String attrName, String attrValue,
+                                                            StreamRecordHandler handler, IdempotencyStore idempotencyStore) {
+        StreamBatchResult result = new StreamBatchResult();
+        List<DynamodbEvent.DynamodbStreamRecord> records = dynamodbEvent.getRecords();
+        for (int i = 0; i < records.size(); i++) {
+            DynamodbEvent.DynamodbStreamRecord record = records.get(i);
+            boolean claimed = false;
+            try {
+                if (!isTransitionTo(record, attrName, attrValue)) {
+                    result.addSkipped();
+                    continue;
+                }
+                if (idempotencyStore != null) {
+                    IdempotencyStore.Claim claim = idempotencyStore.claim(record.getEventID());
+                    if (claim == IdempotencyStore.Claim.COMPLETED) {
+                        result.addSkipped();
+                        continue;
+                    }
+                    if (claim == IdempotencyStore.Claim.IN_PROGRESS) {
+                        throw new AWSException("Stream record " + record.getEventID() + " is being processed by another invocation");
+                    }
+                    claimed = true;
+                }
+                InvoiceKey key = getInvoiceKey(record);
+                handler.handle(key, record.getDynamodb().getNewImage());
+                if (claimed) {
+                    idempotencyStore.complete(record.getEventID());
+                }
+                result.addProcessed(key);
+            } catch (Exception e) {
+                if (claimed) {
+                    idempotencyStore.release(record.getEventID());
+                }
+                LOGGER.error("Error occurred while processing stream record {}: {}", record.getEventID(), e.getMessage());
+                result.setFailed(record.getDynamodb() == null ? null : record.getDynamodb().getSequenceNumber(), records.size() - i - 1);
+                break;
+            }
+        }
+        LOGGER.info("Stream records processed: {}", result);
+        return result;
+    }
+
+    /**
+     * Checks from the record images whether {@code attrName} was changed to {@code attrValue} by this MODIFY record.
+     */
+    public static boolean isTransitionTo(DynamodbEvent.DynamodbStreamRecord record, String attrName, String attrValue) throws AWSException {
+        if (!"MODIFY".equals(record.getEventName())) {
+            return false;
+        }
+        Map<String, AttributeValue> newImage = record.getDynamodb().getNewImage();
+        if (newImage == null) {
+            LOGGER.error("Stream record {} has no new image, check the stream view type", record.getEventID());
+            throw new AWSException("Stream record " + record.getEventID() + " has no new image, check the stream view type");
+        }
+        if (!attrValue.equals(getString(newImage, attrName))) {
+            return false;
+        }
+        Map<String, AttributeValue> oldImage = record.getDynamodb().getOldImage();
+        return oldImage == null || !attrValue.equals(getString(oldImage, attrName));
+    }
+
+    private static String getString(Map<String, AttributeValue> image, String attrName) {
+        AttributeValue value = image.get(attrName);
+        return value == null ? null : value.getS();
+    }
+
+    /**
+     * Checks every MODIFY record of the event with a single batch lookup instead of one GetItem per record.
+     *
+     * @return keys of the records whose item has {@code attrName} equal to {@code attrValue}
+     */
+    public static List<InvoiceKey> getFilesReadyToMove(DynamodbEvent dynamodbEvent, String attrName, String attrValue) throws AWSException {
+        List<InvoiceKey> modifiedKeys = new ArrayList<>();
+        for (DynamodbEvent.DynamodbStreamRecord record : dynamodbEvent.getRecords()) {
+            if ("MODIFY".equals(record.getEventName())) {
+                modifiedKeys.add(getInvoiceKey(record));
+            }
+        }
+
+        Map<InvoiceKey, Item> items = DynamoService.getInvoiceItems(modifiedKeys);
+        List<InvoiceKey> readyKeys = new ArrayList<>();
+        for (InvoiceKey key : modifiedKeys) {
+            Item item = items.get(key);
+            if (item != null && attrValue.equals(item.getString(attrName))) {
+                readyKeys.add(key);
+            }
+        }
+        LOGGER.debug("Files ready to move: {}", readyKeys);
+        return readyKeys;
+    }
+
+    /**
+     * Fetches the items of all records in the event with {@code BatchGetItem}.
+     */
+    public static Map<InvoiceKey, Item> getInvoiceItems(DynamodbEvent dynamodbEvent) throws AWSException {
+        return DynamoService.getInvoiceItems(getInvoiceKeys(dynamodbEvent));
+    }
+
+    public static List<InvoiceKey> getInvoiceKeys(DynamodbEvent dynamodbEvent) throws AWSException {
+        List<InvoiceKey> keys = new ArrayList<>();
+        for (DynamodbEvent.DynamodbStreamRecord record : dynamodbEvent.getRecords()) {
+            keys.add(getInvoiceKey(record));
+        }
+        return keys;
+    }
+
+    private static InvoiceKey getInvoiceKey(DynamodbEvent.DynamodbStreamRecord record) throws AWSException {
+        try {
+            Map<String, AttributeValue> keys = record.getDynamodb().getKeys();
+            return new InvoiceKey(keys.get("fileName").getS(), keys.get("date").getS());
+        } catch (Exception e) {
+            LOGGER.error("Error occurred while getting key of record {}: {}", record.getEventID(), e.getMessage());
+            throw new AWSException("Error occurred while getting key of record " + record.getEventID() + ": " + e.getMessage());
+        }
+    }
+
     public static List<String> getInvoiceTableKey(DynamodbEvent dynamodbEvent, String keyName) throws AWSException {
         LOGGER.debug("Getting value for key {}...", keyName);
         List<String> values = new ArrayList<>();
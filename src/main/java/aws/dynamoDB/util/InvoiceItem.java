@@ -0,0 +1,72 @@
+package aws.dynamoDB.util;
+
+import java.time.LocalDateTime;
+
+/**
+ * This class represents an invoice item stored in the DynamoDB table.
+ * It is used to write many items at once.
+ */
+
+public class InvoiceItem {
+    private String fileName;
+    private String bucketName;
+    private String date;
+    private LocalDateTime time;
+    private String status;
+
+    public InvoiceItem() {
+    }
+
+    public InvoiceItem(String fileName, String bucketName, String date, LocalDateTime time, String status) {
+        this.fileName = fileName;
+        this.bucketName = bucketName;
+        this.date = date;
+        this.time = time;
+        this.status = status;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getBucketName() {
+        return bucketName;
+    }
+
+    public void setBucketName(String bucketName) {
+        this.bucketName = bucketName;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public void setDate(String date) {
+        this.date = date;
+    }
+
+    public LocalDateTime getTime() {
+        return time;
+    }
+
+    public void setTime(LocalDateTime time) {
+        this.time = time;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    @Override
+    public String toString() {
+        return fileName + " - " + date;
+    }
+}
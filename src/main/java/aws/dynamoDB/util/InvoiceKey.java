@@ -0,0 +1,47 @@
+package aws.dynamoDB.util;
+
+import java.util.Objects;
+
+/**
+ * This class represents the primary key (fileName, date) of an invoice item in the DynamoDB table.
+ */
+
+public class InvoiceKey {
+    private final String fileName;
+    private final String date;
+
+    public InvoiceKey(String fileName, String date) {
+        this.fileName = fileName;
+        this.date = date;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        InvoiceKey that = (InvoiceKey) o;
+        return Objects.equals(fileName, that.fileName) && Objects.equals(date, that.date);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fileName, date);
+    }
+
+    @Override
+    public String toString() {
+        return fileName + " - " + date;
+    }
+}
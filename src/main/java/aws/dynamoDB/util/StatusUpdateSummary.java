@@ -0,0 +1,77 @@
+package aws.dynamoDB.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class represents the outcome of a bulk status update in a DynamoDB table:
+ * <ol>
+ *     <li>updated - items whose status was changed</li>
+ *     <li>skipped - items whose status had already been changed by another worker</li>
+ *     <li>failed - items that could not be updated, with the error message</li>
+ * </ol>
+ */
+
+public class StatusUpdateSummary {
+
+    private final AtomicInteger updated = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final List<Failure> failed = Collections.synchronizedList(new ArrayList<>());
+
+    public void addUpdated() {
+        updated.incrementAndGet();
+    }
+
+    public void addSkipped() {
+        skipped.incrementAndGet();
+    }
+
+    public void addFailed(String fileName, String date, String error) {
+        failed.add(new Failure(fileName, date, error));
+    }
+
+    public int getUpdated() {
+        return updated.get();
+    }
+
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    public List<Failure> getFailed() {
+        synchronized (failed) {
+            return new ArrayList<>(failed);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StatusUpdateSummary{updated=" + updated + ", skipped=" + skipped + ", failed=" + failed.size() + "}";
+    }
+
+    public static class Failure {
+        private final String fileName;
+        private final String date;
+        private final String error;
+
+        Failure(String fileName, String date, String error) {
+            this.fileName = fileName;
+            this.date = date;
+            this.error = error;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public String getDate() {
+            return date;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package aws.dynamoDB.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents the outcome of processing a batch of DynamoDB stream records.
+ * Processing stops at the first failed record. Returned from a Lambda handler as a partial batch response
+ * ({@code ReportBatchItemFailures}), its sequence number makes Lambda checkpoint before it and retry that record
+ * and every record after it, in order.
+ */
+
+public class StreamBatchResult {
+
+    private final List<InvoiceKey> processed = new ArrayList<>();
+    private int skipped;
+    private int unprocessed;
+    private boolean failed;
+    private String failedSequenceNumber;
+
+    public void addProcessed(InvoiceKey key) {
+        processed.add(key);
+    }
+
+    public void addSkipped() {
+        skipped++;
+    }
+
+    /**
+     * Marks the batch as failed at the record with {@code sequenceNumber}, or as a whole if it is null.
+     *
+     * @param unprocessed number of records after the failed one, left for the retry
+     */
+    public void setFailed(String sequenceNumber, int unprocessed) {
+        this.failed = true;
+        this.failedSequenceNumber = sequenceNumber;
+        this.unprocessed = unprocessed;
+    }
+
+    public List<InvoiceKey> getProcessed() {
+        return Collections.unmodifiableList(processed);
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public int getUnprocessed() {
+        return unprocessed;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * @return sequence number of the first failed record, or null when none failed or it has no sequence number
+     */
+    public String getFailedSequenceNumber() {
+        return failedSequenceNumber;
+    }
+
+    /**
+     * @return the partial batch response expected by Lambda: {@code {"batchItemFailures": [{"itemIdentifier": ...}]}}.
+     * A failed record without a sequence number is reported with an empty identifier, so Lambda retries the whole batch.
+     */
+    public Map<String, List<Map<String, String>>> toBatchItemFailures() {
+        List<Map<String, String>> failures = new ArrayList<>(1);
+        if (failed) {
+            failures.add(Collections.singletonMap("itemIdentifier", failedSequenceNumber == null ? "" : failedSequenceNumber));
+        }
+        Map<String, List<Map<String, String>>> response = new HashMap<>();
+        response.put("batchItemFailures", failures);
+        return response;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamBatchResult{processed=" + processed.size() + ", skipped=" + skipped
+                + ", failed=" + (failed ? 1 : 0) + ", unprocessed=" + unprocessed + "}";
+    }
+}
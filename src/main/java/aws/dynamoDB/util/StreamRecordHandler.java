@@ -0,0 +1,15 @@
+package aws.dynamoDB.util;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import java.util.Map;
+
+/**
+ * Handles one DynamoDB stream record whose item is ready to move.
+ * Any exception marks the record as failed in the {@link StreamBatchResult} and stops the batch.
+ */
+
+@FunctionalInterface
+public interface StreamRecordHandler {
+    void handle(InvoiceKey key, Map<String, AttributeValue> newImage) throws Exception;
+}
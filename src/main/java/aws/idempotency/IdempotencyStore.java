@@ -0,0 +1,305 @@
+package aws.idempotency;
+
+import aws.client.Throttling;
+import aws.metrics.Metrics;
+import aws.metrics.OperationTimer;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import exception.AWSException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Suppresses duplicate deliveries of the same event. S3 notifications, SQS messages and DynamoDB stream records
+ * are all delivered at least once; an ID is claimed with {@link #claim(String)} before the expensive calls,
+ * marked with {@link #complete(String)} once they succeeded, and a redelivery of a completed ID is skipped.
+ * <ol>
+ *     <li>a bounded in-process LRU cache answers repeated IDs without any call</li>
+ *     <li>an optional DynamoDB ledger, see {@link #enableLedger(AmazonDynamoDB, String)}, shares the claims
+ *     between Lambda instances with a conditional put</li>
+ * </ol>
+ * A claim is {@link Claim#IN_PROGRESS} for {@code leaseSeconds}: if the claiming instance crashes, the lease
+ * runs out and a redelivery takes the claim over. A completed ID is kept for {@code ttlSeconds}.
+ * The ledger writes the expiry as epoch seconds in {@value #EXPIRES_ATTRIBUTE}, which should be configured
+ * as the table's TTL attribute; expired items not yet removed by DynamoDB are ignored.
+ * When processing fails the ID must be released with {@link #release(String)}, so the redelivery is processed again.
+ * Completing and releasing only change the ledger item while it still holds this instance's claim, identified by
+ * the lease expiry written with it, so an instance whose lease ran out can't overwrite the claim that took over.
+ */
+
+public class IdempotencyStore {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(IdempotencyStore.class);
+
+    public static final String ID_ATTRIBUTE = "id";
+    public static final String STATUS_ATTRIBUTE = "claim_status";
+    public static final String EXPIRES_ATTRIBUTE = "expires_at";
+
+    private static final String OWN_CLAIM_CONDITION = STATUS_ATTRIBUTE + " = :in_progress and " + EXPIRES_ATTRIBUTE + " = :lease_expiry";
+
+    public enum Claim {
+        /** the ID is claimed by this call and the event should be processed */
+        CLAIMED,
+        /** another delivery of the event is being processed; it may still fail, so this one must be retried later */
+        IN_PROGRESS,
+        /** the event was already processed and this delivery is a duplicate */
+        COMPLETED
+    }
+
+    /**
+     * Local state of an ID; for an {@link Claim#IN_PROGRESS} claim of this instance {@code expiresAt} is the lease
+     * expiry written to the ledger.
+     */
+    private static final class Entry {
+        private final Claim status;
+        private final long expiresAt;
+
+        private Entry(Claim status, long expiresAt) {
+            this.status = status;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Cache<String, Entry> claims;
+    private final long ttlSeconds;
+    private volatile long leaseSeconds = 900;
+
+    private volatile AmazonDynamoDB ledgerClient;
+    private volatile String ledgerTableName;
+
+    /**
+     * Entries expire individually, a claim after the lease and a completed ID after {@code ttlSeconds};
+     * the least recently used ones are evicted above {@code maxEntries}.
+     */
+    public IdempotencyStore(long maxEntries, long ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+        this.claims = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .build();
+    }
+
+    /**
+     * Records claims in {@code tableName}, whose partition key is the string attribute {@value #ID_ATTRIBUTE}.
+     */
+    public void enableLedger(AmazonDynamoDB client, String tableName) {
+        this.ledgerClient = client;
+        this.ledgerTableName = tableName;
+        LOGGER.debug("Idempotency ledger enabled: table {}, lease {} s, ttl {} s", tableName, leaseSeconds, ttlSeconds);
+    }
+
+    public void disableLedger() {
+        this.ledgerClient = null;
+        this.ledgerTableName = null;
+    }
+
+    /**
+     * @return {@link Claim#CLAIMED} if the event should be processed by the caller, otherwise the state
+     * of the earlier claim
+     */
+    public Claim claim(String id) throws AWSException {
+        if (id == null) {
+            LOGGER.error("Can't claim idempotency key: key is null");
+            throw new AWSException("Can't claim idempotency key: key is null");
+        }
+        long now = nowSeconds();
+        Entry claimed = new Entry(Claim.IN_PROGRESS, now + leaseSeconds);
+        Entry current = claims.asMap().compute(id, (k, existing) ->
+                existing == null || existing.expiresAt <= now ? claimed : existing);
+        if (current != claimed) {
+            return duplicate(id, current.status);
+        }
+
+        AmazonDynamoDB client = ledgerClient;
+        if (client == null) {
+            return Claim.CLAIMED;
+        }
+        String tableName = ledgerTableName;
+        try {
+            Claim status = claimInLedger(client, tableName, id, now, claimed.expiresAt);
+            if (status == Claim.CLAIMED) {
+                return Claim.CLAIMED;
+            }
+            if (status == Claim.COMPLETED) {
+                claims.asMap().replace(id, claimed, new Entry(Claim.COMPLETED, now + ttlSeconds));
+            } else {
+                claims.asMap().remove(id, claimed);
+            }
+            return duplicate(id, status);
+        } catch (Exception e) {
+            claims.asMap().remove(id, claimed);
+            LOGGER.error("Unable to claim idempotency key {} in {}: {}", id, tableName, e.getMessage());
+            throw new AWSException("Unable to claim idempotency key " + id + " in " + tableName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Marks the claimed ID as processed, so that redeliveries within {@code ttlSeconds} are skipped.
+     * The ledger is only updated while it holds this instance's claim. A failure is only logged: the lease
+     * then runs out and a redelivery is processed again.
+     */
+    public void complete(String id) {
+        if (id == null) {
+            return;
+        }
+        long expiresAt = nowSeconds() + ttlSeconds;
+        Entry claimed = claims.asMap().put(id, new Entry(Claim.COMPLETED, expiresAt));
+
+        AmazonDynamoDB client = ledgerClient;
+        if (client == null) {
+            return;
+        }
+        String tableName = ledgerTableName;
+        if (claimed == null || claimed.status != Claim.IN_PROGRESS) {
+            LOGGER.warn("Idempotency key {} is not claimed by this instance, not completed in {}", id, tableName);
+            return;
+        }
+        PutItemRequest request = new PutItemRequest(tableName, item(id, Claim.COMPLETED, expiresAt))
+                .withConditionExpression(OWN_CLAIM_CONDITION)
+                .withExpressionAttributeValues(ownClaimValues(claimed.expiresAt));
+        OperationTimer timer = Metrics.timer("dynamodb.completeIdempotencyKey");
+        try {
+            Throttling.guard("dynamodb", tableName).call(() -> client.putItem(request));
+            timer.success();
+            LOGGER.debug("Idempotency key {} completed", id);
+        } catch (ConditionalCheckFailedException e) {
+            timer.success();
+            LOGGER.warn("Idempotency key {} was taken over by another delivery after the lease, not completed in {}", id, tableName);
+        } catch (Exception e) {
+            LOGGER.error("Unable to complete idempotency key {} in {}: {}", id, tableName, e.getMessage());
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Forgets this instance's claim, so that the next delivery of the event is processed.
+     */
+    public void release(String id) {
+        if (id == null) {
+            return;
+        }
+        Entry claimed = claims.getIfPresent(id);
+        if (claimed == null || claimed.status != Claim.IN_PROGRESS) {
+            LOGGER.debug("Idempotency key {} is not claimed by this instance, nothing to release", id);
+            return;
+        }
+        claims.asMap().remove(id, claimed);
+
+        AmazonDynamoDB client = ledgerClient;
+        if (client == null) {
+            return;
+        }
+        String tableName = ledgerTableName;
+        try {
+            DeleteItemRequest request = new DeleteItemRequest(tableName,
+                    Collections.singletonMap(ID_ATTRIBUTE, new AttributeValue().withS(id)))
+                    .withConditionExpression(OWN_CLAIM_CONDITION)
+                    .withExpressionAttributeValues(ownClaimValues(claimed.expiresAt));
+            Throttling.guard("dynamodb", tableName).call(() -> client.deleteItem(request));
+            LOGGER.debug("Idempotency key {} released", id);
+        } catch (ConditionalCheckFailedException e) {
+            LOGGER.debug("Idempotency key {} was taken over by another delivery after the lease, not released", id);
+        } catch (Exception e) {
+            LOGGER.error("Unable to release idempotency key {} in {}: {}", id, tableName, e.getMessage());
+        }
+    }
+
+    /**
+     * Puts an {@link Claim#IN_PROGRESS} item unless an unexpired one exists; if it does, reads its status.
+     */
+    private static Claim claimInLedger(AmazonDynamoDB client, String tableName, String id, long now, long expiresAt) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":now", new AttributeValue().withN(String.valueOf(now)));
+
+        PutItemRequest request = new PutItemRequest(tableName, item(id, Claim.IN_PROGRESS, expiresAt))
+                .withConditionExpression("attribute_not_exists(" + ID_ATTRIBUTE + ") or " + EXPIRES_ATTRIBUTE + " < :now")
+                .withExpressionAttributeValues(values);
+        OperationTimer timer = Metrics.timer("dynamodb.claimIdempotencyKey");
+        try {
+            Throttling.guard("dynamodb", tableName).call(() -> client.putItem(request));
+            timer.success();
+            return Claim.CLAIMED;
+        } catch (ConditionalCheckFailedException e) {
+            timer.success();
+        } finally {
+            timer.close();
+        }
+
+        GetItemRequest getRequest = new GetItemRequest(tableName,
+                Collections.singletonMap(ID_ATTRIBUTE, new AttributeValue().withS(id)), true);
+        Map<String, AttributeValue> item = Throttling.guard("dynamodb", tableName).call(() -> client.getItem(getRequest)).getItem();
+        AttributeValue status = item == null ? null : item.get(STATUS_ATTRIBUTE);
+        // an item deleted in between was released by a failed attempt, which its redelivery will retry
+        return status != null && Claim.COMPLETED.name().equals(status.getS()) ? Claim.COMPLETED : Claim.IN_PROGRESS;
+    }
+
+    private static Map<String, AttributeValue> ownClaimValues(long leaseExpiry) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":in_progress", new AttributeValue().withS(Claim.IN_PROGRESS.name()));
+        values.put(":lease_expiry", new AttributeValue().withN(String.valueOf(leaseExpiry)));
+        return values;
+    }
+
+    private static Map<String, AttributeValue> item(String id, Claim status, long expiresAt) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put(ID_ATTRIBUTE, new AttributeValue().withS(id));
+        item.put(STATUS_ATTRIBUTE, new AttributeValue().withS(status.name()));
+        item.put(EXPIRES_ATTRIBUTE, new AttributeValue().withN(String.valueOf(expiresAt)));
+        return item;
+    }
+
+    private static Claim duplicate(String id, Claim status) {
+        if (status == Claim.COMPLETED) {
+            Metrics.get("idempotency.duplicates").increment(1);
+            LOGGER.info("Duplicate event {} skipped", id);
+        } else {
+            Metrics.get("idempotency.inProgress").increment(1);
+            LOGGER.info("Event {} is being processed by another delivery", id);
+        }
+        return status;
+    }
+
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * @return key of an S3 object version; {@code eTag} may be null when the notification has none
+     */
+    public static String objectKey(String bucketName, String key, String eTag) {
+        return "s3:" + bucketName + "/" + key + (eTag == null ? "" : "@" + eTag);
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public long getLeaseSeconds() {
+        return leaseSeconds;
+    }
+
+    /**
+     * Sets how long an unfinished claim blocks redeliveries; it should exceed the longest processing time.
+     * Defaults to 900 s, the maximum Lambda timeout.
+     */
+    public void setLeaseSeconds(long leaseSeconds) {
+        this.leaseSeconds = leaseSeconds;
+    }
+
+    /**
+     * @return number of cached IDs, including expired ones not evicted yet
+     */
+    public long getCachedCount() {
+        return claims.size();
+    }
+}
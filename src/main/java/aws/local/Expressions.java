@@ -0,0 +1,207 @@
+package aws.local;
+
+import com.amazonaws.services.dynamodbv2.model.AmazonDynamoDBException;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates the subset of DynamoDB expressions used by the library:
+ * conditions built from {@code = <> < <= > >=}, {@code attribute_exists}, {@code attribute_not_exists},
+ * {@code and}, {@code or}, {@code not} and parentheses, and {@code SET} / {@code REMOVE} update expressions.
+ */
+
+class Expressions {
+
+    private static final Pattern TOKEN = Pattern.compile("\\s*(<=|>=|<>|[=<>(),]|[#:]?[A-Za-z0-9_.\\-]+)");
+
+    private final List<String> tokens;
+    private final Map<String, String> names;
+    private final Map<String, AttributeValue> values;
+    private int position;
+
+    private Expressions(String expression, Map<String, String> names, Map<String, AttributeValue> values) {
+        this.tokens = tokenize(expression);
+        this.names = names;
+        this.values = values;
+    }
+
+    static boolean matches(String condition, Map<String, String> names, Map<String, AttributeValue> values,
+                           Map<String, AttributeValue> item) {
+        if (condition == null || condition.trim().isEmpty()) {
+            return true;
+        }
+        Expressions expressions = new Expressions(condition, names, values);
+        boolean result = expressions.or(item);
+        if (expressions.position != expressions.tokens.size()) {
+            throw validation("Unexpected token in expression: " + expressions.tokens.get(expressions.position));
+        }
+        return result;
+    }
+
+    static void update(String update, Map<String, String> names, Map<String, AttributeValue> values,
+                       Map<String, AttributeValue> item) {
+        Expressions expressions = new Expressions(update, names, values);
+        String clause = null;
+        while (expressions.position < expressions.tokens.size()) {
+            String token = expressions.peek();
+            if ("set".equalsIgnoreCase(token) || "remove".equalsIgnoreCase(token)) {
+                clause = expressions.next().toLowerCase();
+                continue;
+            }
+            if (",".equals(token)) {
+                expressions.next();
+                continue;
+            }
+            if ("set".equals(clause)) {
+                String name = expressions.name(expressions.next());
+                expressions.expect("=");
+                item.put(name, expressions.operand(expressions.next(), item));
+            } else if ("remove".equals(clause)) {
+                item.remove(expressions.name(expressions.next()));
+            } else {
+                throw validation("Unsupported update expression: " + update);
+            }
+        }
+    }
+
+    private boolean or(Map<String, AttributeValue> item) {
+        boolean result = and(item);
+        while ("or".equalsIgnoreCase(peek())) {
+            next();
+            result |= and(item);
+        }
+        return result;
+    }
+
+    private boolean and(Map<String, AttributeValue> item) {
+        boolean result = condition(item);
+        while ("and".equalsIgnoreCase(peek())) {
+            next();
+            result &= condition(item);
+        }
+        return result;
+    }
+
+    private boolean condition(Map<String, AttributeValue> item) {
+        String token = next();
+        if ("not".equalsIgnoreCase(token)) {
+            return !condition(item);
+        }
+        if ("(".equals(token)) {
+            boolean result = or(item);
+            expect(")");
+            return result;
+        }
+        if ("attribute_exists".equals(token) || "attribute_not_exists".equals(token)) {
+            expect("(");
+            boolean exists = item.containsKey(name(next()));
+            expect(")");
+            return "attribute_exists".equals(token) == exists;
+        }
+
+        AttributeValue left = operand(token, item);
+        String operator = next();
+        AttributeValue right = operand(next(), item);
+        if (left == null || right == null) {
+            return "<>".equals(operator) && (left != null || right != null);
+        }
+        int comparison = compare(left, right);
+        switch (operator) {
+            case "=":
+                return comparison == 0;
+            case "<>":
+                return comparison != 0;
+            case "<":
+                return comparison < 0;
+            case "<=":
+                return comparison <= 0;
+            case ">":
+                return comparison > 0;
+            case ">=":
+                return comparison >= 0;
+            default:
+                throw validation("Unsupported operator: " + operator);
+        }
+    }
+
+    private AttributeValue operand(String token, Map<String, AttributeValue> item) {
+        if (token.startsWith(":")) {
+            AttributeValue value = values == null ? null : values.get(token);
+            if (value == null) {
+                throw validation("Missing expression attribute value " + token);
+            }
+            return value;
+        }
+        return item.get(name(token));
+    }
+
+    private String name(String token) {
+        if (token.startsWith("#")) {
+            String name = names == null ? null : names.get(token);
+            if (name == null) {
+                throw validation("Missing expression attribute name " + token);
+            }
+            return name;
+        }
+        return token;
+    }
+
+    static int compare(AttributeValue left, AttributeValue right) {
+        if (left.getN() != null && right.getN() != null) {
+            return new BigDecimal(left.getN()).compareTo(new BigDecimal(right.getN()));
+        }
+        if (left.getS() != null && right.getS() != null) {
+            return left.getS().compareTo(right.getS());
+        }
+        if (left.getBOOL() != null && right.getBOOL() != null) {
+            return left.getBOOL().equals(right.getBOOL()) ? 0 : 1;
+        }
+        return left.equals(right) ? 0 : 1;
+    }
+
+    private String peek() {
+        return position < tokens.size() ? tokens.get(position) : null;
+    }
+
+    private String next() {
+        if (position >= tokens.size()) {
+            throw validation("Unexpected end of expression");
+        }
+        return tokens.get(position++);
+    }
+
+    private void expect(String token) {
+        String actual = next();
+        if (!token.equals(actual)) {
+            throw validation("Expected " + token + " but found " + actual);
+        }
+    }
+
+    private static List<String> tokenize(String expression) {
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = TOKEN.matcher(expression);
+        int end = 0;
+        while (matcher.lookingAt()) {
+            tokens.add(matcher.group(1));
+            end = matcher.end();
+            matcher.region(end, expression.length());
+        }
+        if (!expression.substring(end).trim().isEmpty()) {
+            throw validation("Invalid expression: " + expression);
+        }
+        return tokens;
+    }
+
+    static AmazonDynamoDBException validation(String message) {
+        AmazonDynamoDBException e = new AmazonDynamoDBException(message);
+        e.setErrorCode("ValidationException");
+        e.setStatusCode(400);
+        return e;
+    }
+}
@@ -0,0 +1,84 @@
+package aws.local;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latency and throttling injected into every call of an in-memory stand-in.
+ * Each call sleeps {@code latencyMillis} plus a uniform random {@code latencyJitterMillis}, then is throttled
+ * with probability {@code throttleProbability} or when it exceeds {@code maxRequestsPerSecond} (0 means unlimited),
+ * which models a table or queue with fixed capacity and one second of burst.
+ */
+
+public class FaultInjector {
+
+    private volatile long latencyMillis;
+    private volatile long latencyJitterMillis;
+    private volatile double throttleProbability;
+    private volatile double maxRequestsPerSecond;
+
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * @return {@code true} when the call must be rejected with a throttling error
+     */
+    public boolean beforeCall() {
+        long delay = latencyMillis + (latencyJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (throttleProbability > 0 && ThreadLocalRandom.current().nextDouble() < throttleProbability) {
+            return true;
+        }
+        return maxRequestsPerSecond > 0 && !takeToken();
+    }
+
+    private synchronized boolean takeToken() {
+        long now = System.nanoTime();
+        tokens = Math.min(maxRequestsPerSecond, tokens + (now - lastRefill) * maxRequestsPerSecond / 1e9);
+        lastRefill = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public long getLatencyJitterMillis() {
+        return latencyJitterMillis;
+    }
+
+    public void setLatencyJitterMillis(long latencyJitterMillis) {
+        this.latencyJitterMillis = latencyJitterMillis;
+    }
+
+    public double getThrottleProbability() {
+        return throttleProbability;
+    }
+
+    public void setThrottleProbability(double throttleProbability) {
+        this.throttleProbability = throttleProbability;
+    }
+
+    public double getMaxRequestsPerSecond() {
+        return maxRequestsPerSecond;
+    }
+
+    public synchronized void setMaxRequestsPerSecond(double maxRequestsPerSecond) {
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+        this.tokens = maxRequestsPerSecond;
+        this.lastRefill = System.nanoTime();
+    }
+}
@@ -0,0 +1,348 @@
+package aws.local;
+
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.CreateTableResult;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ResourceInUseException;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory stand-in for DynamoDB covering the calls made by {@link aws.dynamoDB.service.DynamoService}:
+ * put, get, update and delete of single items with condition and update expressions, batch write and get,
+ * segmented scans with filter expressions and paging, and queries on the table or a global secondary index.
+ * Queries return all matches in one page. Tables are created with {@link #createTable(CreateTableRequest)}
+ * or {@link #createTable(String, String, String)}. Throttled calls fail with
+ * {@link ProvisionedThroughputExceededException}, or return every item as unprocessed for batch calls.
+ */
+
+public class InMemoryDynamoDB extends AbstractAmazonDynamoDB {
+
+    private static final int MAX_BATCH_WRITE_SIZE = 25;
+    private static final int MAX_BATCH_GET_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final Map<String, LocalTable> tables = new ConcurrentHashMap<>();
+    private final FaultInjector faults = new FaultInjector();
+
+    public FaultInjector getFaults() {
+        return faults;
+    }
+
+    /**
+     * Nothing to release; allows the stand-in to be registered in {@link aws.client.AWSClientRegistry}.
+     */
+    @Override
+    public void shutdown() {
+    }
+
+    public void createTable(String tableName, String hashKey, String rangeKey) {
+        tables.put(tableName, new LocalTable(hashKey, rangeKey));
+    }
+
+    /**
+     * Adds a global secondary index to an existing table.
+     */
+    public void createIndex(String tableName, String indexName, String hashKey, String rangeKey) {
+        table(tableName).indexes.put(indexName, new String[]{hashKey, rangeKey});
+    }
+
+    public int getItemCount(String tableName) {
+        return table(tableName).items.size();
+    }
+
+    @Override
+    public CreateTableResult createTable(CreateTableRequest request) {
+        LocalTable table = new LocalTable(keyName(request.getKeySchema(), KeyType.HASH), keyName(request.getKeySchema(), KeyType.RANGE));
+        if (request.getGlobalSecondaryIndexes() != null) {
+            for (GlobalSecondaryIndex index : request.getGlobalSecondaryIndexes()) {
+                table.indexes.put(index.getIndexName(),
+                        new String[]{keyName(index.getKeySchema(), KeyType.HASH), keyName(index.getKeySchema(), KeyType.RANGE)});
+            }
+        }
+        if (tables.putIfAbsent(request.getTableName(), table) != null) {
+            throw new ResourceInUseException("Table already exists: " + request.getTableName());
+        }
+        return new CreateTableResult().withTableDescription(new TableDescription()
+                .withTableName(request.getTableName())
+                .withKeySchema(request.getKeySchema())
+                .withTableStatus("ACTIVE"));
+    }
+
+    @Override
+    public PutItemResult putItem(PutItemRequest request) {
+        throttle();
+        LocalTable table = table(request.getTableName());
+        Map<String, AttributeValue> item = new HashMap<>(request.getItem());
+        String key = table.key(item);
+        synchronized (table) {
+            Map<String, AttributeValue> old = table.items.get(key);
+            check(request.getConditionExpression(), request.getExpressionAttributeNames(),
+                    request.getExpressionAttributeValues(), old);
+            table.items.put(key, item);
+            return new PutItemResult().withAttributes(returnsOld(request.getReturnValues()) ? old : null);
+        }
+    }
+
+    @Override
+    public GetItemResult getItem(GetItemRequest request) {
+        throttle();
+        LocalTable table = table(request.getTableName());
+        Map<String, AttributeValue> item = table.items.get(table.key(request.getKey()));
+        return new GetItemResult().withItem(item == null ? null : new HashMap<>(item));
+    }
+
+    @Override
+    public UpdateItemResult updateItem(UpdateItemRequest request) {
+        throttle();
+        LocalTable table = table(request.getTableName());
+        String key = table.key(request.getKey());
+        synchronized (table) {
+            Map<String, AttributeValue> old = table.items.get(key);
+            check(request.getConditionExpression(), request.getExpressionAttributeNames(),
+                    request.getExpressionAttributeValues(), old);
+            Map<String, AttributeValue> item = old == null ? new HashMap<>(request.getKey()) : new HashMap<>(old);
+            Expressions.update(request.getUpdateExpression(), request.getExpressionAttributeNames(),
+                    request.getExpressionAttributeValues(), item);
+            table.items.put(key, item);
+
+            String returnValues = request.getReturnValues();
+            UpdateItemResult result = new UpdateItemResult();
+            if (ReturnValue.ALL_OLD.toString().equals(returnValues) || ReturnValue.UPDATED_OLD.toString().equals(returnValues)) {
+                result.setAttributes(old);
+            } else if (returnValues != null && !ReturnValue.NONE.toString().equals(returnValues)) {
+                result.setAttributes(new HashMap<>(item));
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public DeleteItemResult deleteItem(DeleteItemRequest request) {
+        throttle();
+        LocalTable table = table(request.getTableName());
+        String key = table.key(request.getKey());
+        synchronized (table) {
+            Map<String, AttributeValue> old = table.items.get(key);
+            check(request.getConditionExpression(), request.getExpressionAttributeNames(),
+                    request.getExpressionAttributeValues(), old);
+            table.items.remove(key);
+            return new DeleteItemResult().withAttributes(returnsOld(request.getReturnValues()) ? old : null);
+        }
+    }
+
+    @Override
+    public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+        int size = request.getRequestItems().values().stream().mapToInt(List::size).sum();
+        if (size > MAX_BATCH_WRITE_SIZE) {
+            throw Expressions.validation("Too many items requested for the BatchWriteItem call");
+        }
+        if (faults.beforeCall()) {
+            return new BatchWriteItemResult().withUnprocessedItems(request.getRequestItems());
+        }
+        for (Map.Entry<String, List<WriteRequest>> entry : request.getRequestItems().entrySet()) {
+            LocalTable table = table(entry.getKey());
+            synchronized (table) {
+                for (WriteRequest writeRequest : entry.getValue()) {
+                    if (writeRequest.getPutRequest() != null) {
+                        Map<String, AttributeValue> item = new HashMap<>(writeRequest.getPutRequest().getItem());
+                        table.items.put(table.key(item), item);
+                    } else if (writeRequest.getDeleteRequest() != null) {
+                        table.items.remove(table.key(writeRequest.getDeleteRequest().getKey()));
+                    }
+                }
+            }
+        }
+        return new BatchWriteItemResult().withUnprocessedItems(Collections.emptyMap());
+    }
+
+    @Override
+    public BatchGetItemResult batchGetItem(BatchGetItemRequest request) {
+        int size = request.getRequestItems().values().stream().mapToInt(k -> k.getKeys().size()).sum();
+        if (size > MAX_BATCH_GET_SIZE) {
+            throw Expressions.validation("Too many items requested for the BatchGetItem call");
+        }
+        if (faults.beforeCall()) {
+            return new BatchGetItemResult().withResponses(Collections.emptyMap()).withUnprocessedKeys(request.getRequestItems());
+        }
+        Map<String, List<Map<String, AttributeValue>>> responses = new HashMap<>();
+        for (Map.Entry<String, KeysAndAttributes> entry : request.getRequestItems().entrySet()) {
+            LocalTable table = table(entry.getKey());
+            List<Map<String, AttributeValue>> items = new ArrayList<>();
+            for (Map<String, AttributeValue> key : entry.getValue().getKeys()) {
+                Map<String, AttributeValue> item = table.items.get(table.key(key));
+                if (item != null) {
+                    items.add(new HashMap<>(item));
+                }
+            }
+            responses.put(entry.getKey(), items);
+        }
+        return new BatchGetItemResult().withResponses(responses).withUnprocessedKeys(Collections.emptyMap());
+    }
+
+    @Override
+    public ScanResult scan(ScanRequest request) {
+        throttle();
+        LocalTable table = table(request.getTableName());
+        NavigableMap<String, Map<String, AttributeValue>> items = table.items;
+        if (request.getExclusiveStartKey() != null) {
+            items = items.tailMap(table.key(request.getExclusiveStartKey()), false);
+        }
+        int limit = request.getLimit() == null ? MAX_PAGE_SIZE : Math.min(request.getLimit(), MAX_PAGE_SIZE);
+        int totalSegments = request.getTotalSegments() == null ? 1 : request.getTotalSegments();
+        int segment = request.getSegment() == null ? 0 : request.getSegment();
+
+        List<Map<String, AttributeValue>> page = new ArrayList<>();
+        int scanned = 0;
+        String lastKey = null;
+        for (Map.Entry<String, Map<String, AttributeValue>> entry : items.entrySet()) {
+            if (Math.floorMod(entry.getValue().get(table.hashKey).hashCode(), totalSegments) != segment) {
+                continue;
+            }
+            if (scanned == limit) {
+                return new ScanResult().withItems(page).withCount(page.size()).withScannedCount(scanned)
+                        .withLastEvaluatedKey(table.keyOf(items.get(lastKey)));
+            }
+            scanned++;
+            lastKey = entry.getKey();
+            if (Expressions.matches(request.getFilterExpression(), request.getExpressionAttributeNames(),
+                    request.getExpressionAttributeValues(), entry.getValue())) {
+                page.add(new HashMap<>(entry.getValue()));
+            }
+        }
+        return new ScanResult().withItems(page).withCount(page.size()).withScannedCount(scanned);
+    }
+
+    @Override
+    public QueryResult query(QueryRequest request) {
+        throttle();
+        LocalTable table = table(request.getTableName());
+        String[] keys = {table.hashKey, table.rangeKey};
+        if (request.getIndexName() != null) {
+            keys = table.indexes.get(request.getIndexName());
+            if (keys == null) {
+                throw Expressions.validation("The table does not have the specified index: " + request.getIndexName());
+            }
+        }
+
+        List<Map<String, AttributeValue>> matches = new ArrayList<>();
+        for (Map<String, AttributeValue> item : table.items.values()) {
+            if (item.containsKey(keys[0]) && (keys[1] == null || item.containsKey(keys[1]))
+                    && Expressions.matches(request.getKeyConditionExpression(), request.getExpressionAttributeNames(),
+                    request.getExpressionAttributeValues(), item)
+                    && Expressions.matches(request.getFilterExpression(), request.getExpressionAttributeNames(),
+                    request.getExpressionAttributeValues(), item)) {
+                matches.add(new HashMap<>(item));
+            }
+        }
+        if (keys[1] != null) {
+            String rangeKey = keys[1];
+            Comparator<Map<String, AttributeValue>> order = (a, b) -> Expressions.compare(a.get(rangeKey), b.get(rangeKey));
+            matches.sort(Boolean.FALSE.equals(request.getScanIndexForward()) ? order.reversed() : order);
+        }
+        return new QueryResult().withItems(matches).withCount(matches.size()).withScannedCount(matches.size());
+    }
+
+    private void throttle() {
+        if (faults.beforeCall()) {
+            ProvisionedThroughputExceededException e = new ProvisionedThroughputExceededException(
+                    "The level of configured provisioned throughput for the table was exceeded");
+            e.setErrorCode("ProvisionedThroughputExceededException");
+            e.setStatusCode(400);
+            throw e;
+        }
+    }
+
+    private LocalTable table(String tableName) {
+        LocalTable table = tables.get(tableName);
+        if (table == null) {
+            throw new ResourceNotFoundException("Requested resource not found: Table: " + tableName + " not found");
+        }
+        return table;
+    }
+
+    private static void check(String condition, Map<String, String> names, Map<String, AttributeValue> values,
+                              Map<String, AttributeValue> item) {
+        if (!Expressions.matches(condition, names, values, item == null ? Collections.emptyMap() : item)) {
+            throw new ConditionalCheckFailedException("The conditional request failed");
+        }
+    }
+
+    private static boolean returnsOld(String returnValues) {
+        return ReturnValue.ALL_OLD.toString().equals(returnValues);
+    }
+
+    private static String keyName(List<KeySchemaElement> keySchema, KeyType keyType) {
+        for (KeySchemaElement element : keySchema) {
+            if (keyType.toString().equals(element.getKeyType())) {
+                return element.getAttributeName();
+            }
+        }
+        return null;
+    }
+
+    private static class LocalTable {
+        final String hashKey;
+        final String rangeKey;
+        final Map<String, String[]> indexes = new ConcurrentHashMap<>();
+        final ConcurrentSkipListMap<String, Map<String, AttributeValue>> items = new ConcurrentSkipListMap<>();
+
+        LocalTable(String hashKey, String rangeKey) {
+            this.hashKey = hashKey;
+            this.rangeKey = rangeKey;
+        }
+
+        String key(Map<String, AttributeValue> item) {
+            AttributeValue hash = item.get(hashKey);
+            AttributeValue range = rangeKey == null ? null : item.get(rangeKey);
+            if (hash == null || (rangeKey != null && range == null)) {
+                throw Expressions.validation("The provided key element does not match the schema");
+            }
+            return range == null ? String.valueOf(hash) : hash + "\u0000" + range;
+        }
+
+        Map<String, AttributeValue> keyOf(Map<String, AttributeValue> item) {
+            Map<String, AttributeValue> key = new HashMap<>();
+            key.put(hashKey, item.get(hashKey));
+            if (rangeKey != null) {
+                key.put(rangeKey, item.get(rangeKey));
+            }
+            return key;
+        }
+    }
+}
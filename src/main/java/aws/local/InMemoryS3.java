@@ -0,0 +1,323 @@
+package aws.local;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyObjectResult;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.CopyPartResult;
+import com.amazonaws.services.s3.model.DeleteObjectRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.GetObjectTaggingRequest;
+import com.amazonaws.services.s3.model.GetObjectTaggingResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.ObjectTagging;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.s3.model.Tag;
+import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.IOUtils;
+import com.amazonaws.util.Md5Utils;
+import org.apache.http.client.methods.HttpGet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory stand-in for S3 covering the calls made by {@link aws.s3.service.S3Service}:
+ * put, get (including ranged gets), head, copy, delete and multi-object delete, and multipart copies.
+ * Throttled calls fail with a 503 {@code SlowDown} error.
+ */
+
+public class InMemoryS3 extends AbstractAmazonS3 {
+
+    private final Map<String, StoredObject> objects = new ConcurrentHashMap<>();
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+    private final FaultInjector faults = new FaultInjector();
+
+    public FaultInjector getFaults() {
+        return faults;
+    }
+
+    /**
+     * Nothing to release; allows the stand-in to be registered in {@link aws.client.AWSClientRegistry}.
+     */
+    @Override
+    public void shutdown() {
+    }
+
+    public int getObjectCount() {
+        return objects.size();
+    }
+
+    @Override
+    public boolean doesObjectExist(String bucketName, String objectName) {
+        throttle();
+        return objects.containsKey(path(bucketName, objectName));
+    }
+
+    @Override
+    public PutObjectResult putObject(String bucketName, String key, String content) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType("text/plain");
+        return putObject(new PutObjectRequest(bucketName, key, new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), metadata));
+    }
+
+    @Override
+    public PutObjectResult putObject(PutObjectRequest request) {
+        throttle();
+        byte[] content;
+        try (InputStream input = request.getFile() != null ? new FileInputStream(request.getFile()) : request.getInputStream()) {
+            content = IOUtils.toByteArray(input);
+        } catch (IOException e) {
+            throw new AmazonS3Exception("Unable to read content of " + request.getKey() + ": " + e.getMessage());
+        }
+        ObjectMetadata metadata = request.getMetadata() == null ? new ObjectMetadata() : request.getMetadata().clone();
+        StoredObject object = store(request.getBucketName(), request.getKey(), content, metadata);
+        object.tags = tags(request.getTagging());
+
+        PutObjectResult result = new PutObjectResult();
+        result.setETag(object.metadata.getETag());
+        result.setMetadata(object.metadata.clone());
+        return result;
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(String bucketName, String key) {
+        return getObjectMetadata(new GetObjectMetadataRequest(bucketName, key));
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+        throttle();
+        return object(request.getBucketName(), request.getKey()).metadata.clone();
+    }
+
+    @Override
+    public S3Object getObject(String bucketName, String key) {
+        return getObject(new GetObjectRequest(bucketName, key));
+    }
+
+    @Override
+    public S3Object getObject(GetObjectRequest request) {
+        throttle();
+        StoredObject stored = object(request.getBucketName(), request.getKey());
+        byte[] content = stored.content;
+        long[] range = request.getRange();
+        if (range != null) {
+            int start = (int) Math.min(range[0], content.length);
+            int end = (int) Math.min(range[1] + 1, content.length);
+            content = Arrays.copyOfRange(content, start, end);
+        }
+
+        ObjectMetadata metadata = stored.metadata.clone();
+        metadata.setContentLength(content.length);
+        S3Object object = new S3Object();
+        object.setBucketName(request.getBucketName());
+        object.setKey(request.getKey());
+        object.setObjectMetadata(metadata);
+        object.setObjectContent(new S3ObjectInputStream(new ByteArrayInputStream(content), new HttpGet()));
+        return object;
+    }
+
+    @Override
+    public CopyObjectResult copyObject(CopyObjectRequest request) {
+        throttle();
+        StoredObject source = object(request.getSourceBucketName(), request.getSourceKey());
+        ObjectMetadata metadata = request.getNewObjectMetadata() != null ? request.getNewObjectMetadata().clone() : source.metadata.clone();
+        StoredObject copy = store(request.getDestinationBucketName(), request.getDestinationKey(), source.content, metadata);
+        copy.tags = source.tags;
+
+        CopyObjectResult result = new CopyObjectResult();
+        result.setETag(copy.metadata.getETag());
+        result.setLastModifiedDate(copy.metadata.getLastModified());
+        return result;
+    }
+
+    @Override
+    public GetObjectTaggingResult getObjectTagging(GetObjectTaggingRequest request) {
+        throttle();
+        return new GetObjectTaggingResult(new ArrayList<>(object(request.getBucketName(), request.getKey()).tags));
+    }
+
+    @Override
+    public void deleteObject(String bucketName, String key) {
+        deleteObject(new DeleteObjectRequest(bucketName, key));
+    }
+
+    @Override
+    public void deleteObject(DeleteObjectRequest request) {
+        throttle();
+        objects.remove(path(request.getBucketName(), request.getKey()));
+    }
+
+    @Override
+    public DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) {
+        throttle();
+        if (request.getKeys().size() > 1000) {
+            throw error(400, "MalformedXML", "The request must contain no more than 1000 keys");
+        }
+        List<DeleteObjectsResult.DeletedObject> deleted = new ArrayList<>();
+        for (DeleteObjectsRequest.KeyVersion keyVersion : request.getKeys()) {
+            objects.remove(path(request.getBucketName(), keyVersion.getKey()));
+            DeleteObjectsResult.DeletedObject deletedObject = new DeleteObjectsResult.DeletedObject();
+            deletedObject.setKey(keyVersion.getKey());
+            deleted.add(deletedObject);
+        }
+        return new DeleteObjectsResult(request.getQuiet() ? new ArrayList<>() : deleted);
+    }
+
+    @Override
+    public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+        throttle();
+        String uploadId = UUID.randomUUID().toString();
+        ObjectMetadata metadata = request.getObjectMetadata() == null ? new ObjectMetadata() : request.getObjectMetadata().clone();
+        Upload upload = new Upload(request.getBucketName(), request.getKey(), metadata);
+        upload.tags = tags(request.getTagging());
+        uploads.put(uploadId, upload);
+
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setUploadId(uploadId);
+        return result;
+    }
+
+    @Override
+    public CopyPartResult copyPart(CopyPartRequest request) {
+        throttle();
+        Upload upload = upload(request.getUploadId());
+        byte[] source = object(request.getSourceBucketName(), request.getSourceKey()).content;
+        byte[] part = request.getFirstByte() == null ? source
+                : Arrays.copyOfRange(source, request.getFirstByte().intValue(), request.getLastByte().intValue() + 1);
+        upload.parts.put(request.getPartNumber(), part);
+
+        CopyPartResult result = new CopyPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag(BinaryUtils.toHex(Md5Utils.computeMD5Hash(part)));
+        return result;
+    }
+
+    @Override
+    public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        throttle();
+        Upload upload = upload(request.getUploadId());
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (PartETag partETag : request.getPartETags()) {
+            byte[] part = upload.parts.get(partETag.getPartNumber());
+            if (part == null) {
+                throw error(400, "InvalidPart", "Part " + partETag.getPartNumber() + " was not uploaded");
+            }
+            content.write(part, 0, part.length);
+        }
+        uploads.remove(request.getUploadId());
+        StoredObject object = store(upload.bucketName, upload.key, content.toByteArray(), upload.metadata);
+        object.tags = upload.tags;
+
+        CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+        result.setBucketName(upload.bucketName);
+        result.setKey(upload.key);
+        result.setETag(object.metadata.getETag());
+        return result;
+    }
+
+    @Override
+    public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+        throttle();
+        uploads.remove(request.getUploadId());
+    }
+
+    private StoredObject store(String bucketName, String key, byte[] content, ObjectMetadata metadata) {
+        metadata.setContentLength(content.length);
+        metadata.setHeader("ETag", BinaryUtils.toHex(Md5Utils.computeMD5Hash(content)));
+        metadata.setLastModified(new Date());
+        StoredObject object = new StoredObject(content, metadata);
+        objects.put(path(bucketName, key), object);
+        return object;
+    }
+
+    private StoredObject object(String bucketName, String key) {
+        StoredObject object = objects.get(path(bucketName, key));
+        if (object == null) {
+            throw error(404, "NoSuchKey", "The specified key does not exist: " + key);
+        }
+        return object;
+    }
+
+    private Upload upload(String uploadId) {
+        Upload upload = uploads.get(uploadId);
+        if (upload == null) {
+            throw error(404, "NoSuchUpload", "The specified upload does not exist: " + uploadId);
+        }
+        return upload;
+    }
+
+    private void throttle() {
+        if (faults.beforeCall()) {
+            throw error(503, "SlowDown", "Please reduce your request rate.");
+        }
+    }
+
+    private static AmazonS3Exception error(int statusCode, String errorCode, String message) {
+        AmazonS3Exception e = new AmazonS3Exception(message);
+        e.setStatusCode(statusCode);
+        e.setErrorCode(errorCode);
+        return e;
+    }
+
+    private static List<Tag> tags(ObjectTagging tagging) {
+        return tagging == null || tagging.getTagSet() == null ? Collections.emptyList() : new ArrayList<>(tagging.getTagSet());
+    }
+
+    private static String path(String bucketName, String key) {
+        return bucketName + "/" + key;
+    }
+
+    private static class StoredObject {
+        final byte[] content;
+        final ObjectMetadata metadata;
+        volatile List<Tag> tags = Collections.emptyList();
+
+        StoredObject(byte[] content, ObjectMetadata metadata) {
+            this.content = content;
+            this.metadata = metadata;
+        }
+    }
+
+    private static class Upload {
+        final String bucketName;
+        final String key;
+        final ObjectMetadata metadata;
+        final Map<Integer, byte[]> parts = new ConcurrentHashMap<>();
+        volatile List<Tag> tags = Collections.emptyList();
+
+        Upload(String bucketName, String key, ObjectMetadata metadata) {
+            this.bucketName = bucketName;
+            this.key = key;
+            this.metadata = metadata;
+        }
+    }
+}
@@ -0,0 +1,466 @@
+package aws.local;
+
+import com.amazonaws.services.sqs.AbstractAmazonSQS;
+import com.amazonaws.services.sqs.model.AmazonSQSException;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityResult;
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.CreateQueueResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageResult;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
+import com.amazonaws.services.sqs.model.GetQueueUrlRequest;
+import com.amazonaws.services.sqs.model.GetQueueUrlResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.PurgeQueueRequest;
+import com.amazonaws.services.sqs.model.PurgeQueueResult;
+import com.amazonaws.services.sqs.model.QueueAttributeName;
+import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
+import com.amazonaws.services.sqs.model.ReceiptHandleIsInvalidException;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import com.amazonaws.services.sqs.model.SetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.SetQueueAttributesResult;
+import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.Md5Utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory stand-in for SQS covering the calls made by {@link aws.sqs.service.SQSService} and
+ * {@link aws.sqs.service.SQSConsumer}: single and batch sends, long-polling receives with visibility timeouts,
+ * single and batch deletes, visibility changes, queue attributes (including a redrive policy) and purge.
+ * As in SQS, a receive returns only the message attributes named in its request.
+ * Queues are created with {@link #createQueue(String)}. Throttled calls fail with a {@code ThrottlingException}.
+ */
+
+public class InMemorySQS extends AbstractAmazonSQS {
+
+    private static final String URL_PREFIX = "https://sqs.local/000000000000/";
+    private static final String ARN_PREFIX = "arn:aws:sqs:local:000000000000:";
+    private static final int MAX_BODY_BYTES = 256 * 1024;
+    private static final int DEFAULT_VISIBILITY_TIMEOUT_SECONDS = 30;
+    private static final Pattern REDRIVE_POLICY = Pattern.compile(
+            "\"maxReceiveCount\"\\s*:\\s*\"?(\\d+)\"?.*\"deadLetterTargetArn\"\\s*:\\s*\"([^\"]+)\"");
+
+    private final Map<String, LocalQueue> queues = new ConcurrentHashMap<>();
+    private final FaultInjector faults = new FaultInjector();
+
+    public FaultInjector getFaults() {
+        return faults;
+    }
+
+    /**
+     * Nothing to release; allows the stand-in to be registered in {@link aws.client.AWSClientRegistry}.
+     */
+    @Override
+    public void shutdown() {
+    }
+
+    /**
+     * @return number of messages in the queue, visible or in flight
+     */
+    public int getMessageCount(String queueUrl) {
+        LocalQueue queue = queue(queueUrl);
+        queue.lock.lock();
+        try {
+            return queue.messages.size();
+        } finally {
+            queue.lock.unlock();
+        }
+    }
+
+    @Override
+    public CreateQueueResult createQueue(String queueName) {
+        return createQueue(new CreateQueueRequest(queueName));
+    }
+
+    @Override
+    public CreateQueueResult createQueue(CreateQueueRequest request) {
+        LocalQueue queue = queues.computeIfAbsent(request.getQueueName(), LocalQueue::new);
+        if (request.getAttributes() != null) {
+            queue.attributes.putAll(request.getAttributes());
+        }
+        return new CreateQueueResult().withQueueUrl(URL_PREFIX + request.getQueueName());
+    }
+
+    @Override
+    public GetQueueUrlResult getQueueUrl(String queueName) {
+        return getQueueUrl(new GetQueueUrlRequest(queueName));
+    }
+
+    @Override
+    public GetQueueUrlResult getQueueUrl(GetQueueUrlRequest request) {
+        throttle();
+        return new GetQueueUrlResult().withQueueUrl(URL_PREFIX + queueByName(request.getQueueName()).name);
+    }
+
+    @Override
+    public GetQueueAttributesResult getQueueAttributes(GetQueueAttributesRequest request) {
+        throttle();
+        LocalQueue queue = queue(request.getQueueUrl());
+        Map<String, String> attributes = new HashMap<>(queue.attributes);
+        queue.lock.lock();
+        try {
+            long now = System.nanoTime();
+            int visible = 0;
+            for (LocalMessage message : queue.messages.values()) {
+                if (message.visibleAt <= now) {
+                    visible++;
+                }
+            }
+            attributes.put(QueueAttributeName.ApproximateNumberOfMessages.toString(), String.valueOf(visible));
+            attributes.put(QueueAttributeName.ApproximateNumberOfMessagesNotVisible.toString(),
+                    String.valueOf(queue.messages.size() - visible));
+        } finally {
+            queue.lock.unlock();
+        }
+        attributes.put(QueueAttributeName.QueueArn.toString(), ARN_PREFIX + queue.name);
+        if (!request.getAttributeNames().isEmpty() && !request.getAttributeNames().contains("All")) {
+            attributes.keySet().retainAll(request.getAttributeNames());
+        }
+        return new GetQueueAttributesResult().withAttributes(attributes);
+    }
+
+    @Override
+    public SetQueueAttributesResult setQueueAttributes(SetQueueAttributesRequest request) {
+        throttle();
+        queue(request.getQueueUrl()).attributes.putAll(request.getAttributes());
+        return new SetQueueAttributesResult();
+    }
+
+    @Override
+    public SendMessageResult sendMessage(SendMessageRequest request) {
+        throttle();
+        if (request.getMessageBody().getBytes(StandardCharsets.UTF_8).length > MAX_BODY_BYTES) {
+            throw error("InvalidParameterValue", "Message must be shorter than " + MAX_BODY_BYTES + " bytes", 400);
+        }
+        LocalMessage message = queue(request.getQueueUrl()).add(request.getMessageBody(), request.getMessageAttributes(),
+                delayNanos(request.getDelaySeconds()));
+        return new SendMessageResult().withMessageId(message.messageId).withMD5OfMessageBody(message.md5OfBody);
+    }
+
+    @Override
+    public SendMessageBatchResult sendMessageBatch(SendMessageBatchRequest request) {
+        throttle();
+        if (request.getEntries().size() > 10) {
+            throw error("AWS.SimpleQueueService.TooManyEntriesInBatchRequest", "Maximum number of entries per request are 10", 400);
+        }
+        int totalBytes = 0;
+        for (SendMessageBatchRequestEntry entry : request.getEntries()) {
+            totalBytes += entry.getMessageBody().getBytes(StandardCharsets.UTF_8).length;
+        }
+        if (totalBytes > MAX_BODY_BYTES) {
+            throw error("AWS.SimpleQueueService.BatchRequestTooLong", "Batch requests cannot be longer than " + MAX_BODY_BYTES + " bytes", 400);
+        }
+
+        LocalQueue queue = queue(request.getQueueUrl());
+        SendMessageBatchResult result = new SendMessageBatchResult();
+        for (SendMessageBatchRequestEntry entry : request.getEntries()) {
+            LocalMessage message = queue.add(entry.getMessageBody(), entry.getMessageAttributes(), delayNanos(entry.getDelaySeconds()));
+            result.getSuccessful().add(new SendMessageBatchResultEntry()
+                    .withId(entry.getId())
+                    .withMessageId(message.messageId)
+                    .withMD5OfMessageBody(message.md5OfBody));
+        }
+        return result;
+    }
+
+    @Override
+    public ReceiveMessageResult receiveMessage(String queueUrl) {
+        return receiveMessage(new ReceiveMessageRequest(queueUrl));
+    }
+
+    @Override
+    public ReceiveMessageResult receiveMessage(ReceiveMessageRequest request) {
+        throttle();
+        LocalQueue queue = queue(request.getQueueUrl());
+        int maxMessages = request.getMaxNumberOfMessages() == null ? 1 : request.getMaxNumberOfMessages();
+        long waitNanos = TimeUnit.SECONDS.toNanos(request.getWaitTimeSeconds() == null ? 0 : request.getWaitTimeSeconds());
+        long visibilityNanos = TimeUnit.SECONDS.toNanos(request.getVisibilityTimeout() != null ? request.getVisibilityTimeout()
+                : Integer.parseInt(queue.attributes.getOrDefault(QueueAttributeName.VisibilityTimeout.toString(),
+                String.valueOf(DEFAULT_VISIBILITY_TIMEOUT_SECONDS))));
+        return new ReceiveMessageResult().withMessages(queue.receive(maxMessages, waitNanos, visibilityNanos,
+                request.getMessageAttributeNames()));
+    }
+
+    @Override
+    public DeleteMessageResult deleteMessage(String queueUrl, String receiptHandle) {
+        return deleteMessage(new DeleteMessageRequest(queueUrl, receiptHandle));
+    }
+
+    @Override
+    public DeleteMessageResult deleteMessage(DeleteMessageRequest request) {
+        throttle();
+        if (!queue(request.getQueueUrl()).delete(request.getReceiptHandle())) {
+            throw new ReceiptHandleIsInvalidException("The receipt handle is not valid: " + request.getReceiptHandle());
+        }
+        return new DeleteMessageResult();
+    }
+
+    @Override
+    public DeleteMessageBatchResult deleteMessageBatch(DeleteMessageBatchRequest request) {
+        throttle();
+        LocalQueue queue = queue(request.getQueueUrl());
+        DeleteMessageBatchResult result = new DeleteMessageBatchResult();
+        for (DeleteMessageBatchRequestEntry entry : request.getEntries()) {
+            if (queue.delete(entry.getReceiptHandle())) {
+                result.getSuccessful().add(new DeleteMessageBatchResultEntry().withId(entry.getId()));
+            } else {
+                result.getFailed().add(new BatchResultErrorEntry()
+                        .withId(entry.getId())
+                        .withCode("ReceiptHandleIsInvalid")
+                        .withMessage("The receipt handle is not valid")
+                        .withSenderFault(true));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public ChangeMessageVisibilityResult changeMessageVisibility(ChangeMessageVisibilityRequest request) {
+        throttle();
+        if (!queue(request.getQueueUrl()).changeVisibility(request.getReceiptHandle(),
+                TimeUnit.SECONDS.toNanos(request.getVisibilityTimeout()))) {
+            throw new ReceiptHandleIsInvalidException("The receipt handle is not valid: " + request.getReceiptHandle());
+        }
+        return new ChangeMessageVisibilityResult();
+    }
+
+    @Override
+    public PurgeQueueResult purgeQueue(PurgeQueueRequest request) {
+        throttle();
+        LocalQueue queue = queue(request.getQueueUrl());
+        queue.lock.lock();
+        try {
+            queue.messages.clear();
+        } finally {
+            queue.lock.unlock();
+        }
+        return new PurgeQueueResult();
+    }
+
+    private void throttle() {
+        if (faults.beforeCall()) {
+            throw error("ThrottlingException", "Rate exceeded", 400);
+        }
+    }
+
+    private LocalQueue queue(String queueUrl) {
+        if (queueUrl == null || !queueUrl.startsWith(URL_PREFIX)) {
+            throw new QueueDoesNotExistException("The specified queue does not exist: " + queueUrl);
+        }
+        return queueByName(queueUrl.substring(URL_PREFIX.length()));
+    }
+
+    private LocalQueue queueByName(String name) {
+        LocalQueue queue = queues.get(name);
+        if (queue == null) {
+            QueueDoesNotExistException e = new QueueDoesNotExistException("The specified queue does not exist: " + name);
+            e.setErrorCode("AWS.SimpleQueueService.NonExistentQueue");
+            throw e;
+        }
+        return queue;
+    }
+
+    private static long delayNanos(Integer delaySeconds) {
+        return delaySeconds == null ? 0 : TimeUnit.SECONDS.toNanos(delaySeconds);
+    }
+
+    private static AmazonSQSException error(String errorCode, String message, int statusCode) {
+        AmazonSQSException e = new AmazonSQSException(message);
+        e.setErrorCode(errorCode);
+        e.setStatusCode(statusCode);
+        return e;
+    }
+
+    private class LocalQueue {
+        final String name;
+        final Map<String, String> attributes = new ConcurrentHashMap<>();
+        final Map<String, LocalMessage> messages = new LinkedHashMap<>();
+        final Map<String, String> receiptHandles = new HashMap<>();
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition changed = lock.newCondition();
+
+        LocalQueue(String name) {
+            this.name = name;
+        }
+
+        LocalMessage add(String body, Map<String, MessageAttributeValue> messageAttributes, long delayNanos) {
+            LocalMessage message = new LocalMessage(body, messageAttributes, System.nanoTime() + delayNanos);
+            lock.lock();
+            try {
+                messages.put(message.messageId, message);
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            return message;
+        }
+
+        List<Message> receive(int maxMessages, long waitNanos, long visibilityNanos, List<String> attributeNames) {
+            List<Message> received = new ArrayList<>();
+            List<LocalMessage> deadLetters = new ArrayList<>();
+            long deadline = System.nanoTime() + waitNanos;
+            lock.lock();
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    Iterator<LocalMessage> iterator = messages.values().iterator();
+                    while (iterator.hasNext() && received.size() < maxMessages) {
+                        LocalMessage message = iterator.next();
+                        if (message.visibleAt > now) {
+                            continue;
+                        }
+                        if (exceedsMaxReceiveCount(message)) {
+                            iterator.remove();
+                            receiptHandles.remove(message.receiptHandle);
+                            deadLetters.add(message);
+                            continue;
+                        }
+                        receiptHandles.remove(message.receiptHandle);
+                        message.receiptHandle = UUID.randomUUID().toString();
+                        message.receiveCount++;
+                        message.visibleAt = now + visibilityNanos;
+                        receiptHandles.put(message.receiptHandle, message.messageId);
+                        received.add(message.toMessage(attributeNames));
+                    }
+                    long remaining = deadline - now;
+                    if (!received.isEmpty() || remaining <= 0) {
+                        break;
+                    }
+                    changed.awaitNanos(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(100)));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+            moveToDeadLetterQueue(deadLetters);
+            return received;
+        }
+
+        boolean delete(String receiptHandle) {
+            lock.lock();
+            try {
+                String messageId = receiptHandles.remove(receiptHandle);
+                if (messageId == null) {
+                    return false;
+                }
+                messages.remove(messageId);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean changeVisibility(String receiptHandle, long visibilityNanos) {
+            lock.lock();
+            try {
+                String messageId = receiptHandles.get(receiptHandle);
+                LocalMessage message = messageId == null ? null : messages.get(messageId);
+                if (message == null) {
+                    return false;
+                }
+                message.visibleAt = System.nanoTime() + visibilityNanos;
+                changed.signalAll();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean exceedsMaxReceiveCount(LocalMessage message) {
+            String redrivePolicy = attributes.get(QueueAttributeName.RedrivePolicy.toString());
+            if (redrivePolicy == null) {
+                return false;
+            }
+            Matcher matcher = REDRIVE_POLICY.matcher(redrivePolicy);
+            return matcher.find() && message.receiveCount >= Integer.parseInt(matcher.group(1))
+                    && queues.containsKey(matcher.group(2).substring(matcher.group(2).lastIndexOf(':') + 1));
+        }
+
+        private void moveToDeadLetterQueue(List<LocalMessage> deadLetters) {
+            if (deadLetters.isEmpty()) {
+                return;
+            }
+            Matcher matcher = REDRIVE_POLICY.matcher(attributes.get(QueueAttributeName.RedrivePolicy.toString()));
+            if (matcher.find()) {
+                LocalQueue deadLetterQueue = queues.get(matcher.group(2).substring(matcher.group(2).lastIndexOf(':') + 1));
+                for (LocalMessage message : deadLetters) {
+                    deadLetterQueue.add(message.body, message.messageAttributes, 0);
+                }
+            }
+        }
+    }
+
+    private static class LocalMessage {
+        final String messageId = UUID.randomUUID().toString();
+        final String body;
+        final String md5OfBody;
+        final Map<String, MessageAttributeValue> messageAttributes;
+        final long sentTimestamp = System.currentTimeMillis();
+        long visibleAt;
+        int receiveCount;
+        String receiptHandle;
+
+        LocalMessage(String body, Map<String, MessageAttributeValue> messageAttributes, long visibleAt) {
+            this.body = body;
+            this.md5OfBody = BinaryUtils.toHex(Md5Utils.computeMD5Hash(body.getBytes(StandardCharsets.UTF_8)));
+            this.messageAttributes = messageAttributes == null ? new HashMap<>() : new HashMap<>(messageAttributes);
+            this.visibleAt = visibleAt;
+        }
+
+        /**
+         * @param attributeNames message attributes to return: names, {@code name.*} prefixes, or {@code All} / {@code .*}
+         */
+        Message toMessage(List<String> attributeNames) {
+            Map<String, MessageAttributeValue> selected = new HashMap<>();
+            for (Map.Entry<String, MessageAttributeValue> attribute : messageAttributes.entrySet()) {
+                for (String name : attributeNames) {
+                    if ("All".equals(name) || ".*".equals(name) || name.equals(attribute.getKey())
+                            || name.endsWith(".*") && attribute.getKey().startsWith(name.substring(0, name.length() - 1))) {
+                        selected.put(attribute.getKey(), attribute.getValue());
+                        break;
+                    }
+                }
+            }
+            Map<String, String> attributes = new HashMap<>();
+            attributes.put("ApproximateReceiveCount", String.valueOf(receiveCount));
+            attributes.put("SentTimestamp", String.valueOf(sentTimestamp));
+            return new Message()
+                    .withMessageId(messageId)
+                    .withReceiptHandle(receiptHandle)
+                    .withBody(body)
+                    .withMD5OfBody(md5OfBody)
+                    .withAttributes(attributes)
+                    .withMessageAttributes(selected);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package aws.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exposes the latest snapshot of every operation as an MXBean named {@code aws.metrics:type=Operation,name=<operation>}.
+ */
+
+public class JmxReporter implements MetricsReporter {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(JmxReporter.class);
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private final Map<String, SnapshotBean> beans = new ConcurrentHashMap<>();
+
+    @Override
+    public void report(Collection<MetricsSnapshot> snapshots) {
+        for (MetricsSnapshot snapshot : snapshots) {
+            beans.computeIfAbsent(snapshot.getName(), this::register).snapshot = snapshot;
+        }
+    }
+
+    private SnapshotBean register(String name) {
+        SnapshotBean bean = new SnapshotBean();
+        try {
+            ObjectName objectName = new ObjectName("aws.metrics:type=Operation,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(bean, objectName);
+        } catch (Exception e) {
+            LOGGER.error("Unable to register MXBean for {}: {}", name, e.getMessage());
+        }
+        return bean;
+    }
+
+    private static class SnapshotBean implements OperationMetricsMXBean {
+        volatile MetricsSnapshot snapshot = new MetricsSnapshot("", 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+        @Override
+        public long getCount() {
+            return snapshot.getCount();
+        }
+
+        @Override
+        public long getErrors() {
+            return snapshot.getErrors();
+        }
+
+        @Override
+        public long getBytes() {
+            return snapshot.getBytes();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            return snapshot.getMeanNanos() / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return snapshot.getP50Nanos() / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getP90Millis() {
+            return snapshot.getP90Nanos() / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getP99Millis() {
+            return snapshot.getP99Nanos() / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getP999Millis() {
+            return snapshot.getP999Nanos() / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return snapshot.getMaxNanos() / NANOS_PER_MILLI;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package aws.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+
+/**
+ * Writes one INFO log line per operation.
+ */
+
+public class LoggingReporter implements MetricsReporter {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(LoggingReporter.class);
+
+    @Override
+    public void report(Collection<MetricsSnapshot> snapshots) {
+        for (MetricsSnapshot snapshot : snapshots) {
+            LOGGER.info("{}", snapshot);
+        }
+    }
+}
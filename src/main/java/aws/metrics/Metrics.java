@@ -0,0 +1,74 @@
+package aws.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the registry of per-operation metrics recorded by the services:
+ * call count, error count, bytes transferred and a latency histogram with percentile snapshots.
+ * Snapshots can be published periodically with {@link #startReporting(MetricsReporter, long)}.
+ */
+
+public class Metrics {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(Metrics.class);
+
+    private static final Map<String, OperationMetrics> OPERATIONS = new ConcurrentHashMap<>();
+
+    private static ScheduledExecutorService reporting;
+
+    public static OperationTimer timer(String operation) {
+        return new OperationTimer(get(operation));
+    }
+
+    public static OperationMetrics get(String operation) {
+        return OPERATIONS.computeIfAbsent(operation, OperationMetrics::new);
+    }
+
+    public static List<MetricsSnapshot> snapshot() {
+        Map<String, MetricsSnapshot> snapshots = new ConcurrentSkipListMap<>();
+        for (OperationMetrics metrics : OPERATIONS.values()) {
+            snapshots.put(metrics.getName(), metrics.snapshot());
+        }
+        return new ArrayList<>(snapshots.values());
+    }
+
+    public static void reset() {
+        OPERATIONS.clear();
+    }
+
+    /**
+     * Publishes a snapshot of all operations every {@code periodSeconds}, replacing any reporter started before.
+     */
+    public static synchronized void startReporting(MetricsReporter reporter, long periodSeconds) {
+        stopReporting();
+        reporting = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "aws-metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporting.scheduleAtFixedRate(() -> {
+            try {
+                reporter.report(snapshot());
+            } catch (Exception e) {
+                LOGGER.error("Error while reporting metrics: {}", e.getMessage());
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stopReporting() {
+        if (reporting != null) {
+            reporting.shutdownNow();
+            reporting = null;
+        }
+    }
+}
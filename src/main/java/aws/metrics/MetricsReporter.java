@@ -0,0 +1,12 @@
+package aws.metrics;
+
+import java.util.Collection;
+
+/**
+ * Publishes metric snapshots, see {@link LoggingReporter} and {@link JmxReporter}.
+ */
+
+@FunctionalInterface
+public interface MetricsReporter {
+    void report(Collection<MetricsSnapshot> snapshots);
+}
@@ -0,0 +1,88 @@
+package aws.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class represents the metrics of one operation at a point in time. Latencies are in nanoseconds.
+ */
+
+public class MetricsSnapshot {
+    private final String name;
+    private final long count;
+    private final long errors;
+    private final long bytes;
+    private final long meanNanos;
+    private final long p50Nanos;
+    private final long p90Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long maxNanos;
+
+    public MetricsSnapshot(String name, long count, long errors, long bytes, long meanNanos,
+                           long p50Nanos, long p90Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+        this.name = name;
+        this.count = count;
+        this.errors = errors;
+        this.bytes = bytes;
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p90Nanos = p90Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getMeanNanos() {
+        return meanNanos;
+    }
+
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    public long getP90Nanos() {
+        return p90Nanos;
+    }
+
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+        if (maxNanos == 0) {
+            return String.format("%s: count=%d", name, count);
+        }
+        return String.format("%s: count=%d, errors=%d, bytes=%d, mean=%.2fms, p50=%.2fms, p90=%.2fms, p99=%.2fms, p99.9=%.2fms, max=%.2fms",
+                name, count, errors, bytes, millis(meanNanos), millis(p50Nanos), millis(p90Nanos),
+                millis(p99Nanos), millis(p999Nanos), millis(maxNanos));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,54 @@
+package aws.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histogram of one operation, e.g. {@code s3.moveFile}.
+ */
+
+public class OperationMetrics {
+
+    private final String name;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    public void record(long nanos, boolean success, long bytesTransferred) {
+        calls.increment();
+        if (!success) {
+            errors.increment();
+        }
+        if (bytesTransferred > 0) {
+            bytes.add(bytesTransferred);
+        }
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+        histogram.record(nanos);
+    }
+
+    public void increment(long count) {
+        calls.add(count);
+    }
+
+    public MetricsSnapshot snapshot() {
+        long[] percentiles = histogram.quantiles(0.5, 0.9, 0.99, 0.999);
+        long count = calls.sum();
+        long max = maxNanos.get();
+        return new MetricsSnapshot(name, count, errors.sum(), bytes.sum(),
+                count == 0 ? 0 : totalNanos.sum() / count,
+                Math.min(percentiles[0], max), Math.min(percentiles[1], max),
+                Math.min(percentiles[2], max), Math.min(percentiles[3], max), max);
+    }
+
+    public String getName() {
+        return name;
+    }
+}
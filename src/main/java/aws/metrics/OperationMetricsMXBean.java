@@ -0,0 +1,25 @@
+package aws.metrics;
+
+/**
+ * JMX view of one operation, registered by {@link JmxReporter}. Latencies are in milliseconds.
+ */
+
+public interface OperationMetricsMXBean {
+    long getCount();
+
+    long getErrors();
+
+    long getBytes();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+}
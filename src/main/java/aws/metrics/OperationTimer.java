@@ -0,0 +1,31 @@
+package aws.metrics;
+
+/**
+ * Measures one call of an operation. Use it in try-with-resources and call {@link #success()} at the end of the block;
+ * a call closed without it is counted as an error.
+ */
+
+public class OperationTimer implements AutoCloseable {
+
+    private final OperationMetrics metrics;
+    private final long start = System.nanoTime();
+    private boolean success;
+    private long bytes;
+
+    OperationTimer(OperationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void addBytes(long bytes) {
+        this.bytes += bytes;
+    }
+
+    public void success() {
+        this.success = true;
+    }
+
+    @Override
+    public void close() {
+        metrics.record(System.nanoTime() - start, success, bytes);
+    }
+}
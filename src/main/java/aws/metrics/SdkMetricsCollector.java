@@ -0,0 +1,53 @@
+package aws.metrics;
+
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.util.AWSRequestMetrics;
+import com.amazonaws.util.TimingInfo;
+
+import java.util.List;
+
+/**
+ * Collects SDK-level request metrics from the AWS clients: HTTP latency of every request
+ * ({@code sdk.<service>.<request>}), retries ({@code sdk.<service>.retries}) and throttling errors ({@code sdk.<service>.throttles}).
+ */
+
+public class SdkMetricsCollector extends RequestMetricCollector {
+
+    @Override
+    public void collectMetrics(Request<?> request, Response<?> response) {
+        AWSRequestMetrics requestMetrics = request.getAWSRequestMetrics();
+        if (requestMetrics == null) {
+            return;
+        }
+        String service = request.getServiceName();
+        TimingInfo timingInfo = requestMetrics.getTimingInfo();
+
+        Double millis = timingInfo.getTimeTakenMillisIfKnown();
+        if (millis != null) {
+            String requestType = request.getOriginalRequest() == null ? "Request"
+                    : request.getOriginalRequest().getClass().getSimpleName().replace("Request", "");
+            Metrics.get("sdk." + service + "." + requestType)
+                    .record((long) (millis * 1_000_000), response != null, 0);
+        }
+
+        long retries = counter(timingInfo, AWSRequestMetrics.Field.RetryCount);
+        if (retries > 0) {
+            Metrics.get("sdk." + service + ".retries").increment(retries);
+        }
+        long throttles = counter(timingInfo, AWSRequestMetrics.Field.ThrottleException);
+        if (throttles == 0) {
+            List<Object> throttleErrors = requestMetrics.getProperty(AWSRequestMetrics.Field.ThrottleException);
+            throttles = throttleErrors == null ? 0 : throttleErrors.size();
+        }
+        if (throttles > 0) {
+            Metrics.get("sdk." + service + ".throttles").increment(throttles);
+        }
+    }
+
+    private static long counter(TimingInfo timingInfo, AWSRequestMetrics.Field field) {
+        Number value = timingInfo.getCounter(field.name());
+        return value == null ? 0 : value.longValue();
+    }
+}
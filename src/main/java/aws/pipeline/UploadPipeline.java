@@ -0,0 +1,263 @@
+package aws.pipeline;
+
+import aws.dynamoDB.service.DynamoService;
+import aws.dynamoDB.util.InvoiceStatus;
+import aws.idempotency.IdempotencyStore;
+import aws.s3.service.S3Service;
+import aws.s3.util.S3Util;
+import aws.s3.util.XmlFields;
+import aws.sqs.service.SQSService;
+import aws.sqs.util.SQSMessage;
+import aws.sqs.util.SQSUtil;
+import com.amazonaws.services.lambda.runtime.events.S3Event;
+import com.amazonaws.services.s3.event.S3EventNotification;
+import exception.AWSException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes every record of an S3 upload notification, several files in parallel:
+ * <ol>
+ *     <li>decodes the object key and checks that the file is XML</li>
+ *     <li>extracts date, time and the other configured tags with {@link S3Service#getInvoiceFields(String, String)}</li>
+ *     <li>creates the DynamoDB item with status {@link InvoiceStatus#COPIED}</li>
+ *     <li>sends the SQS message, with the extracted tags other than date and time as metadata</li>
+ * </ol>
+ * The item is created before the message is sent, so a consumer never receives a message without an item.
+ * A failure affects only its own record; the outcome of every record is returned in an {@link UploadReport}.
+ * With an {@link IdempotencyStore} set, redelivered notifications of an already processed object version are skipped,
+ * and those of a version still being processed by another invocation are reported as failed, so they are retried.
+ * Records are processed on a thread pool owned by the pipeline, shared by concurrent {@link #process(S3Event)} calls;
+ * its daemon threads stop when idle, and {@link #close()} releases them at once.
+ */
+
+public class UploadPipeline implements AutoCloseable {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(UploadPipeline.class);
+
+    public static final int DEFAULT_CONCURRENCY = 8;
+
+    private static final long IDLE_THREAD_SECONDS = 60;
+
+    private final S3Service s3Service;
+    private final SQSService sqsService;
+    private final DynamoService dynamoService;
+
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private IdempotencyStore idempotencyStore;
+    private ThreadPoolExecutor executor;
+    private boolean closed;
+
+    public UploadPipeline(S3Service s3Service, SQSService sqsService, DynamoService dynamoService) {
+        this.s3Service = s3Service;
+        this.sqsService = sqsService;
+        this.dynamoService = dynamoService;
+    }
+
+    public UploadReport process(S3Event s3Event) throws AWSException {
+        List<S3EventNotification.S3EventNotificationRecord> records = S3Util.getS3Records(s3Event);
+        UploadReport report = new UploadReport();
+        if (records.isEmpty()) {
+            return report;
+        }
+
+        ExecutorService executor = executor();
+        List<Future<UploadReport.Entry>> futures = new ArrayList<>(records.size());
+        try {
+            Set<String> seen = new HashSet<>();
+            for (S3EventNotification.S3EventNotificationRecord record : records) {
+                UploadReport.Entry repeated = getRepeatedEntry(record, seen);
+                if (repeated != null) {
+                    futures.add(CompletableFuture.completedFuture(repeated));
+                } else {
+                    futures.add(executor.submit(() -> processRecord(record)));
+                }
+            }
+            for (Future<UploadReport.Entry> future : futures) {
+                report.add(future.get());
+            }
+        } catch (RejectedExecutionException e) {
+            cancel(futures);
+            LOGGER.error("Error while processing S3 event: upload pipeline is closed");
+            throw new AWSException("Error while processing S3 event: upload pipeline is closed");
+        } catch (InterruptedException e) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new AWSException("Interrupted while processing S3 event");
+        } catch (ExecutionException e) {
+            cancel(futures);
+            LOGGER.error("Error while processing S3 event: {}", e.getCause().getMessage());
+            throw new AWSException("Error while processing S3 event: " + e.getCause().getMessage());
+        }
+        LOGGER.info("S3 event processed: {}", report);
+        return report;
+    }
+
+    /**
+     * Stops the pipeline threads. Records already submitted are still processed; later calls to
+     * {@link #process(S3Event)} fail.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private synchronized ExecutorService executor() throws AWSException {
+        if (closed) {
+            LOGGER.error("Error while processing S3 event: upload pipeline is closed");
+            throw new AWSException("Error while processing S3 event: upload pipeline is closed");
+        }
+        if (executor == null) {
+            int threads = Math.max(1, concurrency);
+            executor = new ThreadPoolExecutor(threads, threads, IDLE_THREAD_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), daemon("upload-pipeline"));
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    private static void cancel(List<Future<UploadReport.Entry>> futures) {
+        for (Future<UploadReport.Entry> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * S3 can deliver several notifications for the same object version; only the first one is processed.
+     * Records of the same key with another eTag are new uploads and are processed too.
+     */
+    private static UploadReport.Entry getRepeatedEntry(S3EventNotification.S3EventNotificationRecord record, Set<String> seen) {
+        try {
+            String bucketName = S3Util.getS3BucketName(record);
+            String key = S3Util.getFileKey(record);
+            if (!seen.add(IdempotencyStore.objectKey(bucketName, key, record.getS3().getObject().geteTag()))) {
+                return new UploadReport.Entry(bucketName, key, null, UploadReport.Status.SKIPPED, "Repeated record of the same object");
+            }
+        } catch (AWSException e) {
+            LOGGER.debug("Repeated record check skipped, the record is reported when processed: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    private UploadReport.Entry processRecord(S3EventNotification.S3EventNotificationRecord record) {
+        String bucketName = null;
+        String key = null;
+        String fileName;
+        try {
+            bucketName = S3Util.getS3BucketName(record);
+            key = S3Util.getFileKey(record);
+        } catch (AWSException e) {
+            return new UploadReport.Entry(bucketName, key, null, UploadReport.Status.FAILED, e.getMessage());
+        }
+
+        try {
+            fileName = S3Util.getFileName(key);
+        } catch (AWSException e) {
+            LOGGER.debug("File {} skipped: {}", key, e.getMessage());
+            return new UploadReport.Entry(bucketName, key, null, UploadReport.Status.SKIPPED, e.getMessage());
+        }
+
+        String idempotencyKey = null;
+        try {
+            if (idempotencyStore != null) {
+                String objectKey = IdempotencyStore.objectKey(bucketName, key, record.getS3().getObject().geteTag());
+                IdempotencyStore.Claim claim = idempotencyStore.claim(objectKey);
+                if (claim == IdempotencyStore.Claim.COMPLETED) {
+                    return new UploadReport.Entry(bucketName, key, fileName, UploadReport.Status.SKIPPED, "Already processed");
+                }
+                if (claim == IdempotencyStore.Claim.IN_PROGRESS) {
+                    return new UploadReport.Entry(bucketName, key, fileName, UploadReport.Status.FAILED, "Being processed by another delivery");
+                }
+                idempotencyKey = objectKey;
+            }
+
+            XmlFields fields = s3Service.getInvoiceFields(bucketName, key);
+            String date = fields.getDate();
+
+            SQSMessage message = new SQSMessage();
+            message.setBucketName(bucketName);
+            message.setFileName(fileName);
+            message.setDate(date);
+            message.setTime(fields.getTime());
+            message.setMetadata(getMetadata(fields));
+
+            dynamoService.createInvoiceItem(fileName, bucketName, date, message.getTime(), InvoiceStatus.COPIED.toString());
+            sqsService.sendMessage(SQSUtil.generateMessage(message));
+            if (idempotencyKey != null) {
+                idempotencyStore.complete(idempotencyKey);
+            }
+            return new UploadReport.Entry(bucketName, key, fileName, UploadReport.Status.PROCESSED, null);
+        } catch (Exception e) {
+            if (idempotencyKey != null) {
+                idempotencyStore.release(idempotencyKey);
+            }
+            LOGGER.error("File {} in bucket {} not processed: {}", key, bucketName, e.getMessage());
+            return new UploadReport.Entry(bucketName, key, fileName, UploadReport.Status.FAILED, e.getMessage());
+        }
+    }
+
+    private static Map<String, String> getMetadata(XmlFields fields) {
+        Map<String, String> metadata = new LinkedHashMap<>(fields.getValues());
+        metadata.remove(XmlFields.DATE_TAG);
+        metadata.remove(XmlFields.TIME_TAG);
+        return metadata;
+    }
+
+    public synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Sets the number of records processed at the same time; also resizes the pool of a running pipeline.
+     */
+    public synchronized void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+        if (executor != null) {
+            int threads = Math.max(1, concurrency);
+            if (threads > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(threads);
+                executor.setCorePoolSize(threads);
+            } else {
+                executor.setCorePoolSize(threads);
+                executor.setMaximumPoolSize(threads);
+            }
+        }
+    }
+
+    public IdempotencyStore getIdempotencyStore() {
+        return idempotencyStore;
+    }
+
+    public void setIdempotencyStore(IdempotencyStore idempotencyStore) {
+        this.idempotencyStore = idempotencyStore;
+    }
+}
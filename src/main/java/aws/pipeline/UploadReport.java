@@ -0,0 +1,104 @@
+package aws.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * This class represents the outcome of processing an S3 event with {@link UploadPipeline}.
+ * Every record of the event gets one entry, in the order of the event, with a status:
+ * <ol>
+ *     <li>PROCESSED - DynamoDB item created and SQS message sent</li>
+ *     <li>SKIPPED - not an invoice (e.g. not an XML file) or a repeated record of the same object version</li>
+ *     <li>FAILED - a step failed, the error says which one</li>
+ * </ol>
+ */
+
+public class UploadReport {
+
+    public enum Status {
+        PROCESSED,
+        SKIPPED,
+        FAILED
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    void add(Entry entry) {
+        entries.add(entry);
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public List<Entry> getProcessed() {
+        return getEntries(Status.PROCESSED);
+    }
+
+    public List<Entry> getSkipped() {
+        return getEntries(Status.SKIPPED);
+    }
+
+    public List<Entry> getFailed() {
+        return getEntries(Status.FAILED);
+    }
+
+    public boolean isSuccessful() {
+        return entries.stream().noneMatch(e -> e.getStatus() == Status.FAILED);
+    }
+
+    private List<Entry> getEntries(Status status) {
+        return entries.stream()
+                .filter(e -> e.getStatus() == status)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public String toString() {
+        return "UploadReport{processed=" + getProcessed().size() + ", skipped=" + getSkipped().size()
+                + ", failed=" + getFailed().size() + "}";
+    }
+
+    public static class Entry {
+        private final String bucketName;
+        private final String key;
+        private final String fileName;
+        private final Status status;
+        private final String error;
+
+        Entry(String bucketName, String key, String fileName, Status status, String error) {
+            this.bucketName = bucketName;
+            this.key = key;
+            this.fileName = fileName;
+            this.status = status;
+            this.error = error;
+        }
+
+        public String getBucketName() {
+            return bucketName;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return status + " " + bucketName + "/" + key + (error == null ? "" : ": " + error);
+        }
+    }
+}
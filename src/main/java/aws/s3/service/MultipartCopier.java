@@ -0,0 +1,173 @@
+package aws.s3.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.GetObjectTaggingRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.ObjectTagging;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.SSEAwsKeyManagementParams;
+import com.amazonaws.services.s3.model.Tag;
+import exception.AWSException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Server-side multipart copy of a single S3 object.
+ * Parts are copied in parallel with {@code UploadPartCopy} and the upload is aborted if any part fails,
+ * so no orphaned parts are left behind. Unlike {@code CopyObject}, a multipart upload doesn't inherit anything
+ * from the source, so its headers, storage class, encryption and tags are carried over explicitly.
+ * Reading the tags needs {@code s3:GetObjectTagging}; without it the object is copied without tags.
+ */
+
+class MultipartCopier {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(MultipartCopier.class);
+
+    static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    static final long MAX_PART_SIZE = 5L * 1024 * 1024 * 1024;
+    static final int MAX_PARTS = 10000;
+
+    private final AmazonS3 s3Client;
+    private final long partSize;
+    private final int concurrency;
+
+    MultipartCopier(AmazonS3 s3Client, long partSize, int concurrency) {
+        this.s3Client = s3Client;
+        this.partSize = partSize;
+        this.concurrency = concurrency;
+    }
+
+    void copy(String bucketName, String sourceKey, String destinationKey, ObjectMetadata sourceMetadata) throws AWSException {
+        long objectSize = sourceMetadata.getContentLength();
+        long effectivePartSize = getEffectivePartSize(objectSize);
+
+        String uploadId = s3Client.initiateMultipartUpload(
+                createUploadRequest(bucketName, sourceKey, destinationKey, sourceMetadata))
+                .getUploadId();
+        LOGGER.debug("Multipart copy {} -> {} started: size {}, part size {}, upload id {}",
+                sourceKey, destinationKey, objectSize, effectivePartSize, uploadId);
+
+        int partCount = (int) ((objectSize + effectivePartSize - 1) / effectivePartSize);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, partCount)));
+        List<Future<PartETag>> futures = new ArrayList<>(partCount);
+        try {
+            for (int i = 0; i < partCount; i++) {
+                long firstByte = i * effectivePartSize;
+                long lastByte = Math.min(firstByte + effectivePartSize, objectSize) - 1;
+                CopyPartRequest request = new CopyPartRequest()
+                        .withSourceBucketName(bucketName)
+                        .withSourceKey(sourceKey)
+                        .withDestinationBucketName(bucketName)
+                        .withDestinationKey(destinationKey)
+                        .withUploadId(uploadId)
+                        .withPartNumber(i + 1)
+                        .withFirstByte(firstByte)
+                        .withLastByte(lastByte);
+                futures.add(executor.submit(() -> s3Client.copyPart(request).getPartETag()));
+            }
+
+            List<PartETag> partETags = new ArrayList<>(partCount);
+            for (Future<PartETag> future : futures) {
+                partETags.add(future.get());
+            }
+            partETags.sort(Comparator.comparingInt(PartETag::getPartNumber));
+
+            s3Client.completeMultipartUpload(
+                    new CompleteMultipartUploadRequest(bucketName, destinationKey, uploadId, partETags));
+            LOGGER.debug("Multipart copy {} -> {} completed in {} parts", sourceKey, destinationKey, partCount);
+        } catch (Exception e) {
+            futures.forEach(f -> f.cancel(true));
+            abort(bucketName, destinationKey, uploadId);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new AWSException("Multipart copy of " + sourceKey + " failed: " + cause.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void abort(String bucketName, String destinationKey, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, destinationKey, uploadId));
+            LOGGER.debug("Multipart upload {} for {} aborted", uploadId, destinationKey);
+        } catch (Exception e) {
+            LOGGER.error("Unable to abort multipart upload {} for {}: {}", uploadId, destinationKey, e.getMessage());
+        }
+    }
+
+    private long getEffectivePartSize(long objectSize) {
+        long minPartSizeForObject = (objectSize + MAX_PARTS - 1) / MAX_PARTS;
+        return Math.min(MAX_PART_SIZE, Math.max(Math.max(partSize, MIN_PART_SIZE), minPartSizeForObject));
+    }
+
+    private InitiateMultipartUploadRequest createUploadRequest(String bucketName, String sourceKey, String destinationKey,
+                                                              ObjectMetadata sourceMetadata) {
+        InitiateMultipartUploadRequest request =
+                new InitiateMultipartUploadRequest(bucketName, destinationKey, copyMetadata(sourceMetadata));
+        if (sourceMetadata.getStorageClass() != null) {
+            request.withStorageClass(sourceMetadata.getStorageClass());
+        }
+        if (sourceMetadata.getSSEAwsKmsKeyId() != null) {
+            request.withSSEAwsKeyManagementParams(new SSEAwsKeyManagementParams(sourceMetadata.getSSEAwsKmsKeyId()));
+        }
+        List<Tag> tags = getTags(bucketName, sourceKey);
+        if (tags != null && !tags.isEmpty()) {
+            request.withTagging(new ObjectTagging(tags));
+        }
+        return request;
+    }
+
+    private List<Tag> getTags(String bucketName, String sourceKey) {
+        try {
+            return s3Client.getObjectTagging(new GetObjectTaggingRequest(bucketName, sourceKey)).getTagSet();
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() != 403) {
+                throw e;
+            }
+            LOGGER.warn("Tags of {} are not copied, s3:GetObjectTagging is denied: {}", sourceKey, e.getErrorCode());
+            return null;
+        }
+    }
+
+    private static ObjectMetadata copyMetadata(ObjectMetadata source) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setUserMetadata(source.getUserMetadata());
+        if (source.getContentType() != null) {
+            metadata.setContentType(source.getContentType());
+        }
+        if (source.getContentEncoding() != null) {
+            metadata.setContentEncoding(source.getContentEncoding());
+        }
+        if (source.getContentLanguage() != null) {
+            metadata.setContentLanguage(source.getContentLanguage());
+        }
+        if (source.getContentDisposition() != null) {
+            metadata.setContentDisposition(source.getContentDisposition());
+        }
+        if (source.getCacheControl() != null) {
+            metadata.setCacheControl(source.getCacheControl());
+        }
+        if (source.getHttpExpiresDate() != null) {
+            metadata.setHttpExpiresDate(source.getHttpExpiresDate());
+        }
+        // With a KMS key the algorithm is sent by SSEAwsKeyManagementParams
+        if (source.getSSEAlgorithm() != null && source.getSSEAwsKmsKeyId() == null) {
+            metadata.setSSEAlgorithm(source.getSSEAlgorithm());
+        }
+        return metadata;
+    }
+}
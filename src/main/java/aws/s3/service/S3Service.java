@@ -1,47 +1,121 @@
 package aws.s3.service;
 
+import aws.client.AWSClientRegistry;
+import aws.client.AsyncSupport;
+import aws.metrics.Metrics;
+import aws.metrics.OperationTimer;
+import aws.s3.util.KeyPair;
+import aws.s3.util.MoveReport;
+import aws.s3.util.XmlFieldExtractor;
+import aws.s3.util.XmlFields;
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.CopyObjectRequest;
 import com.amazonaws.services.s3.model.DeleteObjectRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import exception.AWSException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
-import org.xml.sax.InputSource;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This is a service that works with the AWS Service - S3 Bucket.
- * It has a method {@link aws.s3.service.S3Service#moveFile(String, String, String)} that moves (copies and deletes) a file from one S3 bucket directory to another.
+ * It has a method {@link aws.s3.service.S3Service#moveFile(String, String, String)} that moves (copies and deletes) a file from one S3 bucket directory to another
+ * and {@link aws.s3.service.S3Service#moveFiles(String, List)} that moves many files at once.
  */
 
 public class S3Service {
 
     private static Logger LOGGER = LoggerFactory.getLogger(S3Service.class);
 
+    public static final long DEFAULT_MEMORY_THRESHOLD = 8L * 1024 * 1024;
+    public static final long DEFAULT_MULTIPART_COPY_THRESHOLD = 128L * 1024 * 1024;
+    public static final long DEFAULT_COPY_PART_SIZE = 64L * 1024 * 1024;
+    public static final int DEFAULT_COPY_CONCURRENCY = 8;
+    public static final int DEFAULT_MOVE_CONCURRENCY = 16;
+
+    private static final int MAX_DELETE_BATCH_SIZE = 1000;
+
     private AmazonS3 s3Client;
+    private boolean sharedClient;
     private String region;
+    private long memoryThreshold = DEFAULT_MEMORY_THRESHOLD;
+    private long multipartCopyThreshold = DEFAULT_MULTIPART_COPY_THRESHOLD;
+    private long copyPartSize = DEFAULT_COPY_PART_SIZE;
+    private int copyConcurrency = DEFAULT_COPY_CONCURRENCY;
+    private int moveConcurrency = DEFAULT_MOVE_CONCURRENCY;
+    private Executor asyncExecutor;
+    private List<String> xmlTagNames = new ArrayList<>(Arrays.asList(XmlFields.DATE_TAG, XmlFields.TIME_TAG));
 
     public S3Service(String region) {
         this.region = region;
         s3Client = initS3Client();
+        sharedClient = true;
+    }
+
+    /**
+     * Creates the service with the given client instead of the shared one, e.g. an {@link aws.local.InMemoryS3}.
+     */
+    public S3Service(String region, AmazonS3 s3Client) {
+        this.region = region;
+        this.s3Client = s3Client;
     }
 
+    /**
+     * Moves a file of unknown size; a HEAD request reads the size to choose the copy method.
+     */
     public void moveFile(String bucketName, String sourceKey, String destinationKey) throws AWSException {
-       checkNotNull(bucketName, sourceKey, destinationKey);
+        moveFile(bucketName, sourceKey, destinationKey, -1);
+    }
+
+    /**
+     * Moves a file whose size is already known, e.g. from the S3 event, so the copy method is chosen without a HEAD request.
+     * The {@code s3.moveFile} timer records the moved bytes.
+     */
+    public void moveFile(String bucketName, String sourceKey, String destinationKey, long size) throws AWSException {
+        try (OperationTimer timer = Metrics.timer("s3.moveFile")) {
+            timer.addBytes(move(bucketName, sourceKey, destinationKey, size));
+            timer.success();
+        }
+    }
+
+    private long move(String bucketName, String sourceKey, String destinationKey, long size) throws AWSException {
+        checkNotNull(bucketName, sourceKey, destinationKey);
 
         try {
             LOGGER.debug("Copying file to S3 bucket...");
-            CopyObjectRequest copyObjRequest = new CopyObjectRequest(bucketName, sourceKey, bucketName, destinationKey);
-            s3Client.copyObject(copyObjRequest);
+            size = copyFile(bucketName, sourceKey, destinationKey, size);
             LOGGER.debug("File {} successfully copied to \"moved\" directory", sourceKey);
         }catch (Exception e) {
             LOGGER.error("Can't copy file {}: {}", sourceKey, e.getMessage());
@@ -50,46 +124,190 @@ public class S3Service {
 
         try {
             LOGGER.debug("Deleting file from S3 bucket {}...", bucketName);
-            s3Client.deleteObject(new DeleteObjectRequest(bucketName, sourceKey));
+            client().deleteObject(new DeleteObjectRequest(bucketName, sourceKey));
             LOGGER.debug("File {} successfully deleted from {}", sourceKey, sourceKey.split("/")[0]);
             LOGGER.info("File {} successfully moved from \"{}\" to \"{}\"", sourceKey, sourceKey.split("/")[0], destinationKey.split("/")[0]);
         }catch (Exception e) {
             LOGGER.error("Can't delete file {}: {}", sourceKey, e.getMessage());
             throw new AWSException("Can't delete file " + sourceKey + ": " + e.getMessage());
         }
+        return size;
     }
 
-    public String getDate(String bucketName, String key) throws AWSException {
-        Document doc = getXmlContent(bucketName, key);
+    /**
+     * Moves many files inside one bucket: copies run in parallel with at most {@link #getMoveConcurrency()} in flight,
+     * then the sources of all successful copies are removed with multi-object deletes of up to 1000 keys.
+     *
+     * @return per-key outcome; failed pairs can be retried with another call
+     */
+    public MoveReport moveFiles(String bucketName, List<KeyPair> keyPairs) throws AWSException {
+        if (bucketName == null || keyPairs == null) {
+            LOGGER.error("Can't move files in S3 bucket: bucket-{}, keyPairs-{}", bucketName, keyPairs);
+            throw new AWSException("Can't move files in S3 bucket: bucket-" + bucketName + ", keyPairs-" + keyPairs);
+        }
+
+        MoveReport report = new MoveReport();
+        List<KeyPair> copied = copyFiles(bucketName, keyPairs, report);
+        Map<String, String> deleteErrors = deleteFiles(bucketName, copied);
+
+        for (KeyPair keyPair : copied) {
+            String error = deleteErrors.get(keyPair.getSourceKey());
+            if (error == null) {
+                report.add(keyPair, MoveReport.Status.MOVED, null);
+            } else {
+                report.add(keyPair, MoveReport.Status.DELETE_FAILED, error);
+            }
+        }
+        LOGGER.info("Files moved in S3 bucket {}: {}", bucketName, report);
+        return report;
+    }
+
+    private List<KeyPair> copyFiles(String bucketName, List<KeyPair> keyPairs, MoveReport report) throws AWSException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(moveConcurrency, keyPairs.size())));
         try {
-            return doc.getElementsByTagName("date").item(0).getTextContent();
-        }catch (Exception e) {
-            LOGGER.error("There is no date tag in XML message {}: {}", key, e.getMessage());
-            throw new AWSException("There is no date tag in XML message " + key + ": " + e.getMessage());
+            List<Future<?>> futures = new ArrayList<>(keyPairs.size());
+            for (KeyPair keyPair : keyPairs) {
+                futures.add(executor.submit(() -> {
+                    checkNotNull(bucketName, keyPair.getSourceKey(), keyPair.getDestinationKey());
+                    copyFile(bucketName, keyPair.getSourceKey(), keyPair.getDestinationKey(), keyPair.getSize());
+                    return null;
+                }));
+            }
+
+            List<KeyPair> copied = new ArrayList<>(keyPairs.size());
+            for (int i = 0; i < keyPairs.size(); i++) {
+                KeyPair keyPair = keyPairs.get(i);
+                try {
+                    futures.get(i).get();
+                    copied.add(keyPair);
+                } catch (ExecutionException e) {
+                    LOGGER.error("Can't copy file {}: {}", keyPair.getSourceKey(), e.getCause().getMessage());
+                    report.add(keyPair, MoveReport.Status.COPY_FAILED, e.getCause().getMessage());
+                }
+            }
+            return copied;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AWSException("Interrupted while copying files in S3 bucket " + bucketName);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return error message by source key for every object that could not be deleted
+     */
+    private Map<String, String> deleteFiles(String bucketName, List<KeyPair> keyPairs) {
+        Map<String, String> errors = new HashMap<>();
+        for (int from = 0; from < keyPairs.size(); from += MAX_DELETE_BATCH_SIZE) {
+            List<KeyPair> batch = keyPairs.subList(from, Math.min(from + MAX_DELETE_BATCH_SIZE, keyPairs.size()));
+            List<DeleteObjectsRequest.KeyVersion> keys = new ArrayList<>(batch.size());
+            for (KeyPair keyPair : batch) {
+                keys.add(new DeleteObjectsRequest.KeyVersion(keyPair.getSourceKey()));
+            }
+
+            try {
+                LOGGER.debug("Deleting {} files from S3 bucket {}...", keys.size(), bucketName);
+                client().deleteObjects(new DeleteObjectsRequest(bucketName).withKeys(keys).withQuiet(true));
+            } catch (MultiObjectDeleteException e) {
+                for (MultiObjectDeleteException.DeleteError error : e.getErrors()) {
+                    LOGGER.error("Can't delete file {}: {}", error.getKey(), error.getMessage());
+                    errors.put(error.getKey(), error.getCode() + ": " + error.getMessage());
+                }
+            } catch (Exception e) {
+                LOGGER.error("Can't delete {} files from S3 bucket {}: {}", keys.size(), bucketName, e.getMessage());
+                for (KeyPair keyPair : batch) {
+                    errors.put(keyPair.getSourceKey(), e.getMessage());
+                }
+            }
         }
+        return errors;
+    }
+
+    /**
+     * Copies the object with a single {@code CopyObject} call, or with a parallel multipart copy
+     * when it is larger than {@link #getMultipartCopyThreshold()}.
+     * When the size is unknown ({@code size < 0}) it is read with a HEAD request first; a known size
+     * up to the threshold needs no extra request.
+     *
+     * @return size of the object
+     */
+    private long copyFile(String bucketName, String sourceKey, String destinationKey, long size) throws AWSException {
+        // A single CopyObject call is limited to 5 GB regardless of the configured threshold
+        long threshold = Math.min(multipartCopyThreshold, MultipartCopier.MAX_PART_SIZE);
+        ObjectMetadata metadata = null;
+        if (size < 0) {
+            metadata = client().getObjectMetadata(bucketName, sourceKey);
+            size = metadata.getContentLength();
+        }
+        if (size <= threshold) {
+            client().copyObject(new CopyObjectRequest(bucketName, sourceKey, bucketName, destinationKey));
+            return size;
+        }
+        if (metadata == null) {
+            metadata = client().getObjectMetadata(bucketName, sourceKey);
+        }
+        new MultipartCopier(client(), copyPartSize, copyConcurrency)
+                .copy(bucketName, sourceKey, destinationKey, metadata);
+        return metadata.getContentLength();
+    }
+
+    public CompletableFuture<Void> moveFileAsync(String bucketName, String sourceKey, String destinationKey) {
+        return AsyncSupport.supply(asyncExecutor, () -> {
+            moveFile(bucketName, sourceKey, destinationKey);
+            return null;
+        });
+    }
+
+    public CompletableFuture<MoveReport> moveFilesAsync(String bucketName, List<KeyPair> keyPairs) {
+        return AsyncSupport.supply(asyncExecutor, () -> moveFiles(bucketName, keyPairs));
+    }
+
+    public CompletableFuture<XmlFields> getInvoiceFieldsAsync(String bucketName, String key) {
+        return AsyncSupport.supply(asyncExecutor, () -> getInvoiceFields(bucketName, key));
+    }
+
+    public CompletableFuture<String> getObjectContentAsync(String bucketName, String key) {
+        return AsyncSupport.supply(asyncExecutor, () -> getObjectContent(bucketName, key));
+    }
+
+    public String getDate(String bucketName, String key) throws AWSException {
+        return extractXmlFields(bucketName, key, Collections.singletonList(XmlFields.DATE_TAG)).getDate();
     }
 
     public LocalDateTime getTime(String bucketName, String key) throws AWSException {
-        Document doc = getXmlContent(bucketName, key);
-        try {
-            String time = doc.getElementsByTagName("time").item(0).getTextContent();
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
-            return LocalDateTime.parse(time, formatter);
+        return extractXmlFields(bucketName, key, Collections.singletonList(XmlFields.TIME_TAG)).getTime();
+    }
 
-        }catch (Exception e) {
-            LOGGER.error("There is no time tag in XML message {}: {}", key, e.getMessage());
-            throw new AWSException("There is no time tag in XML message " + key + ": " + e.getMessage());
+    /**
+     * Downloads the object once and extracts the configured invoice tags ({@code date} and {@code time} by default).
+     */
+    public XmlFields getInvoiceFields(String bucketName, String key) throws AWSException {
+        return extractXmlFields(bucketName, key, xmlTagNames);
+    }
+
+    /**
+     * Streams the object through a pull parser and stops reading as soon as all {@code tagNames} are found.
+     */
+    public XmlFields extractXmlFields(String bucketName, String key, List<String> tagNames) throws AWSException {
+        LOGGER.debug("Extracting tags {} from object {} in S3 bucket {}", tagNames, key, bucketName);
+        try (OperationTimer timer = Metrics.timer("s3.extractXmlFields");
+             InputStream input = openObjectStream(bucketName, key)) {
+            XmlFields fields = XmlFieldExtractor.extract(input, key, tagNames);
+            timer.success();
+            return fields;
+        } catch (IOException e) {
+            LOGGER.error("Error occurred while reading {} content: {}", key, e.getMessage());
+            throw new AWSException("Error occurred while reading " + key + " content: " + e.getMessage());
         }
     }
 
     public Document getXmlContent(String bucketName, String key) throws AWSException {
-        try {
-            String message = getObjectContent(bucketName, key);
+        try (InputStream input = openObjectStream(bucketName, key)) {
             DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-            InputSource src = new InputSource();
-            src.setEncoding("UTF-8");
-            src.setCharacterStream(new StringReader(message));
-            return builder.parse(src);
+            return builder.parse(input);
+        } catch (AWSException e) {
+            throw e;
         } catch (Exception e) {
             LOGGER.error("Message {} is not valid XML: {}", key, e.getMessage());
             throw new AWSException("Message " + key + " is not valid XML: " + e.getMessage());
@@ -97,42 +315,269 @@ public class S3Service {
     }
 
     public String getObjectContent(String bucketName, String key) throws AWSException {
-        S3Object objectContent;
-        String stringContent = "";
-        LOGGER.debug("Downloading object {} from S3 bucket {}", key, bucketName);
-        try {
-            GetObjectRequest request = new GetObjectRequest(bucketName, key);
-            objectContent = s3Client.getObject(request);
-            stringContent = displayTextInputStream(objectContent.getObjectContent());
-            LOGGER.debug("Content-Type: " + objectContent.getObjectMetadata().getContentType());
-            LOGGER.info("File content: {}", stringContent);
-            return stringContent;
-        }catch (Exception e) {
+        ByteBuffer content = readObject(bucketName, key, null);
+        String stringContent = StandardCharsets.UTF_8.decode(content).toString();
+        LOGGER.debug("File {} content read: {} characters", key, stringContent.length());
+        return stringContent;
+    }
+
+    /**
+     * Stores {@code content} as a UTF-8 text object.
+     */
+    public void putObjectContent(String bucketName, String key, String content, String contentType) throws AWSException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(bytes.length);
+        metadata.setContentType(contentType);
+        try (OperationTimer timer = Metrics.timer("s3.putObject")) {
+            client().putObject(new PutObjectRequest(bucketName, key, new ByteArrayInputStream(bytes), metadata));
+            timer.addBytes(bytes.length);
+            timer.success();
+            LOGGER.debug("Object {} stored in S3 bucket {}: {} bytes", key, bucketName, bytes.length);
+        } catch (Exception e) {
+            LOGGER.error("Can't store object {} in S3 bucket {}: {}", key, bucketName, e.getMessage());
+            throw new AWSException("Can't store object " + key + " in S3 bucket " + bucketName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens the object for streaming. The caller must close the stream;
+     * closing it before the end aborts the download instead of draining the rest of the object.
+     */
+    public InputStream openObjectStream(String bucketName, String key) throws AWSException {
+        return openObjectStream(new GetObjectRequest(bucketName, key));
+    }
+
+    /**
+     * Opens a ranged GET over the inclusive byte range {@code [start, end]} of the object.
+     */
+    public InputStream openObjectStream(String bucketName, String key, long start, long end) throws AWSException {
+        return openObjectStream(new GetObjectRequest(bucketName, key).withRange(start, end));
+    }
+
+    /**
+     * Reads at most {@code maxBytes} from the beginning of the object with a ranged GET.
+     */
+    public ByteBuffer readObjectHead(String bucketName, String key, int maxBytes) throws AWSException {
+        if (maxBytes <= 0) {
+            throw new AWSException("Can't read head of " + key + ": maxBytes must be positive - " + maxBytes);
+        }
+        return readObject(new GetObjectRequest(bucketName, key).withRange(0, maxBytes - 1L), null);
+    }
+
+    /**
+     * Reads the whole object into a buffer.
+     * Objects up to {@link #getMemoryThreshold()} bytes are read into {@code reusableBuffer} when it is large enough,
+     * or into a new heap buffer otherwise. Larger objects are spilled to a temporary file and returned memory-mapped.
+     * Objects over 2 GB, the most a buffer can hold, are rejected before they are downloaded; read them with
+     * {@link #openObjectStream(String, String)}.
+     *
+     * @param reusableBuffer buffer to read into, may be {@code null}
+     * @return buffer positioned at 0 with the limit set to the object size
+     */
+    public ByteBuffer readObject(String bucketName, String key, ByteBuffer reusableBuffer) throws AWSException {
+        return readObject(new GetObjectRequest(bucketName, key), reusableBuffer);
+    }
+
+    private ByteBuffer readObject(GetObjectRequest request, ByteBuffer reusableBuffer) throws AWSException {
+        try (OperationTimer timer = Metrics.timer("s3.readObject")) {
+            ByteBuffer content = download(request, reusableBuffer);
+            timer.addBytes(content.remaining());
+            timer.success();
+            return content;
+        }
+    }
+
+    private ByteBuffer download(GetObjectRequest request, ByteBuffer reusableBuffer) throws AWSException {
+        String key = request.getKey();
+        LOGGER.debug("Downloading object {} from S3 bucket {}", key, request.getBucketName());
+        S3Object object = getObject(request);
+        try (S3ObjectInputStream input = object.getObjectContent()) {
+            long size = object.getObjectMetadata().getContentLength();
+            LOGGER.debug("Content-Type: {}, size: {}", object.getObjectMetadata().getContentType(), size);
+            if (size > Integer.MAX_VALUE) {
+                input.abort();
+                LOGGER.error("Object {} is too large to read into a buffer: {} bytes", key, size);
+                throw new AWSException("Object " + key + " is too large to read into a buffer: " + size + " bytes");
+            }
+            if (size > memoryThreshold) {
+                return mapToTempFile(input, key);
+            }
+            return readToBuffer(input, (int) size, reusableBuffer);
+        } catch (IOException e) {
             LOGGER.error("Error occurred while reading {} content: {}", key, e.getMessage());
             throw new AWSException("Error occurred while reading " + key + " content: " + e.getMessage());
+        } finally {
+            closeQuietly(object);
+        }
+    }
+
+    private InputStream openObjectStream(GetObjectRequest request) throws AWSException {
+        LOGGER.debug("Opening object {} from S3 bucket {}", request.getKey(), request.getBucketName());
+        return new ObjectContentStream(getObject(request));
+    }
+
+    private S3Object getObject(GetObjectRequest request) throws AWSException {
+        try {
+            return client().getObject(request);
+        } catch (Exception e) {
+            LOGGER.error("Error occurred while reading {} content: {}", request.getKey(), e.getMessage());
+            throw new AWSException("Error occurred while reading " + request.getKey() + " content: " + e.getMessage());
+        }
+    }
+
+    private static ByteBuffer readToBuffer(InputStream input, int size, ByteBuffer reusableBuffer) throws IOException {
+        ByteBuffer buffer = reusableBuffer != null && reusableBuffer.capacity() >= size
+                ? reusableBuffer
+                : ByteBuffer.allocate(size);
+        buffer.clear();
+        buffer.limit(size);
+
+        ReadableByteChannel channel = Channels.newChannel(input);
+        while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+            // keep reading until the buffer is full or the stream ends
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer mapToTempFile(InputStream input, String key) throws IOException {
+        Path tempFile = Files.createTempFile("s3-object-", ".tmp");
+        try {
+            Files.copy(input, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.READ)) {
+                LOGGER.debug("Object {} spilled to {} ({} bytes)", key, tempFile, channel.size());
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        } finally {
+            // The mapping stays valid after the file is unlinked
+            if (!tempFile.toFile().delete()) {
+                tempFile.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Object content stream that aborts the connection when closed before the end of the object.
+     */
+    private static class ObjectContentStream extends FilterInputStream {
+
+        private final S3Object object;
+        private boolean eof;
+
+        ObjectContentStream(S3Object object) {
+            super(object.getObjectContent());
+            this.object = object;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            eof |= b == -1;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            eof |= n == -1;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!eof) {
+                object.getObjectContent().abort();
+            }
+            object.close();
         }
     }
 
-    private static String displayTextInputStream(InputStream input) throws IOException{
-        BufferedReader reader = new BufferedReader(new InputStreamReader(input));
-        StringBuilder content = new StringBuilder();
-        String line = "";
-        while ((line = reader.readLine()) != null) {
-            content.append(line);
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LOGGER.debug("Unable to close S3 object: {}", e.getMessage());
         }
-        return content.toString();
+    }
+
+    /**
+     * A client from the registry is looked up on every call, so the service gets a new one after
+     * {@link AWSClientRegistry#shutdown()}; an injected client is used as is.
+     */
+    private AmazonS3 client() {
+        return sharedClient ? AWSClientRegistry.getS3Client(region) : s3Client;
     }
 
     private AmazonS3 initS3Client() {
         AmazonS3 amazonS3 = null;
         try {
-            amazonS3 = AmazonS3ClientBuilder.standard().withRegion(region).build();
+            amazonS3 = AWSClientRegistry.getS3Client(region);
         }catch (Exception e) {
             LOGGER.error("Error occurred while initializing S3 Client: " + e.getMessage());
         }
         return amazonS3;
     }
 
+    public long getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    public void setMemoryThreshold(long memoryThreshold) {
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    public long getMultipartCopyThreshold() {
+        return multipartCopyThreshold;
+    }
+
+    public void setMultipartCopyThreshold(long multipartCopyThreshold) {
+        this.multipartCopyThreshold = multipartCopyThreshold;
+    }
+
+    public long getCopyPartSize() {
+        return copyPartSize;
+    }
+
+    public void setCopyPartSize(long copyPartSize) {
+        this.copyPartSize = copyPartSize;
+    }
+
+    public int getCopyConcurrency() {
+        return copyConcurrency;
+    }
+
+    public void setCopyConcurrency(int copyConcurrency) {
+        this.copyConcurrency = copyConcurrency;
+    }
+
+    public int getMoveConcurrency() {
+        return moveConcurrency;
+    }
+
+    public void setMoveConcurrency(int moveConcurrency) {
+        this.moveConcurrency = moveConcurrency;
+    }
+
+    public Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * @see AsyncSupport#supply
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    public List<String> getXmlTagNames() {
+        return xmlTagNames;
+    }
+
+    public void setXmlTagNames(List<String> xmlTagNames) {
+        this.xmlTagNames = new ArrayList<>(xmlTagNames);
+    }
+
     private void checkNotNull(String bucketName, String sourceKey, String destinationKey) throws AWSException {
         if (bucketName == null || sourceKey == null || destinationKey == null) {
             LOGGER.error("Can't move file to S3 bucket: bucket-{}, sourceKey-{}, destinationKey-{}", bucketName, sourceKey, destinationKey);
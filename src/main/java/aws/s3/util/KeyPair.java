@@ -0,0 +1,61 @@
+package aws.s3.util;
+
+import java.util.Objects;
+
+/**
+ * This class represents a source and destination key of a file moved inside an S3 bucket.
+ * The size of the source object is optional; when it is known, the move needs no extra request to pick the copy method.
+ */
+
+public class KeyPair {
+    private final String sourceKey;
+    private final String destinationKey;
+    private final long size;
+
+    public KeyPair(String sourceKey, String destinationKey) {
+        this(sourceKey, destinationKey, -1);
+    }
+
+    public KeyPair(String sourceKey, String destinationKey, long size) {
+        this.sourceKey = sourceKey;
+        this.destinationKey = destinationKey;
+        this.size = size;
+    }
+
+    public String getSourceKey() {
+        return sourceKey;
+    }
+
+    public String getDestinationKey() {
+        return destinationKey;
+    }
+
+    /**
+     * @return size of the source object in bytes, or -1 when it is unknown
+     */
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        KeyPair keyPair = (KeyPair) o;
+        return Objects.equals(sourceKey, keyPair.sourceKey) && Objects.equals(destinationKey, keyPair.destinationKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sourceKey, destinationKey);
+    }
+
+    @Override
+    public String toString() {
+        return sourceKey + " -> " + destinationKey;
+    }
+}
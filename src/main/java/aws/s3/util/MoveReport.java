@@ -0,0 +1,89 @@
+package aws.s3.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * This class represents the outcome of a bulk move in an S3 bucket.
+ * Every requested {@link KeyPair} gets one entry with a status:
+ * <ol>
+ *     <li>MOVED - file copied and source deleted</li>
+ *     <li>COPY_FAILED - file was not copied, source is untouched</li>
+ *     <li>DELETE_FAILED - file copied, but the source could not be deleted</li>
+ * </ol>
+ */
+
+public class MoveReport {
+
+    public enum Status {
+        MOVED,
+        COPY_FAILED,
+        DELETE_FAILED
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    public void add(KeyPair keyPair, Status status, String error) {
+        entries.add(new Entry(keyPair, status, error));
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public List<KeyPair> getMoved() {
+        return getKeyPairs(Status.MOVED);
+    }
+
+    /**
+     * @return key pairs that were not fully moved and can be passed to another bulk move
+     */
+    public List<KeyPair> getFailed() {
+        return entries.stream()
+                .filter(e -> e.getStatus() != Status.MOVED)
+                .map(Entry::getKeyPair)
+                .collect(Collectors.toList());
+    }
+
+    public boolean isSuccessful() {
+        return entries.stream().allMatch(e -> e.getStatus() == Status.MOVED);
+    }
+
+    private List<KeyPair> getKeyPairs(Status status) {
+        return entries.stream()
+                .filter(e -> e.getStatus() == status)
+                .map(Entry::getKeyPair)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public String toString() {
+        return "MoveReport{moved=" + getMoved().size() + ", failed=" + getFailed().size() + "}";
+    }
+
+    public static class Entry {
+        private final KeyPair keyPair;
+        private final Status status;
+        private final String error;
+
+        Entry(KeyPair keyPair, Status status, String error) {
+            this.keyPair = keyPair;
+            this.status = status;
+            this.error = error;
+        }
+
+        public KeyPair getKeyPair() {
+            return keyPair;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -8,7 +8,9 @@ import org.slf4j.LoggerFactory;
 
 import java.net.URLDecoder;
 import java.nio.file.Files;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -24,8 +26,10 @@ public class S3Util {
     private static Map<String, String> mapOfFilePaths = new HashMap<>();
 
     public static String getS3BucketName(S3Event s3Event) throws AWSException {
-        S3EventNotification.S3EventNotificationRecord record = getS3Record(s3Event);
+        return getS3BucketName(getS3Record(s3Event));
+    }
 
+    public static String getS3BucketName(S3EventNotification.S3EventNotificationRecord record) throws AWSException {
         checkNotNull(record);
 
         String bkt;
@@ -40,8 +44,19 @@ public class S3Util {
     }
 
     public static String getFileName(S3Event s3Event) throws AWSException {
+        return getFileName(getS3Record(s3Event));
+    }
+
+    public static String getFileName(S3EventNotification.S3EventNotificationRecord record) throws AWSException {
+        return getFileName(getFileKey(record));
+    }
+
+    /**
+     * @return name of the file from its decoded key, i.e. the part after the directory; the extension must be xml
+     */
+    public static String getFileName(String fileKey) throws AWSException {
         try {
-            String fileName = getFileKey(s3Event).split("/")[1];
+            String fileName = fileKey.split("/")[1];
             checkFileExtensionIsXml(fileName);
             return fileName;
         }catch (Exception e) {
@@ -51,8 +66,13 @@ public class S3Util {
     }
 
     public static String getFileKey(S3Event s3Event) throws AWSException {
-        S3EventNotification.S3EventNotificationRecord record = getS3Record(s3Event);
+        return getFileKey(getS3Record(s3Event));
+    }
 
+    /**
+     * @return object key of the record, URL-decoded
+     */
+    public static String getFileKey(S3EventNotification.S3EventNotificationRecord record) throws AWSException {
         checkNotNull(record);
 
         String key;
@@ -67,6 +87,17 @@ public class S3Util {
         return key;
     }
 
+    /**
+     * @return all records of the notification, the single-file getters above only read the first one
+     */
+    public static List<S3EventNotification.S3EventNotificationRecord> getS3Records(S3Event s3Event) throws AWSException {
+        if (s3Event == null) {
+            LOGGER.error("Error while getting S3 Event Notification records - S3 Event is null");
+            throw new AWSException("Error while getting S3 Event Notification records - S3 Event is null");
+        }
+        return s3Event.getRecords() == null ? Collections.emptyList() : s3Event.getRecords();
+    }
+
     private static S3EventNotification.S3EventNotificationRecord getS3Record(S3Event s3Event) throws AWSException {
         if (s3Event == null) {
             LOGGER.error("Error while getting S3 Event Notification record - S3 Event is null");
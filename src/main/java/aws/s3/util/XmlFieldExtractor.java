@@ -0,0 +1,100 @@
+package aws.s3.util;
+
+import exception.AWSException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This is a util class that extracts tag values from an XML stream with a StAX pull parser.
+ * The stream is read only until every requested tag has been found,
+ * so the whole document is never materialised in memory.
+ */
+
+public class XmlFieldExtractor {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(XmlFieldExtractor.class);
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+    /**
+     * Reads {@code input} until the first occurrence of each of {@code tagNames} is found.
+     *
+     * @return extracted values; tags missing from the document are absent from the result
+     */
+    public static XmlFields extract(InputStream input, String key, Collection<String> tagNames) throws AWSException {
+        Set<String> remaining = new LinkedHashSet<>(tagNames);
+        Map<String, String> values = new HashMap<>();
+
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(input, "UTF-8");
+
+            String currentTag = null;
+            int depth = 0;
+            StringBuilder text = new StringBuilder();
+
+            while (!remaining.isEmpty() && reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (currentTag != null) {
+                        depth++;
+                    } else if (remaining.contains(reader.getLocalName())) {
+                        currentTag = reader.getLocalName();
+                        depth = 0;
+                        text.setLength(0);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && currentTag != null) {
+                    if (depth == 0) {
+                        values.put(currentTag, text.toString());
+                        remaining.remove(currentTag);
+                        currentTag = null;
+                    } else {
+                        depth--;
+                    }
+                } else if (currentTag != null && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)) {
+                    text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                }
+            }
+        } catch (XMLStreamException e) {
+            LOGGER.error("Message {} is not valid XML: {}", key, e.getMessage());
+            throw new AWSException("Message " + key + " is not valid XML: " + e.getMessage());
+        } finally {
+            closeQuietly(reader);
+        }
+
+        if (!remaining.isEmpty()) {
+            LOGGER.debug("Tags {} not found in XML message {}", remaining, key);
+        }
+        return new XmlFields(key, values);
+    }
+
+    private static void closeQuietly(XMLStreamReader reader) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            LOGGER.debug("Unable to close XML reader: {}", e.getMessage());
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+}
@@ -0,0 +1,75 @@
+package aws.s3.util;
+
+import exception.AWSException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class represents the values of XML tags extracted from an S3 object in a single pass.
+ * It holds the text of the first occurrence of every requested tag and gives typed access
+ * to the invoice {@code date} and {@code time} tags.
+ */
+
+public class XmlFields {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(XmlFields.class);
+
+    public static final String DATE_TAG = "date";
+    public static final String TIME_TAG = "time";
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
+
+    private final String key;
+    private final Map<String, String> values;
+
+    public XmlFields(String key, Map<String, String> values) {
+        this.key = key;
+        this.values = Collections.unmodifiableMap(new LinkedHashMap<>(values));
+    }
+
+    public String get(String tagName) throws AWSException {
+        String value = values.get(tagName);
+        if (value == null) {
+            LOGGER.error("There is no {} tag in XML message {}", tagName, key);
+            throw new AWSException("There is no " + tagName + " tag in XML message " + key);
+        }
+        return value;
+    }
+
+    public boolean contains(String tagName) {
+        return values.containsKey(tagName);
+    }
+
+    public String getDate() throws AWSException {
+        return get(DATE_TAG);
+    }
+
+    public LocalDateTime getTime() throws AWSException {
+        String time = get(TIME_TAG);
+        try {
+            return LocalDateTime.parse(time, TIME_FORMATTER);
+        } catch (Exception e) {
+            LOGGER.error("There is no valid time tag in XML message {}: {}", key, e.getMessage());
+            throw new AWSException("There is no valid time tag in XML message " + key + ": " + e.getMessage());
+        }
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Map<String, String> getValues() {
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "XmlFields{key=" + key + ", values=" + values + "}";
+    }
+}
@@ -0,0 +1,249 @@
+package aws.sqs.service;
+
+import aws.client.Throttling;
+import aws.metrics.Metrics;
+import aws.metrics.OperationTimer;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import exception.AWSException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects messages on the client and sends them with {@code SendMessageBatch}.
+ * A batch is flushed when it reaches 10 entries, when the next message would push it over the 256 KB payload limit
+ * (bodies and message attributes), or when the oldest message has waited {@code lingerMillis}.
+ * Entries rejected by SQS with a server-side error are resubmitted in a later batch after a jittered backoff,
+ * up to {@code maxRetries} times.
+ * Once the sender is closed, new messages and pending retries fail instead of waiting forever.
+ */
+
+class BufferedSender {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(BufferedSender.class);
+
+    static final int MAX_BATCH_ENTRIES = 10;
+    static final int MAX_BATCH_BYTES = 256 * 1024;
+
+    private static final long RETRY_BASE_DELAY_MILLIS = 50;
+    private static final long RETRY_MAX_DELAY_MILLIS = 2000;
+
+    private final AmazonSQS sqs;
+    private final String queueUrl;
+    private final long lingerMillis;
+    private final int maxRetries;
+
+    private final ExecutorService senders;
+    private final ScheduledExecutorService timer;
+
+    private List<Entry> pending = new ArrayList<>();
+    private int pendingBytes;
+    private ScheduledFuture<?> lingerFlush;
+    private boolean closed;
+
+    BufferedSender(AmazonSQS sqs, String queueUrl, long lingerMillis, int senderThreads, int maxRetries) {
+        this.sqs = sqs;
+        this.queueUrl = queueUrl;
+        this.lingerMillis = lingerMillis;
+        this.maxRetries = maxRetries;
+        this.senders = Executors.newFixedThreadPool(Math.max(1, senderThreads), daemon("sqs-batch-sender"));
+        this.timer = Executors.newSingleThreadScheduledExecutor(daemon("sqs-batch-linger"));
+    }
+
+    CompletableFuture<String> send(String body) {
+        return send(body, Collections.emptyMap());
+    }
+
+    /**
+     * @return future completed with the message ID once the message is accepted by SQS
+     */
+    CompletableFuture<String> send(String body, Map<String, MessageAttributeValue> attributes) {
+        Entry entry = new Entry(body, attributes);
+        if (entry.bytes > MAX_BATCH_BYTES) {
+            fail(entry, "SQS message is larger than " + MAX_BATCH_BYTES + " bytes");
+            return entry.future;
+        }
+        enqueue(entry);
+        return entry.future;
+    }
+
+    synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Entry> batch = pending;
+        pending = new ArrayList<>();
+        pendingBytes = 0;
+        if (lingerFlush != null) {
+            lingerFlush.cancel(false);
+            lingerFlush = null;
+        }
+        try {
+            senders.execute(() -> sendBatch(batch));
+        } catch (RejectedExecutionException e) {
+            for (Entry entry : batch) {
+                fail(entry, "SQS buffered sender for " + queueUrl + " is closed");
+            }
+        }
+    }
+
+    /**
+     * Sends the pending messages and stops. Retries scheduled at that point run once more and then fail.
+     */
+    void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+        senders.shutdown();
+        try {
+            if (!senders.awaitTermination(30, TimeUnit.SECONDS)) {
+                LOGGER.error("Buffered SQS messages for {} were not sent within 30 seconds", queueUrl);
+            }
+            timer.shutdown();
+            timer.awaitTermination(RETRY_MAX_DELAY_MILLIS * 2, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            timer.shutdownNow();
+            senders.shutdownNow();
+        }
+    }
+
+    private synchronized void enqueue(Entry entry) {
+        if (closed) {
+            fail(entry, "SQS buffered sender for " + queueUrl + " is closed");
+            return;
+        }
+        if (pendingBytes + entry.bytes > MAX_BATCH_BYTES) {
+            flush();
+        }
+        pending.add(entry);
+        pendingBytes += entry.bytes;
+
+        if (pending.size() >= MAX_BATCH_ENTRIES) {
+            flush();
+        } else if (lingerFlush == null) {
+            try {
+                lingerFlush = timer.schedule(this::flush, lingerMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                flush();
+            }
+        }
+    }
+
+    private void sendBatch(List<Entry> batch) {
+        List<SendMessageBatchRequestEntry> requestEntries = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            requestEntries.add(new SendMessageBatchRequestEntry(String.valueOf(i), batch.get(i).body)
+                    .withMessageAttributes(batch.get(i).attributes));
+        }
+
+        SendMessageBatchResult result;
+        try (OperationTimer timer = Metrics.timer("sqs.sendMessageBatch")) {
+            SendMessageBatchRequest request = new SendMessageBatchRequest(queueUrl, requestEntries);
+            result = Throttling.guard("sqs", queueUrl).call(() -> sqs.sendMessageBatch(request));
+            for (Entry entry : batch) {
+                timer.addBytes(entry.bytes);
+            }
+            timer.success();
+        } catch (Exception e) {
+            LOGGER.error("Error while sending SQS message batch of {}: {}", batch.size(), e.getMessage());
+            for (Entry entry : batch) {
+                retryOrFail(entry, e.getMessage());
+            }
+            return;
+        }
+
+        for (SendMessageBatchResultEntry success : result.getSuccessful()) {
+            batch.get(Integer.parseInt(success.getId())).future.complete(success.getMessageId());
+        }
+        for (BatchResultErrorEntry failure : result.getFailed()) {
+            Entry entry = batch.get(Integer.parseInt(failure.getId()));
+            LOGGER.debug("SQS message batch entry failed: {} - {}", failure.getCode(), failure.getMessage());
+            if (failure.isSenderFault()) {
+                fail(entry, "Error while creating SQS message: " + failure.getMessage());
+            } else {
+                retryOrFail(entry, failure.getMessage());
+            }
+        }
+        LOGGER.debug("SQS message batch sent: {} successful, {} failed", result.getSuccessful().size(), result.getFailed().size());
+    }
+
+    private void retryOrFail(Entry entry, String error) {
+        if (entry.attempts++ >= maxRetries) {
+            fail(entry, "Error while creating SQS message: " + error);
+            return;
+        }
+        long ceiling = Math.min(RETRY_MAX_DELAY_MILLIS, RETRY_BASE_DELAY_MILLIS << Math.min(entry.attempts, 20));
+        try {
+            timer.schedule(() -> enqueue(entry), ThreadLocalRandom.current().nextLong(ceiling + 1), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            fail(entry, "Error while creating SQS message: " + error);
+        }
+    }
+
+    private static void fail(Entry entry, String error) {
+        entry.future.completeExceptionally(new AWSException(error));
+    }
+
+    /**
+     * @return size of the attributes as counted by SQS against the message size limit: name, data type and value
+     */
+    static int attributeBytes(Map<String, MessageAttributeValue> attributes) {
+        int bytes = 0;
+        for (Map.Entry<String, MessageAttributeValue> attribute : attributes.entrySet()) {
+            bytes += attribute.getKey().getBytes(StandardCharsets.UTF_8).length
+                    + attribute.getValue().getDataType().getBytes(StandardCharsets.UTF_8).length;
+            if (attribute.getValue().getStringValue() != null) {
+                bytes += attribute.getValue().getStringValue().getBytes(StandardCharsets.UTF_8).length;
+            }
+            if (attribute.getValue().getBinaryValue() != null) {
+                bytes += attribute.getValue().getBinaryValue().remaining();
+            }
+        }
+        return bytes;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class Entry {
+        final String body;
+        final Map<String, MessageAttributeValue> attributes;
+        final int bytes;
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        int attempts;
+
+        Entry(String body, Map<String, MessageAttributeValue> attributes) {
+            this.body = body;
+            this.attributes = attributes;
+            this.bytes = body.getBytes(StandardCharsets.UTF_8).length + attributeBytes(attributes);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package aws.sqs.service;
+
+import aws.idempotency.IdempotencyStore;
+import aws.metrics.Metrics;
+import aws.metrics.OperationTimer;
+import aws.sqs.util.SQSMessageHandler;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This is a long-running SQS consumer for workers outside Lambda.
+ * It includes:
+ * <ol>
+ *     <li>receiver threads that long-poll the queue for up to 10 messages at a time</li>
+ *     <li>worker threads that run the {@link SQSMessageHandler}</li>
+ *     <li>a bound on messages in flight, so receivers stop polling while workers are busy</li>
+ *     <li>{@code ChangeMessageVisibility} heartbeats that keep slow messages invisible while they are handled</li>
+ *     <li>acknowledgements sent with {@code DeleteMessageBatch}</li>
+ * </ol>
+ * With an {@link IdempotencyStore} set, redeliveries of a message that was already handled are acknowledged
+ * without calling the handler, and a redelivery of a message still being handled elsewhere is left in the queue
+ * until its visibility timeout runs out.
+ * Created with {@link SQSService#createConsumer(SQSMessageHandler)}.
+ */
+
+public class SQSConsumer {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(SQSConsumer.class);
+
+    private static final int MAX_BATCH_ENTRIES = 10;
+    private static final long ACK_LINGER_MILLIS = 100;
+
+    private final AmazonSQS sqs;
+    private final String queueUrl;
+    private final SQSMessageHandler handler;
+
+    private int receiverThreads = 2;
+    private int workerThreads = 10;
+    private int maxInFlight = 100;
+    private int visibilityTimeoutSeconds = 30;
+    private int waitTimeSeconds = 20;
+    private IdempotencyStore idempotencyStore;
+
+    private volatile boolean running;
+    private Semaphore inFlight;
+    private ExecutorService receivers;
+    private ExecutorService workers;
+    private ScheduledExecutorService heartbeats;
+    private Thread acker;
+    private final BlockingQueue<String> acks = new LinkedBlockingQueue<>();
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger duplicates = new AtomicInteger();
+
+    SQSConsumer(AmazonSQS sqs, String queueUrl, SQSMessageHandler handler) {
+        this.sqs = sqs;
+        this.queueUrl = queueUrl;
+        this.handler = handler;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        inFlight = new Semaphore(maxInFlight);
+        workers = Executors.newFixedThreadPool(workerThreads, daemon("sqs-consumer-worker"));
+        heartbeats = Executors.newSingleThreadScheduledExecutor(daemon("sqs-consumer-heartbeat"));
+        receivers = Executors.newFixedThreadPool(receiverThreads, daemon("sqs-consumer-receiver"));
+        for (int i = 0; i < receiverThreads; i++) {
+            receivers.execute(this::receive);
+        }
+        acker = daemon("sqs-consumer-acker").newThread(this::acknowledge);
+        acker.start();
+        LOGGER.info("SQS consumer for {} started: {} receivers, {} workers, {} in flight",
+                queueUrl, receiverThreads, workerThreads, maxInFlight);
+    }
+
+    /**
+     * Stops polling, waits for the messages in flight to be handled and sends the pending acknowledgements.
+     * Receivers finish their current long poll, so this can take up to {@link #getWaitTimeSeconds()} plus the handling time.
+     * Receivers still running after that are interrupted; messages they receive after the workers stop
+     * are made visible again at once.
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        receivers.shutdown();
+        if (!receivers.awaitTermination(waitTimeSeconds + 5, TimeUnit.SECONDS)) {
+            receivers.shutdownNow();
+            receivers.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        heartbeats.shutdownNow();
+        acker.interrupt();
+        acker.join();
+        LOGGER.info("SQS consumer for {} stopped: {} processed, {} failed, {} duplicates",
+                queueUrl, processed.get(), failed.get(), duplicates.get());
+    }
+
+    private void receive() {
+        while (running) {
+            int permits = 0;
+            try {
+                inFlight.acquire();
+                permits = 1;
+                while (permits < MAX_BATCH_ENTRIES && inFlight.tryAcquire()) {
+                    permits++;
+                }
+
+                List<Message> messages = sqs.receiveMessage(new ReceiveMessageRequest(queueUrl)
+                        .withMaxNumberOfMessages(permits)
+                        .withWaitTimeSeconds(waitTimeSeconds)
+                        .withMessageAttributeNames("All")
+                        .withVisibilityTimeout(visibilityTimeoutSeconds)).getMessages();
+
+                inFlight.release(permits - messages.size());
+                permits = 0;
+                for (int i = 0; i < messages.size(); i++) {
+                    Message message = messages.get(i);
+                    try {
+                        workers.execute(() -> process(message));
+                    } catch (RejectedExecutionException e) {
+                        List<Message> rejected = messages.subList(i, messages.size());
+                        inFlight.release(rejected.size());
+                        returnToQueue(rejected);
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                inFlight.release(permits);
+                LOGGER.error("Error while receiving messages from SQS {}: {}", queueUrl, e.getMessage());
+                sleepQuietly(1000);
+            }
+        }
+    }
+
+    private void process(Message message) {
+        long heartbeatPeriod = Math.max(1, visibilityTimeoutSeconds / 2);
+        ScheduledFuture<?> heartbeat = heartbeats.scheduleAtFixedRate(() -> extendVisibility(message),
+                heartbeatPeriod, heartbeatPeriod, TimeUnit.SECONDS);
+        boolean claimed = false;
+        try (OperationTimer timer = Metrics.timer("sqs.consumer.handle")) {
+            if (idempotencyStore != null) {
+                IdempotencyStore.Claim claim = idempotencyStore.claim(message.getMessageId());
+                if (claim == IdempotencyStore.Claim.COMPLETED) {
+                    timer.success();
+                    acks.add(message.getReceiptHandle());
+                    duplicates.incrementAndGet();
+                    return;
+                }
+                if (claim == IdempotencyStore.Claim.IN_PROGRESS) {
+                    timer.success();
+                    return;
+                }
+                claimed = true;
+            }
+            handler.handle(message);
+            if (claimed) {
+                idempotencyStore.complete(message.getMessageId());
+            }
+            timer.success();
+            acks.add(message.getReceiptHandle());
+            processed.incrementAndGet();
+        } catch (Exception e) {
+            if (claimed) {
+                idempotencyStore.release(message.getMessageId());
+            }
+            failed.incrementAndGet();
+            LOGGER.error("Error while handling SQS message {}: {}", message.getMessageId(), e.getMessage());
+        } finally {
+            heartbeat.cancel(false);
+            inFlight.release();
+        }
+    }
+
+    private void extendVisibility(Message message) {
+        try {
+            sqs.changeMessageVisibility(new ChangeMessageVisibilityRequest(queueUrl, message.getReceiptHandle(), visibilityTimeoutSeconds));
+            LOGGER.debug("Visibility of SQS message {} extended by {} s", message.getMessageId(), visibilityTimeoutSeconds);
+        } catch (Exception e) {
+            LOGGER.error("Unable to extend visibility of SQS message {}: {}", message.getMessageId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Makes messages that can no longer be handled visible again right away, instead of after the visibility timeout.
+     */
+    private void returnToQueue(List<Message> messages) {
+        for (Message message : messages) {
+            try {
+                sqs.changeMessageVisibility(new ChangeMessageVisibilityRequest(queueUrl, message.getReceiptHandle(), 0));
+            } catch (Exception e) {
+                LOGGER.error("Unable to return SQS message {} to the queue: {}", message.getMessageId(), e.getMessage());
+            }
+        }
+        LOGGER.debug("{} SQS messages received while stopping returned to {}", messages.size(), queueUrl);
+    }
+
+    private void acknowledge() {
+        List<String> batch = new ArrayList<>(MAX_BATCH_ENTRIES);
+        boolean stopping = false;
+        while (!stopping || !acks.isEmpty()) {
+            try {
+                String receiptHandle = acks.poll(ACK_LINGER_MILLIS, TimeUnit.MILLISECONDS);
+                if (receiptHandle != null) {
+                    batch.add(receiptHandle);
+                    acks.drainTo(batch, MAX_BATCH_ENTRIES - batch.size());
+                }
+            } catch (InterruptedException e) {
+                stopping = true;
+                acks.drainTo(batch, MAX_BATCH_ENTRIES - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                deleteBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void deleteBatch(List<String> receiptHandles) {
+        List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(receiptHandles.size());
+        for (int i = 0; i < receiptHandles.size(); i++) {
+            entries.add(new DeleteMessageBatchRequestEntry(String.valueOf(i), receiptHandles.get(i)));
+        }
+        try {
+            DeleteMessageBatchResult result = sqs.deleteMessageBatch(new DeleteMessageBatchRequest(queueUrl, entries));
+            for (BatchResultErrorEntry failure : result.getFailed()) {
+                LOGGER.error("Unable to delete message from SQS {}: {}", queueUrl, failure.getMessage());
+            }
+        } catch (Exception e) {
+            LOGGER.error("Unable to delete {} messages from SQS {}: {}", entries.size(), queueUrl, e.getMessage());
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getProcessedCount() {
+        return processed.get();
+    }
+
+    public int getFailedCount() {
+        return failed.get();
+    }
+
+    public int getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    public IdempotencyStore getIdempotencyStore() {
+        return idempotencyStore;
+    }
+
+    public void setIdempotencyStore(IdempotencyStore idempotencyStore) {
+        this.idempotencyStore = idempotencyStore;
+    }
+
+    public int getReceiverThreads() {
+        return receiverThreads;
+    }
+
+    public void setReceiverThreads(int receiverThreads) {
+        this.receiverThreads = receiverThreads;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public int getVisibilityTimeoutSeconds() {
+        return visibilityTimeoutSeconds;
+    }
+
+    public void setVisibilityTimeoutSeconds(int visibilityTimeoutSeconds) {
+        this.visibilityTimeoutSeconds = visibilityTimeoutSeconds;
+    }
+
+    public int getWaitTimeSeconds() {
+        return waitTimeSeconds;
+    }
+
+    /**
+     * Sets the long-poll wait of each receive, 0 to 20 seconds.
+     */
+    public void setWaitTimeSeconds(int waitTimeSeconds) {
+        this.waitTimeSeconds = waitTimeSeconds;
+    }
+}
@@ -1,15 +1,39 @@
 package aws.sqs.service;
 
+import aws.client.AWSClientRegistry;
+import aws.client.AsyncSupport;
+import aws.client.ThrottleSettings;
+import aws.client.Throttling;
+import aws.metrics.Metrics;
+import aws.metrics.OperationTimer;
+import aws.s3.service.S3Service;
+import aws.sqs.util.PayloadCodec;
+import aws.sqs.util.SQSMessageHandler;
+import aws.sqs.util.SQSUtil;
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.sqs.AmazonSQS;
-import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
 import com.amazonaws.services.sqs.model.*;
 import exception.AWSException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This is a service that works with the AWS Service - SQS.
@@ -25,19 +49,55 @@ public class SQSService {
 
     private Logger LOGGER = LoggerFactory.getLogger(SQSService.class);
 
+    public static final int DEFAULT_DRAIN_RECEIVERS = 4;
+    public static final long DEFAULT_DRAIN_TIMEOUT_MILLIS = 30_000;
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 8 * 1024;
+    public static final int MAX_MESSAGE_BYTES = 256 * 1024;
+    public static final long DEFAULT_BUFFERED_SEND_TIMEOUT_MILLIS = 60_000;
+
+    private static final int MAX_BATCH_ENTRIES = 10;
+    private static final int DRAIN_WAIT_TIME_SECONDS = 1;
+
     private String region;
     private String sourceQueueUrl;
 
     private AmazonSQS sqs;
+    private boolean sharedClient;
+    private volatile BufferedSender bufferedSender;
+    private Executor asyncExecutor;
+    private volatile S3Service payloadStore;
+    private volatile String payloadBucketName;
+    private volatile String payloadKeyPrefix = "sqs-payloads/";
+    private volatile int compressionThreshold = -1;
+    private long bufferedSendTimeoutMillis = DEFAULT_BUFFERED_SEND_TIMEOUT_MILLIS;
 
     public SQSService(String region, String sourceQueueUrl, String deadLetterQueueName) {
         this.region = region;
         this.sourceQueueUrl = sourceQueueUrl;
         sqs = initSQSClient();
+        sharedClient = true;
+        setDeadLetterQueue(sourceQueueUrl, deadLetterQueueName);
+    }
+
+    /**
+     * Creates the service with the given client instead of the shared one, e.g. an {@link aws.local.InMemorySQS}.
+     */
+    public SQSService(String region, String sourceQueueUrl, String deadLetterQueueName, AmazonSQS sqs) {
+        this.region = region;
+        this.sourceQueueUrl = sourceQueueUrl;
+        this.sqs = sqs;
         setDeadLetterQueue(sourceQueueUrl, deadLetterQueueName);
     }
 
     public void sendMessage(String message) throws AWSException {
+        try (OperationTimer timer = Metrics.timer("sqs.sendMessage")) {
+            send(message);
+            timer.addBytes(message.getBytes(StandardCharsets.UTF_8).length);
+            timer.success();
+        }
+    }
+
+    private void send(String message) throws AWSException {
         if (message == null || message.isEmpty()) {
             throw new AWSException("Can't send SQS message, because SQS message body is null or empty");
         }
@@ -46,10 +106,18 @@ public class SQSService {
         }
 
         LOGGER.debug("Sending msg to SQS - {}", message);
+        if (bufferedSender != null) {
+            waitForBufferedSend(sendMessageBuffered(message));
+            LOGGER.info("SQS message successfully sent");
+            return;
+        }
         try {
-            sqs.sendMessage(new SendMessageRequest()
-                    .withMessageBody(message)
-                    .withQueueUrl(sourceQueueUrl));
+            Map<String, MessageAttributeValue> attributes = new HashMap<>();
+            SendMessageRequest request = new SendMessageRequest()
+                    .withMessageBody(encodeBody(message, attributes))
+                    .withMessageAttributes(attributes)
+                    .withQueueUrl(sourceQueueUrl);
+            Throttling.guard("sqs", sourceQueueUrl).call(() -> client().sendMessage(request));
         }catch (Exception e) {
             LOGGER.error("Error while creating SQS message: ", e.getMessage());
             throw new AWSException("Error while creating SQS message: " + e.getMessage());
@@ -57,25 +125,261 @@ public class SQSService {
         LOGGER.info("SQS message successfully sent");
     }
 
-    public void deleteAllMessages() throws AWSException {
-        LOGGER.debug("Receiving messages from Queue...");
+    /**
+     * Sends the message without blocking the caller. In buffered mode the message joins the next batch,
+     * otherwise it is sent on the async executor.
+     */
+    public CompletableFuture<Void> sendMessageAsync(String message) {
+        if (bufferedSender != null) {
+            try {
+                return sendMessageBuffered(message).thenApply(messageId -> null);
+            } catch (AWSException e) {
+                CompletableFuture<Void> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+        }
+        return AsyncSupport.supply(asyncExecutor, () -> {
+            sendMessage(message);
+            return null;
+        });
+    }
+
+    /**
+     * Enables large message bodies: bodies over {@code compressionThreshold} bytes are gzip compressed
+     * when that makes them smaller, and bodies still over 256 KB are stored in {@code bucketName}
+     * under {@link #getPayloadKeyPrefix()} and replaced by a pointer. Compressed bodies carry the
+     * {@code ContentEncoding=gzip} message attribute, pointers the {@code ExtendedPayloadSize} attribute of the
+     * Amazon SQS Extended Client Library. {@link SQSUtil} resolves both on the consumer side from those attributes
+     * once the reading {@link S3Service} is set with {@link SQSUtil#setPayloadStore(S3Service)}.
+     * Stored payloads are not deleted after consumption; expire them with a lifecycle rule on the prefix.
+     *
+     * @param s3Service service used to store large bodies, {@code null} for compression only
+     */
+    public void enableLargePayloads(S3Service s3Service, String bucketName, int compressionThreshold) {
+        this.payloadStore = s3Service;
+        this.payloadBucketName = bucketName;
+        this.compressionThreshold = compressionThreshold;
+        LOGGER.debug("SQS large payloads enabled for {}: compression above {} bytes, offloading to {}",
+                sourceQueueUrl, compressionThreshold, s3Service == null ? "none" : bucketName);
+    }
+
+    public void disableLargePayloads() {
+        this.compressionThreshold = -1;
+        this.payloadStore = null;
+    }
+
+    /**
+     * @param attributes receives the message attributes that describe the encoding
+     */
+    private String encodeBody(String message, Map<String, MessageAttributeValue> attributes) throws AWSException {
+        if (compressionThreshold < 0) {
+            return message;
+        }
+        String body = message;
+        int messageBytes = message.getBytes(StandardCharsets.UTF_8).length;
+        int bytes = messageBytes;
+        if (bytes > compressionThreshold) {
+            String compressed = PayloadCodec.compress(message);
+            if (compressed.length() < bytes) {
+                LOGGER.debug("SQS message body compressed from {} to {} bytes", bytes, compressed.length());
+                body = compressed;
+                attributes.put(PayloadCodec.ENCODING_ATTRIBUTE,
+                        new MessageAttributeValue().withDataType("String").withStringValue(PayloadCodec.GZIP_ENCODING));
+                bytes = compressed.length() + BufferedSender.attributeBytes(attributes);
+            }
+        }
+        S3Service store = payloadStore;
+        if (bytes > MAX_MESSAGE_BYTES && store != null) {
+            String key = payloadKeyPrefix + UUID.randomUUID();
+            store.putObjectContent(payloadBucketName, key, message, "application/json");
+            LOGGER.debug("SQS message body of {} bytes stored in S3 {}/{}", messageBytes, payloadBucketName, key);
+            body = PayloadCodec.createPointer(payloadBucketName, key);
+            attributes.remove(PayloadCodec.ENCODING_ATTRIBUTE);
+            attributes.put(PayloadCodec.SIZE_ATTRIBUTE,
+                    new MessageAttributeValue().withDataType("Number").withStringValue(String.valueOf(messageBytes)));
+        }
+        return body;
+    }
+
+    /**
+     * Switches the service to buffered mode: messages are collected and sent with {@code SendMessageBatch}
+     * once 10 are pending, the 256 KB payload limit is reached or {@code lingerMillis} has passed.
+     * In this mode {@link #sendMessage(String)} blocks until its batch is sent, so concurrent callers share batches.
+     */
+    public synchronized void enableBuffering(long lingerMillis, int senderThreads, int maxRetries) {
+        disableBuffering();
+        bufferedSender = new BufferedSender(client(), sourceQueueUrl, lingerMillis, senderThreads, maxRetries);
+        LOGGER.debug("SQS buffering enabled for {}: linger {} ms", sourceQueueUrl, lingerMillis);
+    }
+
+    /**
+     * Sends all buffered messages and switches back to one request per message.
+     */
+    public synchronized void disableBuffering() {
+        if (bufferedSender != null) {
+            bufferedSender.close();
+            bufferedSender = null;
+        }
+    }
+
+    /**
+     * Adds the message to the buffer without waiting for it to be sent.
+     *
+     * @return future completed with the message ID, or exceptionally with {@link AWSException}
+     */
+    public CompletableFuture<String> sendMessageBuffered(String message) throws AWSException {
+        if (message == null || message.isEmpty()) {
+            throw new AWSException("Can't send SQS message, because SQS message body is null or empty");
+        }
+        BufferedSender sender = bufferedSender;
+        if (sender == null) {
+            throw new AWSException("Can't buffer SQS message, because buffering is not enabled");
+        }
+        Map<String, MessageAttributeValue> attributes = new HashMap<>();
+        String body = encodeBody(message, attributes);
+        return sender.send(body, attributes);
+    }
+
+    public void flushBufferedMessages() {
+        BufferedSender sender = bufferedSender;
+        if (sender != null) {
+            sender.flush();
+        }
+    }
+
+    private void waitForBufferedSend(CompletableFuture<String> future) throws AWSException {
+        try {
+            future.get(bufferedSendTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AWSException("Interrupted while sending SQS message");
+        } catch (TimeoutException e) {
+            LOGGER.error("SQS message was not sent to {} within {} ms", sourceQueueUrl, bufferedSendTimeoutMillis);
+            throw new AWSException("SQS message was not sent to " + sourceQueueUrl + " within " + bufferedSendTimeoutMillis + " ms");
+        } catch (ExecutionException e) {
+            LOGGER.error("Error while creating SQS message: {}", e.getCause().getMessage());
+            if (e.getCause() instanceof AWSException) {
+                throw (AWSException) e.getCause();
+            }
+            throw new AWSException("Error while creating SQS message: " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Drains the queue with default settings, see {@link #deleteAllMessages(int, long)}.
+     */
+    public int deleteAllMessages() throws AWSException {
+        return deleteAllMessages(DEFAULT_DRAIN_RECEIVERS, DEFAULT_DRAIN_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Drains the queue: {@code receivers} receivers run in parallel and delete what they receive
+     * with {@code DeleteMessageBatch}, until a receive comes back empty and the queue reports no visible messages,
+     * or the timeout passes. Messages in flight at another consumer can't be deleted and are left alone,
+     * so an empty queue returns after about a second.
+     *
+     * @return number of deleted messages
+     */
+    public int deleteAllMessages(int receivers, long timeoutMillis) throws AWSException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        AtomicInteger deleted = new AtomicInteger();
+        AtomicBoolean empty = new AtomicBoolean();
+
+        LOGGER.debug("Draining queue {} with {} receivers...", sourceQueueUrl, receivers);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, receivers));
         try {
-            ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(sourceQueueUrl).withMaxNumberOfMessages(10);
-            List<Message> messages = sqs.receiveMessage(receiveMessageRequest).getMessages();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < Math.max(1, receivers); i++) {
+                futures.add(executor.submit(() -> {
+                    drain(deadline, deleted, empty);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            LOGGER.error("Unable to delete messages from SQS {}: {}", sourceQueueUrl, e.getCause().getMessage());
+            throw new AWSException("Unable to delete messages from SQS " + sourceQueueUrl + ": " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AWSException("Interrupted while deleting messages from SQS " + sourceQueueUrl);
+        } finally {
+            executor.shutdownNow();
+        }
+        LOGGER.info("{} messages deleted from SQS {}, queue empty: {}", deleted.get(), sourceQueueUrl, empty.get());
+        return deleted.get();
+    }
 
-            LOGGER.info("Messages in SQS -{}", messages.size());
+    private void drain(long deadline, AtomicInteger deleted, AtomicBoolean empty) {
+        while (!empty.get() && !Thread.currentThread().isInterrupted()) {
+            long remainingSeconds = (deadline - System.currentTimeMillis()) / 1000;
+            if (remainingSeconds <= 0) {
+                return;
+            }
+            ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(sourceQueueUrl)
+                    .withMaxNumberOfMessages(MAX_BATCH_ENTRIES)
+                    .withWaitTimeSeconds((int) Math.min(DRAIN_WAIT_TIME_SECONDS, remainingSeconds));
+            List<Message> messages = client().receiveMessage(receiveMessageRequest).getMessages();
 
-            for (Message m : messages) {
-                LOGGER.debug("Deleting message {}", m);
-                sqs.deleteMessage(sourceQueueUrl, m.getReceiptHandle());
-                LOGGER.info("Message {} successfully deleted", m);
+            if (messages.isEmpty()) {
+                if (!hasVisibleMessages()) {
+                    empty.set(true);
+                }
+                continue;
             }
-        }catch (Exception e) {
-            LOGGER.error("Unable to delete messages from SQS {}: {}", sourceQueueUrl, e.getMessage());
-            throw new AWSException("Unable to delete messages from SQS " + sourceQueueUrl + ": " + e.getMessage());
+
+            List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(messages.size());
+            for (int i = 0; i < messages.size(); i++) {
+                entries.add(new DeleteMessageBatchRequestEntry(String.valueOf(i), messages.get(i).getReceiptHandle()));
+            }
+            DeleteMessageBatchResult result = client().deleteMessageBatch(new DeleteMessageBatchRequest(sourceQueueUrl, entries));
+            deleted.addAndGet(result.getSuccessful().size());
+            for (BatchResultErrorEntry failure : result.getFailed()) {
+                LOGGER.error("Unable to delete message from SQS {}: {}", sourceQueueUrl, failure.getMessage());
+            }
+        }
+    }
+
+    private boolean hasVisibleMessages() {
+        Map<String, String> attributes = client().getQueueAttributes(new GetQueueAttributesRequest(sourceQueueUrl)
+                .withAttributeNames(QueueAttributeName.ApproximateNumberOfMessages,
+                        QueueAttributeName.ApproximateNumberOfMessagesNotVisible)).getAttributes();
+        String inFlight = attributes.get(QueueAttributeName.ApproximateNumberOfMessagesNotVisible.toString());
+        if (!"0".equals(inFlight)) {
+            LOGGER.debug("{} messages in flight in SQS {} are left to their consumers", inFlight, sourceQueueUrl);
+        }
+        return !"0".equals(attributes.get(QueueAttributeName.ApproximateNumberOfMessages.toString()));
+    }
+
+    /**
+     * Deletes all messages in the queue with a single {@code PurgeQueue} call, without receiving them.
+     * SQS allows one purge per queue every 60 seconds and may take up to 60 seconds to complete it.
+     */
+    public void purgeQueue() throws AWSException {
+        try {
+            client().purgeQueue(new PurgeQueueRequest(sourceQueueUrl));
+            LOGGER.info("Queue {} purged", sourceQueueUrl);
+        } catch (Exception e) {
+            LOGGER.error("Unable to purge SQS {}: {}", sourceQueueUrl, e.getMessage());
+            throw new AWSException("Unable to purge SQS " + sourceQueueUrl + ": " + e.getMessage());
         }
     }
 
+    /**
+     * Creates a long-polling consumer of the source queue. Configure it with its setters, then call {@link SQSConsumer#start()}.
+     */
+    public SQSConsumer createConsumer(SQSMessageHandler handler) throws AWSException {
+        if (handler == null) {
+            throw new AWSException("Can't create SQS consumer, because message handler is null");
+        }
+        if (sqs == null) {
+            throw new AWSException("Can't create SQS consumer, because SQS client is null");
+        }
+        return new SQSConsumer(client(), sourceQueueUrl, handler);
+    }
+
     public void setDeadLetterQueue(String sourceQueueUrl, String deadLetterQueueName) {
         try {
             String deadLetterQueueArn = getDeadLetterQueueArn(deadLetterQueueName);
@@ -85,7 +389,7 @@ public class SQSService {
                     .addAttributesEntry(QueueAttributeName.RedrivePolicy.toString(),
                             "{\"maxReceiveCount\":\"3\", \"deadLetterTargetArn\":\""
                                     + deadLetterQueueArn + "\"}");
-            sqs.setQueueAttributes(request);
+            client().setQueueAttributes(request);
 
             LOGGER.info("Set queue {} as source queue for dead-letter queue {}", sourceQueueUrl, deadLetterQueueName);
         } catch (AmazonServiceException ase) {
@@ -100,8 +404,8 @@ public class SQSService {
     private String getDeadLetterQueueArn(String deadLetterQueueName) throws AWSException {
         try {
             LOGGER.debug("Getting dead letter queue url...");
-            String deadLetterQueueUrl = sqs.getQueueUrl(deadLetterQueueName).getQueueUrl();
-            GetQueueAttributesResult deadLetterQueueAttributes = sqs.getQueueAttributes(
+            String deadLetterQueueUrl = client().getQueueUrl(deadLetterQueueName).getQueueUrl();
+            GetQueueAttributesResult deadLetterQueueAttributes = client().getQueueAttributes(
                     new GetQueueAttributesRequest(deadLetterQueueUrl)
                             .withAttributeNames("QueueArn"));
             return deadLetterQueueAttributes.getAttributes().get("QueueArn");
@@ -114,16 +418,62 @@ public class SQSService {
         }
     }
 
+    /**
+     * A client from the registry is looked up on every call, so the service gets a new one after
+     * {@link AWSClientRegistry#shutdown()}; an injected client is used as is.
+     * Consumers and the buffered sender keep the client they were created with.
+     */
+    private AmazonSQS client() {
+        return sharedClient ? AWSClientRegistry.getSQSClient(region) : sqs;
+    }
+
     private AmazonSQS initSQSClient() {
         AmazonSQS client = null;
         try {
-            client = AmazonSQSClientBuilder.standard().withRegion(region).build();
+            client = AWSClientRegistry.getSQSClient(region);
         }catch (Exception e) {
             LOGGER.error("Error while initializing SQSClient: ", e.getMessage());
         }
         return client;
     }
 
+    /**
+     * Sets the client-side throttling of the source queue, see {@link Throttling}.
+     */
+    public void setThrottleSettings(ThrottleSettings throttleSettings) {
+        Throttling.setSettings("sqs", sourceQueueUrl, throttleSettings);
+    }
+
+    public long getBufferedSendTimeoutMillis() {
+        return bufferedSendTimeoutMillis;
+    }
+
+    /**
+     * Sets how long {@link #sendMessage(String)} waits for its batch in buffered mode.
+     */
+    public void setBufferedSendTimeoutMillis(long bufferedSendTimeoutMillis) {
+        this.bufferedSendTimeoutMillis = bufferedSendTimeoutMillis;
+    }
+
+    public String getPayloadKeyPrefix() {
+        return payloadKeyPrefix;
+    }
+
+    public void setPayloadKeyPrefix(String payloadKeyPrefix) {
+        this.payloadKeyPrefix = payloadKeyPrefix;
+    }
+
+    public Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * @see AsyncSupport#supply
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
     public String getRegion() {
         return region;
     }
@@ -0,0 +1,107 @@
+package aws.sqs.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import exception.AWSException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This is a util class that encodes large SQS message bodies.
+ * Compressed bodies are gzip encoded as Base64 and marked with the {@code ContentEncoding=gzip} message attribute;
+ * only this library decodes them.
+ * Bodies stored in S3 are replaced by a pointer in the format of the Amazon SQS Extended Client Library,
+ * e.g. {@code ["software.amazon.payloadoffloading.PayloadS3Pointer",{"s3BucketName":"b","s3Key":"k"}]},
+ * and carry its {@code ExtendedPayloadSize} attribute, so offloaded messages can be read by either library.
+ */
+
+public class PayloadCodec {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static final String ENCODING_ATTRIBUTE = "ContentEncoding";
+    public static final String GZIP_ENCODING = "gzip";
+    public static final String SIZE_ATTRIBUTE = "ExtendedPayloadSize";
+    public static final String LEGACY_SIZE_ATTRIBUTE = "SQSLargePayloadSize";
+
+    private static final String POINTER_CLASS = "software.amazon.payloadoffloading.PayloadS3Pointer";
+    private static final String LEGACY_POINTER_CLASS = "com.amazon.sqs.javamessaging.MessageS3Pointer";
+
+    public static String compress(String body) throws AWSException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length() / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(body.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new AWSException("Unable to compress SQS message body: " + e.getMessage());
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * @param attributes string values of the message attributes by name
+     */
+    public static boolean isCompressed(Map<String, String> attributes) {
+        return GZIP_ENCODING.equals(attributes.get(ENCODING_ATTRIBUTE));
+    }
+
+    public static String decompress(String body) throws AWSException {
+        try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(body)))) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length() * 4);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = gzip.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new AWSException("Unable to decompress SQS message body: " + e.getMessage());
+        }
+    }
+
+    public static String createPointer(String bucketName, String key) throws AWSException {
+        StringWriter writer = new StringWriter(128);
+        try (JsonGenerator generator = MAPPER.getFactory().createGenerator(writer)) {
+            generator.writeStartArray();
+            generator.writeString(POINTER_CLASS);
+            generator.writeStartObject();
+            generator.writeStringField("s3BucketName", bucketName);
+            generator.writeStringField("s3Key", key);
+            generator.writeEndObject();
+            generator.writeEndArray();
+        } catch (IOException e) {
+            throw new AWSException("Unable to create SQS payload pointer for " + key + ": " + e.getMessage());
+        }
+        return writer.toString();
+    }
+
+    /**
+     * @param attributes string values of the message attributes by name
+     */
+    public static boolean isPointer(String body, Map<String, String> attributes) {
+        return (attributes.containsKey(SIZE_ATTRIBUTE) || attributes.containsKey(LEGACY_SIZE_ATTRIBUTE))
+                && body != null && body.startsWith("[")
+                && (body.contains(POINTER_CLASS) || body.contains(LEGACY_POINTER_CLASS));
+    }
+
+    /**
+     * @return bucket name and key of the stored payload
+     */
+    public static String[] parsePointer(String body) throws AWSException {
+        try {
+            JsonNode pointer = MAPPER.readTree(body).get(1);
+            return new String[]{pointer.get("s3BucketName").asText(), pointer.get("s3Key").asText()};
+        } catch (Exception e) {
+            throw new AWSException("SQS payload pointer is not valid: " + body);
+        }
+    }
+}
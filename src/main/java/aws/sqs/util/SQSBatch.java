@@ -0,0 +1,55 @@
+package aws.sqs.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents an SQS event batch parsed into {@link SQSMessage} objects.
+ * Messages that could not be parsed, or that the caller failed to process ({@link #addFailure(String)}),
+ * are kept by message ID so that only they are redelivered when the batch is returned from a Lambda handler
+ * as a partial batch response ({@code ReportBatchItemFailures}).
+ * The batch is thread-safe, so messages processed in parallel can report their failures.
+ */
+
+public class SQSBatch {
+
+    private final List<SQSMessage> messages = new ArrayList<>();
+    private final List<String> failedMessageIds = new ArrayList<>();
+
+    public synchronized void addMessage(SQSMessage message) {
+        messages.add(message);
+    }
+
+    public synchronized void addFailure(String messageId) {
+        failedMessageIds.add(messageId);
+    }
+
+    public synchronized List<SQSMessage> getMessages() {
+        return Collections.unmodifiableList(new ArrayList<>(messages));
+    }
+
+    public synchronized List<String> getFailedMessageIds() {
+        return new ArrayList<>(failedMessageIds);
+    }
+
+    /**
+     * @return the partial batch response expected by Lambda: {@code {"batchItemFailures": [{"itemIdentifier": ...}]}}
+     */
+    public synchronized Map<String, List<Map<String, String>>> toBatchItemFailures() {
+        List<Map<String, String>> failures = new ArrayList<>(failedMessageIds.size());
+        for (String messageId : failedMessageIds) {
+            failures.add(Collections.singletonMap("itemIdentifier", messageId));
+        }
+        Map<String, List<Map<String, String>>> response = new HashMap<>();
+        response.put("batchItemFailures", failures);
+        return response;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SQSBatch{messages=" + messages.size() + ", failed=" + failedMessageIds.size() + "}";
+    }
+}
@@ -1,6 +1,10 @@
 package aws.sqs.util;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * This class represents an SQS message.
@@ -8,10 +12,13 @@ import java.time.LocalDateTime;
  */
 
 public class SQSMessage {
+    @JsonIgnore
+    private String messageId;
     private String fileName;
     private String bucketName;
     private String date;
     private LocalDateTime time;
+    private Map<String, String> metadata = new LinkedHashMap<>();
 
     public String getDate() {
         return date;
@@ -37,6 +44,17 @@ public class SQSMessage {
         this.bucketName = bucketName;
     }
 
+    /**
+     * @return ID of the SQS message this object was parsed from, not part of the JSON body
+     */
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(String messageId) {
+        this.messageId = messageId;
+    }
+
     public LocalDateTime getTime() {
         return time;
     }
@@ -44,4 +62,15 @@ public class SQSMessage {
     public void setTime(LocalDateTime time) {
         this.time = time;
     }
+
+    /**
+     * @return additional values sent with the message, e.g. fields extracted from the invoice; never {@code null}
+     */
+    public Map<String, String> getMetadata() {
+        return metadata;
+    }
+
+    public void setMetadata(Map<String, String> metadata) {
+        this.metadata = metadata == null ? new LinkedHashMap<>() : metadata;
+    }
 }
\ No newline at end of file
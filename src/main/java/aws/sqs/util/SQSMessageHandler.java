@@ -0,0 +1,14 @@
+package aws.sqs.util;
+
+import com.amazonaws.services.sqs.model.Message;
+
+/**
+ * Handles one message received by {@link aws.sqs.service.SQSConsumer}.
+ * The message is deleted from the queue when the handler returns normally;
+ * if it throws, the message becomes visible again after its visibility timeout and is redelivered.
+ */
+
+@FunctionalInterface
+public interface SQSMessageHandler {
+    void handle(Message message) throws Exception;
+}
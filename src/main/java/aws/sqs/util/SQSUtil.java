@@ -1,16 +1,27 @@
 package aws.sqs.util;
 
+import aws.s3.service.S3Service;
 import com.amazonaws.services.lambda.runtime.events.SQSEvent;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
 import exception.AWSException;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * This is a util class that works with SQS.
@@ -22,6 +33,59 @@ public class SQSUtil {
 
     private static Logger LOGGER = LoggerFactory.getLogger(SQSUtil.class);
 
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static volatile S3Service payloadStore;
+
+    /**
+     * Sets the service used to read message bodies stored in S3 by {@link aws.sqs.service.SQSService#enableLargePayloads}.
+     */
+    public static void setPayloadStore(S3Service s3Service) {
+        payloadStore = s3Service;
+    }
+
+    /**
+     * Returns the original message body: bodies stored in S3 are read through the payload store
+     * and compressed bodies are decompressed, both recognised by their message attributes.
+     * Other bodies are returned unchanged.
+     *
+     * @param attributes string values of the message attributes by name, see {@link #getMessageAttributes(Message)}
+     */
+    public static String resolveBody(String body, Map<String, String> attributes) throws AWSException {
+        if (PayloadCodec.isPointer(body, attributes)) {
+            String[] location = PayloadCodec.parsePointer(body);
+            S3Service store = payloadStore;
+            if (store == null) {
+                LOGGER.error("SQS message body is stored in S3 {}/{}, but no payload store is set", location[0], location[1]);
+                throw new AWSException("SQS message body is stored in S3 " + location[0] + "/" + location[1] + ", but no payload store is set");
+            }
+            LOGGER.debug("Reading SQS message body from S3 {}/{}", location[0], location[1]);
+            return store.getObjectContent(location[0], location[1]);
+        }
+        if (PayloadCodec.isCompressed(attributes)) {
+            return PayloadCodec.decompress(body);
+        }
+        return body;
+    }
+
+    public static Map<String, String> getMessageAttributes(Message message) {
+        Map<String, String> attributes = new HashMap<>();
+        for (Map.Entry<String, MessageAttributeValue> entry : message.getMessageAttributes().entrySet()) {
+            attributes.put(entry.getKey(), entry.getValue().getStringValue());
+        }
+        return attributes;
+    }
+
+    public static Map<String, String> getMessageAttributes(SQSEvent.SQSMessage record) {
+        Map<String, String> attributes = new HashMap<>();
+        if (record.getMessageAttributes() != null) {
+            for (Map.Entry<String, SQSEvent.MessageAttribute> entry : record.getMessageAttributes().entrySet()) {
+                attributes.put(entry.getKey(), entry.getValue().getStringValue());
+            }
+        }
+        return attributes;
+    }
+
     public static String getDestinationKey(String destinationFolderName, SQSEvent sqsEvent) throws AWSException {
         return destinationFolderName + "/" + getFileName(sqsEvent);
     }
@@ -30,6 +94,117 @@ public class SQSUtil {
         return sourceFolderName + "/" + getFileName(sqsEvent);
     }
 
+    public static String getDestinationKey(String destinationFolderName, SQSMessage message) {
+        return destinationFolderName + "/" + message.getFileName();
+    }
+
+    public static String getSourceKey(String sourceFolderName, SQSMessage message) {
+        return sourceFolderName + "/" + message.getFileName();
+    }
+
+    /**
+     * Parses every record of the event once with a shared parser.
+     * Records with a missing or invalid body are not returned as messages, they are reported as failures of the batch.
+     */
+    public static SQSBatch parseMessages(SQSEvent sqsEvent) throws AWSException {
+        if (sqsEvent == null || sqsEvent.getRecords() == null) {
+            LOGGER.error("Error while getting message body from SQS - SQS Event is null");
+            throw new AWSException("Error while getting message body from SQS - SQS Event is null");
+        }
+
+        SQSBatch batch = new SQSBatch();
+        for (SQSEvent.SQSMessage record : sqsEvent.getRecords()) {
+            try {
+                SQSMessage message = parseMessage(record.getBody(), getMessageAttributes(record));
+                message.setMessageId(record.getMessageId());
+                batch.addMessage(message);
+            } catch (AWSException e) {
+                LOGGER.error("SQS message {} skipped: {}", record.getMessageId(), e.getMessage());
+                batch.addFailure(record.getMessageId());
+            }
+        }
+        LOGGER.debug("SQS event parsed: {}", batch);
+        return batch;
+    }
+
+    /**
+     * Parses a message received with {@code ReceiveMessage}, e.g. by an {@link SQSMessageHandler}.
+     * Compressed and offloaded bodies are only resolved if the receive requested the message attributes.
+     */
+    public static SQSMessage parseMessage(Message message) throws AWSException {
+        SQSMessage parsed = parseMessage(message.getBody(), getMessageAttributes(message));
+        parsed.setMessageId(message.getMessageId());
+        return parsed;
+    }
+
+    /**
+     * Parses a plain message body; use {@link #parseMessage(String, Map)} for bodies that may be compressed or offloaded.
+     */
+    public static SQSMessage parseMessage(String body) throws AWSException {
+        return parseMessage(body, Collections.emptyMap());
+    }
+
+    /**
+     * Parses one SQS message body, the counterpart of {@link #generateMessage(String, String, String, LocalDateTime)}.
+     * {@code time} is accepted both as an ISO-8601 string and in the field-by-field layout
+     * of {@link LocalDateTime} written by older producers.
+     */
+    public static SQSMessage parseMessage(String body, Map<String, String> attributes) throws AWSException {
+        String json = resolveBody(body, attributes);
+        JsonNode node;
+        try {
+            node = MAPPER.readTree(json);
+        } catch (Exception e) {
+            throw new AWSException("Error while reading SQS JSON message: " + e.getMessage());
+        }
+        if (node == null || !node.isObject()) {
+            throw new AWSException("Error while reading SQS JSON message: body is not a JSON object");
+        }
+
+        SQSMessage message = new SQSMessage();
+        message.setFileName(getRequiredText(node, "fileName"));
+        message.setBucketName(getRequiredText(node, "bucketName"));
+        message.setDate(getRequiredText(node, "date"));
+        message.setTime(parseTime(node.get("time")));
+        message.setMetadata(parseMetadata(node.get("metadata")));
+        return message;
+    }
+
+    private static Map<String, String> parseMetadata(JsonNode metadata) {
+        Map<String, String> values = new LinkedHashMap<>();
+        if (metadata != null && metadata.isObject()) {
+            Iterator<Map.Entry<String, JsonNode>> fields = metadata.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                values.put(field.getKey(), field.getValue().asText());
+            }
+        }
+        return values;
+    }
+
+    private static String getRequiredText(JsonNode node, String fieldName) throws AWSException {
+        JsonNode field = node.get(fieldName);
+        if (field == null || !field.isTextual()) {
+            throw new AWSException("Object \"" + fieldName + "\" not found in SQS message");
+        }
+        return field.asText();
+    }
+
+    private static LocalDateTime parseTime(JsonNode time) throws AWSException {
+        if (time == null || time.isNull()) {
+            return null;
+        }
+        try {
+            if (time.isTextual()) {
+                return LocalDateTime.parse(time.asText());
+            }
+            return LocalDateTime.of(time.get("year").asInt(), time.get("monthValue").asInt(), time.get("dayOfMonth").asInt(),
+                    time.get("hour").asInt(), time.get("minute").asInt(), time.get("second").asInt(), time.path("nano").asInt());
+        } catch (Exception e) {
+            throw new AWSException("Object \"time\" in SQS message is not valid: " + e.getMessage());
+        }
+    }
+
     public static String getBucketName(SQSEvent sqsEvent) throws AWSException {
         try {
             return getMessageBody(sqsEvent).getString("bucketName");
@@ -59,7 +234,8 @@ public class SQSUtil {
 
     private static JSONObject getMessageBody(SQSEvent sqsEvent)  throws AWSException {
         try {
-            String body = SQSUtil.getMessageFromSQS(sqsEvent);
+            SQSEvent.SQSMessage record = SQSUtil.getMessageFromSQS(sqsEvent);
+            String body = record == null ? "" : resolveBody(record.getBody(), getMessageAttributes(record));
             return new JSONObject(body);
         } catch (JSONException e) {
             LOGGER.error("Error while reading SQS JSON message: {}", e.getMessage());
@@ -67,47 +243,64 @@ public class SQSUtil {
         }
     }
 
-    private static String getMessageFromSQS(SQSEvent sqsEvent) throws AWSException {
-        String body = "";
+    private static SQSEvent.SQSMessage getMessageFromSQS(SQSEvent sqsEvent) throws AWSException {
+        SQSEvent.SQSMessage record = null;
         try {
             for (SQSEvent.SQSMessage msg : sqsEvent.getRecords()) {
-                body = msg.getBody();
+                record = msg;
             }
         }catch (Exception e) {
             LOGGER.error("Error while getting message body from SQS: {}", e.getMessage());
             throw new AWSException("Error while getting message body from SQS: " + e.getMessage());
         }
-        return body;
+        return record;
     }
 
+    /**
+     * Serializes the message fields into compact JSON with {@code time} as an ISO-8601 local date-time,
+     * e.g. {@code {"fileName":"a.xml","bucketName":"b","date":"2019/05/01","time":"2019-05-01T10:15:30"}}.
+     * The generator factory is shared and thread-safe, no mapper or bean is created per call.
+     */
     public static String generateMessage(String bucketName, String fileName, String date, LocalDateTime time) throws AWSException {
-       checkNotNull(bucketName, fileName, date, time);
+        return generateMessage(bucketName, fileName, date, time, Collections.emptyMap());
+    }
 
-        ObjectWriter ow = new ObjectMapper().writer().withDefaultPrettyPrinter();
+    /**
+     * Same as {@link #generateMessage(String, String, String, LocalDateTime)} with the message metadata
+     * written as a {@code "metadata"} object when it is not empty.
+     */
+    public static String generateMessage(SQSMessage message) throws AWSException {
+        return generateMessage(message.getBucketName(), message.getFileName(), message.getDate(), message.getTime(), message.getMetadata());
+    }
 
-        SQSMessage msg = createObject(bucketName, fileName, date, time);
-        String jsonInString = null;
+    private static String generateMessage(String bucketName, String fileName, String date, LocalDateTime time,
+                                          Map<String, String> metadata) throws AWSException {
+       checkNotNull(bucketName, fileName, date, time);
 
-        try {
-            jsonInString = ow.writeValueAsString(msg);
-            LOGGER.info("SQS message successfully created {}", jsonInString);
-        } catch (JsonProcessingException e) {
+        StringWriter writer = new StringWriter(128);
+        try (JsonGenerator generator = MAPPER.getFactory().createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeStringField("fileName", fileName);
+            generator.writeStringField("bucketName", bucketName);
+            generator.writeStringField("date", date);
+            generator.writeStringField("time", DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(time));
+            if (metadata != null && !metadata.isEmpty()) {
+                generator.writeObjectFieldStart("metadata");
+                for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                    generator.writeStringField(entry.getKey(), entry.getValue());
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
             LOGGER.error("Error occurred while creating SQS message for file {} in bucket {} in JSON format", fileName, bucketName);
+            throw new AWSException("Error occurred while creating SQS message for file " + fileName + " in bucket " + bucketName + ": " + e.getMessage());
         }
+        String jsonInString = writer.toString();
+        LOGGER.debug("SQS message successfully created {}", jsonInString);
         return jsonInString;
     }
 
-    private static SQSMessage createObject(String bucketName, String fileName, String date, LocalDateTime time) {
-        SQSMessage sqsMessage = new SQSMessage();
-
-        sqsMessage.setFileName(fileName);
-        sqsMessage.setBucketName(bucketName);
-        sqsMessage.setDate(date);
-        sqsMessage.setTime(time);
-
-        return sqsMessage;
-    }
-
     private static void checkNotNull(String bucketName, String fileName,  String date, LocalDateTime time) throws AWSException {
         if (fileName == null || bucketName == null || date == null || time == null) {
             LOGGER.error("fileName-{}, bucketName-{}, date-{}, time-{}", fileName, bucketName, date, time);
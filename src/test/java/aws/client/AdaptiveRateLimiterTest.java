@@ -0,0 +1,90 @@
+package aws.client;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveRateLimiterTest {
+
+    private static ThrottleSettings settings(double minRate, double maxRate) {
+        ThrottleSettings settings = new ThrottleSettings();
+        settings.setMinRate(minRate);
+        settings.setMaxRate(maxRate);
+        return settings;
+    }
+
+    @Test
+    public void isOpenUntilFirstThrottle() throws Exception {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(settings(1, 0));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire();
+        }
+        assertTrue(System.nanoTime() - start < 500_000_000L);
+        assertEquals(0, limiter.getRate(), 0);
+    }
+
+    @Test
+    public void throttleLowersRateButNotBelowMinimum() {
+        ThrottleSettings settings = settings(5, 0);
+        settings.setDecreaseFactor(0.5);
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(settings);
+
+        limiter.onThrottle();
+        assertEquals(5, limiter.getRate(), 0.001);
+    }
+
+    @Test
+    public void throttlesWithinGracePeriodCountOnce() throws Exception {
+        ThrottleSettings settings = settings(1, 100);
+        settings.setDecreaseFactor(0.5);
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(settings);
+        limiter.onThrottle();
+        for (int i = 0; i < 200; i++) {
+            limiter.onSuccess();
+        }
+        double before = limiter.getRate();
+
+        Thread.sleep(150);
+        limiter.onThrottle();
+        double afterFirst = limiter.getRate();
+        limiter.onThrottle();
+
+        assertTrue(afterFirst < before);
+        assertEquals(afterFirst, limiter.getRate(), 0.001);
+    }
+
+    @Test
+    public void successRaisesRateUpToMaximum() {
+        ThrottleSettings settings = settings(1, 10);
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(settings);
+        limiter.onThrottle();
+        double throttled = limiter.getRate();
+
+        limiter.onSuccess();
+        assertTrue(limiter.getRate() > throttled);
+        for (int i = 0; i < 1000; i++) {
+            limiter.onSuccess();
+        }
+        assertEquals(10, limiter.getRate(), 0.001);
+    }
+
+    @Test
+    public void enforcesRateOnceThrottled() throws Exception {
+        ThrottleSettings settings = settings(20, 20);
+        settings.setIncreasePerSecond(0);
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(settings);
+        limiter.onThrottle();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 11; i++) {
+            limiter.acquire();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        // the bucket starts empty, so 11 requests at 20/s take at least 0.5 s
+        assertTrue("took " + seconds + " s", seconds >= 0.45);
+        assertTrue("took " + seconds + " s", seconds < 2);
+    }
+}
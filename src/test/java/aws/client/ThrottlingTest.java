@@ -0,0 +1,66 @@
+package aws.client;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ThrottlingTest {
+
+    private static AmazonServiceException error(String errorCode, int statusCode) {
+        AmazonServiceException e = new AmazonServiceException(errorCode);
+        e.setErrorCode(errorCode);
+        e.setStatusCode(statusCode);
+        return e;
+    }
+
+    @Test
+    public void sdkPolicyLeavesThrottlingToTheGuard() {
+        RetryPolicy policy = Throttling.withoutThrottlingRetries(PredefinedRetryPolicies.getDynamoDBDefaultRetryPolicy());
+
+        assertFalse(policy.getRetryCondition().shouldRetry(null, error("ProvisionedThroughputExceededException", 400), 0));
+        assertFalse(policy.getRetryCondition().shouldRetry(null, error("ThrottlingException", 400), 0));
+        assertTrue(policy.getRetryCondition().shouldRetry(null, error("InternalServerError", 500), 0));
+        assertEquals(PredefinedRetryPolicies.DYNAMODB_DEFAULT_MAX_ERROR_RETRY, policy.getMaxErrorRetry());
+    }
+
+    @Test
+    public void backoffStaysWithinConfiguredDelays() throws Exception {
+        ThrottleSettings settings = new ThrottleSettings();
+        settings.setBaseDelayMillis(1);
+        settings.setMaxDelayMillis(20);
+        Throttling.setSettings("dynamodb", "backoff-test", settings);
+        ThrottleGuard guard = Throttling.guard("dynamodb", "backoff-test");
+
+        long delay = 0;
+        for (int i = 0; i < 20; i++) {
+            delay = guard.backoff(delay);
+            assertTrue("delay " + delay, delay >= 1 && delay <= 20);
+        }
+    }
+
+    @Test
+    public void guardRetriesThrottledCallsUpToMaxAttempts() {
+        ThrottleSettings settings = new ThrottleSettings();
+        settings.setBaseDelayMillis(1);
+        settings.setMaxDelayMillis(2);
+        settings.setMaxAttempts(3);
+        Throttling.setSettings("dynamodb", "attempts-test", settings);
+        ThrottleGuard guard = Throttling.guard("dynamodb", "attempts-test");
+
+        int[] calls = new int[1];
+        try {
+            guard.call(() -> {
+                calls[0]++;
+                throw error("ProvisionedThroughputExceededException", 400);
+            });
+        } catch (AmazonServiceException e) {
+            assertEquals("ProvisionedThroughputExceededException", e.getErrorCode());
+        }
+        assertEquals(3, calls[0]);
+    }
+}
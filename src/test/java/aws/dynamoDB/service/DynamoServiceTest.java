@@ -0,0 +1,224 @@
+package aws.dynamoDB.service;
+
+import aws.dynamoDB.util.BatchWriteResult;
+import aws.dynamoDB.util.InvoiceItem;
+import aws.dynamoDB.util.InvoiceStatus;
+import aws.dynamoDB.util.StatusUpdateSummary;
+import aws.local.InMemoryDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import exception.AWSException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DynamoServiceTest {
+
+    private static final AtomicInteger TABLES = new AtomicInteger();
+    private static final String BUCKET = "invoices-bucket";
+    private static final String DATE = "2019/05/01";
+    private static final String STATUS_INDEX = "status-time-index";
+    private static final String TAKEN_OVER = "MOVING";
+
+    private String table;
+    private RecordingDynamoDB dynamoDB;
+    private DynamoService service;
+
+    /**
+     * Counts index queries and can take an item over just before a conditional update or leave batch items unprocessed.
+     */
+    private static class RecordingDynamoDB extends InMemoryDynamoDB {
+        final AtomicInteger queries = new AtomicInteger();
+        final AtomicInteger batchWrites = new AtomicInteger();
+        volatile String takenOver;
+        volatile int partialBatchWrites;
+
+        @Override
+        public QueryResult query(QueryRequest request) {
+            queries.incrementAndGet();
+            return super.query(request);
+        }
+
+        @Override
+        public UpdateItemResult updateItem(UpdateItemRequest request) {
+            if (request.getConditionExpression() != null
+                    && request.getKey().get("fileName").getS().equals(takenOver)) {
+                Map<String, AttributeValue> values = new HashMap<>();
+                values.put(":status", new AttributeValue(TAKEN_OVER));
+                super.updateItem(new UpdateItemRequest().withTableName(request.getTableName()).withKey(request.getKey())
+                        .withUpdateExpression("set file_status = :status").withExpressionAttributeValues(values));
+            }
+            return super.updateItem(request);
+        }
+
+        @Override
+        public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+            if (batchWrites.incrementAndGet() > partialBatchWrites) {
+                return super.batchWriteItem(request);
+            }
+            String tableName = request.getRequestItems().keySet().iterator().next();
+            List<WriteRequest> writeRequests = request.getRequestItems().get(tableName);
+            int processed = writeRequests.size() / 2;
+            super.batchWriteItem(new BatchWriteItemRequest(
+                    Collections.singletonMap(tableName, writeRequests.subList(0, processed))));
+            return new BatchWriteItemResult().withUnprocessedItems(Collections.singletonMap(tableName,
+                    new ArrayList<>(writeRequests.subList(processed, writeRequests.size()))));
+        }
+    }
+
+    @Before
+    public void setUp() {
+        table = "invoices-" + TABLES.incrementAndGet();
+        dynamoDB = new RecordingDynamoDB();
+        dynamoDB.createTable(table, "fileName", "date");
+        service = new DynamoService("local", table, dynamoDB);
+    }
+
+    @After
+    public void tearDown() {
+        DynamoService.disableItemCache();
+    }
+
+    private void createItem(String fileName, InvoiceStatus status) throws Exception {
+        service.createInvoiceItem(fileName, BUCKET, DATE, LocalDateTime.now().minusHours(1), status.toString());
+    }
+
+    private String status(String fileName) throws Exception {
+        return service.getItem(fileName, DATE).getString("file_status");
+    }
+
+    private Set<String> fileNamesToMove() throws Exception {
+        Set<String> fileNames = new TreeSet<>();
+        for (Map<String, AttributeValue> item : service.listInvoiceItemsToMove()) {
+            fileNames.add(item.get("fileName").getS());
+        }
+        return fileNames;
+    }
+
+    @Test
+    public void itemIsCreatedReadAndDeleted() throws Exception {
+        createItem("a.xml", InvoiceStatus.UPLOADED);
+        assertEquals(BUCKET, service.getItem("a.xml", DATE).getString("bucketName"));
+        assertEquals("UPLOADED", status("a.xml"));
+
+        service.updateInvoiceStatus("a.xml", DATE, "COPIED");
+        assertEquals("COPIED", status("a.xml"));
+
+        service.deleteInvoiceItem("a.xml", DATE);
+        try {
+            service.getItem("a.xml", DATE);
+            fail("Expected AWSException");
+        } catch (AWSException e) {
+            assertTrue(e.getMessage().startsWith("There is no such item a.xml"));
+        }
+    }
+
+    @Test
+    public void statusIndexIsQueriedForItemsToMove() throws Exception {
+        dynamoDB.createIndex(table, STATUS_INDEX, "file_status", "moving_time");
+        service.setStatusIndexName(STATUS_INDEX);
+        createItem("a.xml", InvoiceStatus.UPLOADED);
+        createItem("b.xml", InvoiceStatus.COPIED);
+        service.createInvoiceItem("c.xml", BUCKET, DATE, LocalDateTime.now().plusHours(1), "UPLOADED");
+
+        assertEquals(Collections.singleton("a.xml"), fileNamesToMove());
+        assertEquals(1, dynamoDB.queries.get());
+    }
+
+    @Test
+    public void missingStatusIndexFallsBackToScanOnce() throws Exception {
+        service.setStatusIndexName(STATUS_INDEX);
+        service.setScanSegments(2);
+        createItem("a.xml", InvoiceStatus.UPLOADED);
+        createItem("b.xml", InvoiceStatus.COPIED);
+
+        assertEquals(Collections.singleton("a.xml"), fileNamesToMove());
+        assertEquals(Collections.singleton("a.xml"), fileNamesToMove());
+        assertEquals(1, dynamoDB.queries.get());
+    }
+
+    @Test
+    public void onlyItemsStillUploadedChangeStatus() throws Exception {
+        createItem("a.xml", InvoiceStatus.UPLOADED);
+        createItem("b.xml", InvoiceStatus.UPLOADED);
+        createItem("c.xml", InvoiceStatus.UPLOADED);
+        createItem("d.xml", InvoiceStatus.COPIED);
+        dynamoDB.takenOver = "b.xml";
+
+        StatusUpdateSummary summary = service.updateInvoiceStatusAfterChecking("fileName", "date", InvoiceStatus.COPIED);
+        assertEquals(2, summary.getUpdated());
+        assertEquals(1, summary.getSkipped());
+        assertTrue(summary.getFailed().isEmpty());
+        assertEquals("COPIED", status("a.xml"));
+        assertEquals(TAKEN_OVER, status("b.xml"));
+        assertEquals("COPIED", status("c.xml"));
+    }
+
+    @Test
+    public void cachedItemIsInvalidatedByStatusUpdate() throws Exception {
+        DynamoService.enableItemCache(60_000, 100);
+        createItem("a.xml", InvoiceStatus.UPLOADED);
+        assertEquals("UPLOADED", status("a.xml"));
+
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("fileName", new AttributeValue("a.xml"));
+        item.put("date", new AttributeValue(DATE));
+        item.put("file_status", new AttributeValue("COPIED"));
+        dynamoDB.putItem(new PutItemRequest(table, item));
+        assertEquals("UPLOADED", status("a.xml"));
+
+        service.updateInvoiceStatus("a.xml", DATE, TAKEN_OVER);
+        assertEquals(TAKEN_OVER, status("a.xml"));
+        assertEquals(2, DynamoService.getItemCacheStats().missCount());
+    }
+
+    @Test
+    public void unprocessedItemsAreResubmitted() throws Exception {
+        dynamoDB.partialBatchWrites = 4;
+        List<InvoiceItem> items = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            items.add(new InvoiceItem("invoice-" + i + ".xml", BUCKET, DATE, LocalDateTime.now(), "UPLOADED"));
+        }
+
+        BatchWriteResult result = service.createInvoiceItems(items);
+        assertTrue(result.isSuccessful());
+        assertEquals(60, result.getWritten());
+        assertEquals(60, dynamoDB.getItemCount(table));
+        assertTrue(dynamoDB.batchWrites.get() > 3);
+    }
+
+    @Test
+    public void itemsStillUnprocessedAfterLastAttemptAreReported() throws Exception {
+        dynamoDB.getFaults().setThrottleProbability(1);
+        service.setBatchWriteMaxAttempts(2);
+        List<InvoiceItem> items = Collections.singletonList(
+                new InvoiceItem("a.xml", BUCKET, DATE, LocalDateTime.now(), "UPLOADED"));
+
+        BatchWriteResult result = service.createInvoiceItems(items);
+        assertEquals(0, result.getWritten());
+        assertEquals(items, result.getFailed());
+        assertEquals(2, dynamoDB.batchWrites.get());
+        assertEquals(0, dynamoDB.getItemCount(table));
+    }
+}
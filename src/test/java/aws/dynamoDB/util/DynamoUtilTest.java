@@ -0,0 +1,157 @@
+package aws.dynamoDB.util;
+
+import aws.client.AWSClientRegistry;
+import aws.dynamoDB.service.DynamoService;
+import aws.idempotency.IdempotencyStore;
+import aws.local.InMemoryDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.lambda.runtime.events.DynamodbEvent;
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DynamoUtilTest {
+
+    private static final String DATE = "2019/05/01";
+    private static final String STATUS = "file_status";
+    private static final String UPLOADED = InvoiceStatus.UPLOADED.toString();
+    private static final String COPIED = InvoiceStatus.COPIED.toString();
+
+    @After
+    public void tearDown() {
+        AWSClientRegistry.shutdown();
+    }
+
+    private static DynamodbEvent.DynamodbStreamRecord record(String eventName, String fileName, String oldStatus, String newStatus) {
+        Map<String, AttributeValue> keys = new HashMap<>();
+        keys.put("fileName", new AttributeValue(fileName));
+        keys.put("date", new AttributeValue(DATE));
+
+        StreamRecord streamRecord = new StreamRecord().withKeys(keys).withSequenceNumber("seq-" + fileName);
+        if (newStatus != null) {
+            streamRecord.setNewImage(image(keys, newStatus));
+        }
+        if (oldStatus != null) {
+            streamRecord.setOldImage(image(keys, oldStatus));
+        }
+
+        DynamodbEvent.DynamodbStreamRecord record = new DynamodbEvent.DynamodbStreamRecord();
+        record.setEventID("event-" + fileName);
+        record.setEventName(eventName);
+        record.setDynamodb(streamRecord);
+        return record;
+    }
+
+    private static Map<String, AttributeValue> image(Map<String, AttributeValue> keys, String status) {
+        Map<String, AttributeValue> image = new HashMap<>(keys);
+        image.put(STATUS, new AttributeValue(status));
+        return image;
+    }
+
+    private static DynamodbEvent event(DynamodbEvent.DynamodbStreamRecord... records) {
+        DynamodbEvent event = new DynamodbEvent();
+        event.setRecords(Arrays.asList(records));
+        return event;
+    }
+
+    @Test
+    public void onlyModificationsToTheValueAreTransitions() throws Exception {
+        assertTrue(DynamoUtil.isTransitionTo(record("MODIFY", "a.xml", COPIED, UPLOADED), STATUS, UPLOADED));
+        assertTrue(DynamoUtil.isTransitionTo(record("MODIFY", "a.xml", null, UPLOADED), STATUS, UPLOADED));
+        assertFalse(DynamoUtil.isTransitionTo(record("MODIFY", "a.xml", UPLOADED, UPLOADED), STATUS, UPLOADED));
+        assertFalse(DynamoUtil.isTransitionTo(record("MODIFY", "a.xml", UPLOADED, COPIED), STATUS, UPLOADED));
+        assertFalse(DynamoUtil.isTransitionTo(record("INSERT", "a.xml", null, UPLOADED), STATUS, UPLOADED));
+    }
+
+    @Test
+    public void readyRecordsAreHandledAndOthersSkipped() {
+        List<String> handled = new ArrayList<>();
+        DynamodbEvent event = event(
+                record("MODIFY", "a.xml", COPIED, UPLOADED),
+                record("INSERT", "b.xml", null, COPIED),
+                record("MODIFY", "c.xml", COPIED, UPLOADED));
+
+        StreamBatchResult result = DynamoUtil.processFilesReadyToMove(event, STATUS, UPLOADED,
+                (key, newImage) -> handled.add(key.getFileName() + " " + newImage.get(STATUS).getS()));
+        assertEquals(Arrays.asList("a.xml UPLOADED", "c.xml UPLOADED"), handled);
+        assertEquals(Arrays.asList(new InvoiceKey("a.xml", DATE), new InvoiceKey("c.xml", DATE)), result.getProcessed());
+        assertEquals(1, result.getSkipped());
+        assertFalse(result.isFailed());
+        assertTrue(result.toBatchItemFailures().get("batchItemFailures").isEmpty());
+    }
+
+    @Test
+    public void failedRecordStopsTheBatch() {
+        List<String> handled = new ArrayList<>();
+        DynamodbEvent event = event(
+                record("MODIFY", "a.xml", COPIED, UPLOADED),
+                record("MODIFY", "b.xml", COPIED, UPLOADED),
+                record("MODIFY", "c.xml", COPIED, UPLOADED));
+
+        StreamBatchResult result = DynamoUtil.processFilesReadyToMove(event, STATUS, UPLOADED, (key, newImage) -> {
+            if (key.getFileName().equals("b.xml")) {
+                throw new IllegalStateException("injected failure");
+            }
+            handled.add(key.getFileName());
+        });
+        assertEquals(Collections.singletonList("a.xml"), handled);
+        assertTrue(result.isFailed());
+        assertEquals("seq-b.xml", result.getFailedSequenceNumber());
+        assertEquals(1, result.getUnprocessed());
+        assertEquals(Collections.singletonMap("itemIdentifier", "seq-b.xml"),
+                result.toBatchItemFailures().get("batchItemFailures").get(0));
+    }
+
+    @Test
+    public void recordWithoutNewImageFailsTheBatch() {
+        StreamBatchResult result = DynamoUtil.processFilesReadyToMove(event(record("MODIFY", "a.xml", COPIED, null)),
+                STATUS, UPLOADED, (key, newImage) -> { });
+        assertTrue(result.isFailed());
+        assertEquals("seq-a.xml", result.getFailedSequenceNumber());
+    }
+
+    @Test
+    public void redeliveredRecordIsSkipped() {
+        IdempotencyStore store = new IdempotencyStore(100, 3600);
+        List<String> handled = new ArrayList<>();
+        DynamodbEvent event = event(record("MODIFY", "a.xml", COPIED, UPLOADED));
+
+        DynamoUtil.processFilesReadyToMove(event, STATUS, UPLOADED, (key, newImage) -> handled.add(key.getFileName()), store);
+        StreamBatchResult result = DynamoUtil.processFilesReadyToMove(event, STATUS, UPLOADED,
+                (key, newImage) -> handled.add(key.getFileName()), store);
+        assertEquals(Collections.singletonList("a.xml"), handled);
+        assertEquals(1, result.getSkipped());
+        assertTrue(result.getProcessed().isEmpty());
+    }
+
+    @Test
+    public void readyFilesAreReadWithOneBatchLookup() throws Exception {
+        InMemoryDynamoDB dynamoDB = new InMemoryDynamoDB();
+        dynamoDB.createTable("invoices-stream", "fileName", "date");
+        AWSClientRegistry.setDynamoDbClient("local-stream", dynamoDB);
+        DynamoService service = new DynamoService("local-stream", "invoices-stream");
+        service.createInvoiceItem("a.xml", "invoices-bucket", DATE, LocalDateTime.now(), UPLOADED);
+        service.createInvoiceItem("b.xml", "invoices-bucket", DATE, LocalDateTime.now(), COPIED);
+
+        DynamodbEvent event = event(
+                record("MODIFY", "a.xml", COPIED, UPLOADED),
+                record("MODIFY", "b.xml", null, null),
+                record("INSERT", "c.xml", null, UPLOADED));
+        assertEquals(Collections.singletonList(new InvoiceKey("a.xml", DATE)),
+                DynamoUtil.getFilesReadyToMove(event, STATUS, UPLOADED));
+        assertNull(DynamoUtil.getInvoiceItems(event).get(new InvoiceKey("c.xml", DATE)));
+    }
+}
@@ -0,0 +1,135 @@
+package aws.idempotency;
+
+import aws.local.InMemoryDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class IdempotencyStoreTest {
+
+    private static final String TABLE = "invoice-events";
+
+    private InMemoryDynamoDB dynamoDB;
+    private IdempotencyStore store;
+    private IdempotencyStore otherInstance;
+
+    @Before
+    public void setUp() {
+        dynamoDB = new InMemoryDynamoDB();
+        dynamoDB.createTable(TABLE, IdempotencyStore.ID_ATTRIBUTE, null);
+        store = ledgerStore();
+        otherInstance = ledgerStore();
+    }
+
+    private IdempotencyStore ledgerStore() {
+        IdempotencyStore idempotencyStore = new IdempotencyStore(100, 3600);
+        idempotencyStore.enableLedger(dynamoDB, TABLE);
+        return idempotencyStore;
+    }
+
+    private Map<String, AttributeValue> ledgerItem(String id) {
+        return dynamoDB.getItem(new GetItemRequest(TABLE,
+                Collections.singletonMap(IdempotencyStore.ID_ATTRIBUTE, new AttributeValue().withS(id)))).getItem();
+    }
+
+    @Test
+    public void claimIsInProgressUntilCompleted() throws Exception {
+        assertEquals(IdempotencyStore.Claim.CLAIMED, store.claim("message-1"));
+        assertEquals(IdempotencyStore.Claim.IN_PROGRESS, store.claim("message-1"));
+        assertEquals(IdempotencyStore.Claim.IN_PROGRESS, otherInstance.claim("message-1"));
+        assertEquals("IN_PROGRESS", ledgerItem("message-1").get(IdempotencyStore.STATUS_ATTRIBUTE).getS());
+
+        store.complete("message-1");
+        assertEquals(IdempotencyStore.Claim.COMPLETED, store.claim("message-1"));
+        assertEquals(IdempotencyStore.Claim.COMPLETED, otherInstance.claim("message-1"));
+        assertEquals("COMPLETED", ledgerItem("message-1").get(IdempotencyStore.STATUS_ATTRIBUTE).getS());
+    }
+
+    @Test
+    public void releasedClaimCanBeTakenAgain() throws Exception {
+        assertEquals(IdempotencyStore.Claim.CLAIMED, store.claim("message-1"));
+        store.release("message-1");
+
+        assertNull(ledgerItem("message-1"));
+        assertEquals(IdempotencyStore.Claim.CLAIMED, otherInstance.claim("message-1"));
+    }
+
+    @Test
+    public void expiredLeaseOfCrashedInstanceIsTakenOver() throws Exception {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put(IdempotencyStore.ID_ATTRIBUTE, new AttributeValue().withS("message-1"));
+        item.put(IdempotencyStore.STATUS_ATTRIBUTE, new AttributeValue().withS("IN_PROGRESS"));
+        item.put(IdempotencyStore.EXPIRES_ATTRIBUTE, new AttributeValue().withN(String.valueOf(System.currentTimeMillis() / 1000 - 1)));
+        dynamoDB.putItem(new PutItemRequest(TABLE, item));
+
+        assertEquals(IdempotencyStore.Claim.CLAIMED, store.claim("message-1"));
+        assertEquals(IdempotencyStore.Claim.IN_PROGRESS, otherInstance.claim("message-1"));
+    }
+
+    @Test
+    public void expiredLocalLeaseIsTakenOverWithoutLedger() throws Exception {
+        IdempotencyStore local = new IdempotencyStore(100, 3600);
+        local.setLeaseSeconds(0);
+
+        assertEquals(IdempotencyStore.Claim.CLAIMED, local.claim("message-1"));
+        assertEquals(IdempotencyStore.Claim.CLAIMED, local.claim("message-1"));
+        local.complete("message-1");
+        assertEquals(IdempotencyStore.Claim.COMPLETED, local.claim("message-1"));
+    }
+
+    private void takeOver(String id) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put(IdempotencyStore.ID_ATTRIBUTE, new AttributeValue().withS(id));
+        item.put(IdempotencyStore.STATUS_ATTRIBUTE, new AttributeValue().withS("IN_PROGRESS"));
+        item.put(IdempotencyStore.EXPIRES_ATTRIBUTE, new AttributeValue().withN(String.valueOf(System.currentTimeMillis() / 1000 + 7200)));
+        dynamoDB.putItem(new PutItemRequest(TABLE, item));
+    }
+
+    @Test
+    public void staleInstanceDoesNotCompleteClaimTakenOver() throws Exception {
+        assertEquals(IdempotencyStore.Claim.CLAIMED, store.claim("message-1"));
+        takeOver("message-1");
+
+        store.complete("message-1");
+        assertEquals("IN_PROGRESS", ledgerItem("message-1").get(IdempotencyStore.STATUS_ATTRIBUTE).getS());
+        assertEquals(IdempotencyStore.Claim.IN_PROGRESS, otherInstance.claim("message-1"));
+    }
+
+    @Test
+    public void staleInstanceDoesNotReleaseClaimTakenOver() throws Exception {
+        assertEquals(IdempotencyStore.Claim.CLAIMED, store.claim("message-1"));
+        takeOver("message-1");
+
+        store.release("message-1");
+        assertEquals("IN_PROGRESS", ledgerItem("message-1").get(IdempotencyStore.STATUS_ATTRIBUTE).getS());
+        assertEquals(IdempotencyStore.Claim.IN_PROGRESS, otherInstance.claim("message-1"));
+    }
+
+    @Test
+    public void releaseWithoutClaimKeepsCompletedKey() throws Exception {
+        assertEquals(IdempotencyStore.Claim.CLAIMED, store.claim("message-1"));
+        store.complete("message-1");
+
+        store.release("message-1");
+        otherInstance.release("message-1");
+        assertEquals("COMPLETED", ledgerItem("message-1").get(IdempotencyStore.STATUS_ATTRIBUTE).getS());
+        assertEquals(IdempotencyStore.Claim.COMPLETED, store.claim("message-1"));
+    }
+
+    @Test
+    public void claimOutlivesTtlShorterThanLease() throws Exception {
+        IdempotencyStore local = new IdempotencyStore(100, 0);
+
+        assertEquals(IdempotencyStore.Claim.CLAIMED, local.claim("message-1"));
+        assertEquals(IdempotencyStore.Claim.IN_PROGRESS, local.claim("message-1"));
+    }
+}
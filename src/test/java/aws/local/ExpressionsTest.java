@@ -0,0 +1,102 @@
+package aws.local;
+
+import com.amazonaws.services.dynamodbv2.model.AmazonDynamoDBException;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExpressionsTest {
+
+    private static Map<String, AttributeValue> item() {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("fileName", new AttributeValue("invoice.xml"));
+        item.put("status", new AttributeValue("COPIED"));
+        item.put("size", new AttributeValue().withN("10"));
+        return item;
+    }
+
+    private static Map<String, AttributeValue> values(Object... pairs) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            Object value = pairs[i + 1];
+            values.put((String) pairs[i], value instanceof Number
+                    ? new AttributeValue().withN(value.toString()) : new AttributeValue(value.toString()));
+        }
+        return values;
+    }
+
+    @Test
+    public void emptyConditionMatches() {
+        assertTrue(Expressions.matches(null, null, null, item()));
+        assertTrue(Expressions.matches("  ", null, null, item()));
+    }
+
+    @Test
+    public void comparesStringsAndNumbers() {
+        Map<String, String> names = Collections.singletonMap("#s", "status");
+
+        assertTrue(Expressions.matches("#s = :s", names, values(":s", "COPIED"), item()));
+        assertFalse(Expressions.matches("#s <> :s", names, values(":s", "COPIED"), item()));
+        assertTrue(Expressions.matches("size > :n", null, values(":n", 9), item()));
+        assertTrue(Expressions.matches("size <= :n", null, values(":n", 10), item()));
+        assertFalse(Expressions.matches("size < :n", null, values(":n", 10), item()));
+        // numbers compare by value, not as strings
+        assertTrue(Expressions.matches("size < :n", null, values(":n", 100), item()));
+    }
+
+    @Test
+    public void evaluatesFunctionsAndBooleanOperators() {
+        assertTrue(Expressions.matches("attribute_exists(fileName)", null, null, item()));
+        assertTrue(Expressions.matches("attribute_not_exists(expires_at)", null, null, item()));
+        assertTrue(Expressions.matches("attribute_not_exists(id) or size > :n", null, values(":n", 20), item()));
+        assertFalse(Expressions.matches("attribute_exists(fileName) and size > :n", null, values(":n", 20), item()));
+        assertTrue(Expressions.matches("not (size > :n)", null, values(":n", 20), item()));
+        assertTrue(Expressions.matches("(size > :a or size < :b) and status = :s", null,
+                values(":a", 20, ":b", 11, ":s", "COPIED"), item()));
+    }
+
+    @Test
+    public void missingAttributeOnlyMatchesNotEqual() {
+        assertFalse(Expressions.matches("missing = :s", null, values(":s", "x"), item()));
+        assertTrue(Expressions.matches("missing <> :s", null, values(":s", "x"), item()));
+    }
+
+    @Test
+    public void appliesSetAndRemove() {
+        Map<String, AttributeValue> item = item();
+        Expressions.update("SET #s = :s, checked = :c REMOVE size", Collections.singletonMap("#s", "status"),
+                values(":s", "MOVED", ":c", "yes"), item);
+
+        assertEquals("MOVED", item.get("status").getS());
+        assertEquals("yes", item.get("checked").getS());
+        assertNull(item.get("size"));
+    }
+
+    @Test
+    public void rejectsInvalidExpressions() {
+        assertValidationError(() -> Expressions.matches("status = :missing", null, values(":s", "x"), item()));
+        assertValidationError(() -> Expressions.matches("#missing = :s", null, values(":s", "x"), item()));
+        assertValidationError(() -> Expressions.matches("status = :s extra", null, values(":s", "x"), item()));
+        assertValidationError(() -> Expressions.matches("status = :s $", null, values(":s", "x"), item()));
+        assertValidationError(() -> Expressions.update("ADD size :n", null, values(":n", 1), item()));
+    }
+
+    private static void assertValidationError(Runnable call) {
+        try {
+            call.run();
+            fail("Expected a ValidationException");
+        } catch (AmazonDynamoDBException e) {
+            assertEquals("ValidationException", e.getErrorCode());
+            assertEquals(400, e.getStatusCode());
+        }
+    }
+}
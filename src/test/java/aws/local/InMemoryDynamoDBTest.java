@@ -0,0 +1,198 @@
+package aws.local;
+
+import com.amazonaws.services.dynamodbv2.model.AmazonDynamoDBException;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InMemoryDynamoDBTest {
+
+    private static final String TABLE = "invoices";
+
+    private InMemoryDynamoDB dynamoDB;
+
+    @Before
+    public void setUp() {
+        dynamoDB = new InMemoryDynamoDB();
+        dynamoDB.createTable(TABLE, "fileName", "date");
+    }
+
+    private static Map<String, AttributeValue> item(String fileName, String date, String status) {
+        Map<String, AttributeValue> item = key(fileName, date);
+        item.put("status", new AttributeValue(status));
+        return item;
+    }
+
+    private static Map<String, AttributeValue> key(String fileName, String date) {
+        Map<String, AttributeValue> key = new HashMap<>();
+        key.put("fileName", new AttributeValue(fileName));
+        key.put("date", new AttributeValue(date));
+        return key;
+    }
+
+    @Test
+    public void putAndGetItem() {
+        dynamoDB.putItem(new PutItemRequest(TABLE, item("a.xml", "2019/05/01", "COPIED")));
+
+        Map<String, AttributeValue> item = dynamoDB.getItem(new GetItemRequest(TABLE, key("a.xml", "2019/05/01"))).getItem();
+        assertEquals("COPIED", item.get("status").getS());
+        assertNull(dynamoDB.getItem(new GetItemRequest(TABLE, key("a.xml", "2019/05/02"))).getItem());
+        assertEquals(1, dynamoDB.getItemCount(TABLE));
+    }
+
+    @Test
+    public void conditionalPutFailsWhenItemExists() {
+        PutItemRequest request = new PutItemRequest(TABLE, item("a.xml", "2019/05/01", "COPIED"))
+                .withConditionExpression("attribute_not_exists(fileName)");
+        dynamoDB.putItem(request);
+        try {
+            dynamoDB.putItem(request);
+            fail("Expected ConditionalCheckFailedException");
+        } catch (ConditionalCheckFailedException e) {
+            assertEquals(1, dynamoDB.getItemCount(TABLE));
+        }
+    }
+
+    @Test
+    public void conditionalUpdateChecksCurrentStatus() {
+        dynamoDB.putItem(new PutItemRequest(TABLE, item("a.xml", "2019/05/01", "COPIED")));
+        UpdateItemRequest request = new UpdateItemRequest()
+                .withTableName(TABLE)
+                .withKey(key("a.xml", "2019/05/01"))
+                .withUpdateExpression("set #s = :to")
+                .withConditionExpression("#s = :from")
+                .withExpressionAttributeNames(Collections.singletonMap("#s", "status"));
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":from", new AttributeValue("COPIED"));
+        values.put(":to", new AttributeValue("MOVED"));
+        request.setExpressionAttributeValues(values);
+
+        dynamoDB.updateItem(request);
+        assertEquals("MOVED", dynamoDB.getItem(new GetItemRequest(TABLE, key("a.xml", "2019/05/01"))).getItem().get("status").getS());
+        try {
+            dynamoDB.updateItem(request);
+            fail("Expected ConditionalCheckFailedException");
+        } catch (ConditionalCheckFailedException e) {
+            // status is no longer COPIED
+        }
+    }
+
+    @Test
+    public void scanPagesThroughAllItems() {
+        for (int i = 0; i < 25; i++) {
+            dynamoDB.putItem(new PutItemRequest(TABLE, item("f" + i, "2019/05/01", i % 2 == 0 ? "COPIED" : "MOVED")));
+        }
+
+        Set<String> seen = new HashSet<>();
+        Map<String, AttributeValue> startKey = null;
+        int pages = 0;
+        do {
+            ScanResult page = dynamoDB.scan(new ScanRequest(TABLE).withLimit(10).withExclusiveStartKey(startKey));
+            for (Map<String, AttributeValue> item : page.getItems()) {
+                assertTrue(seen.add(item.get("fileName").getS()));
+            }
+            startKey = page.getLastEvaluatedKey();
+            pages++;
+        } while (startKey != null);
+
+        assertEquals(25, seen.size());
+        assertEquals(3, pages);
+    }
+
+    @Test
+    public void scanSegmentsAreDisjoint() {
+        for (int i = 0; i < 40; i++) {
+            dynamoDB.putItem(new PutItemRequest(TABLE, item("f" + i, "2019/05/01", "COPIED")));
+        }
+
+        Set<String> seen = new HashSet<>();
+        for (int segment = 0; segment < 4; segment++) {
+            ScanResult page = dynamoDB.scan(new ScanRequest(TABLE).withSegment(segment).withTotalSegments(4));
+            for (Map<String, AttributeValue> item : page.getItems()) {
+                assertTrue(seen.add(item.get("fileName").getS()));
+            }
+        }
+        assertEquals(40, seen.size());
+    }
+
+    @Test
+    public void queryUsesIndexAndOrdersByRangeKey() {
+        dynamoDB.createIndex(TABLE, "status-date-index", "status", "date");
+        dynamoDB.putItem(new PutItemRequest(TABLE, item("a.xml", "2019/05/02", "COPIED")));
+        dynamoDB.putItem(new PutItemRequest(TABLE, item("b.xml", "2019/05/01", "COPIED")));
+        dynamoDB.putItem(new PutItemRequest(TABLE, item("c.xml", "2019/05/03", "MOVED")));
+
+        QueryResult result = dynamoDB.query(new QueryRequest(TABLE)
+                .withIndexName("status-date-index")
+                .withKeyConditionExpression("#s = :s")
+                .withExpressionAttributeNames(Collections.singletonMap("#s", "status"))
+                .withExpressionAttributeValues(Collections.singletonMap(":s", new AttributeValue("COPIED"))));
+
+        assertEquals(2, result.getItems().size());
+        assertEquals("b.xml", result.getItems().get(0).get("fileName").getS());
+        assertEquals("a.xml", result.getItems().get(1).get("fileName").getS());
+    }
+
+    @Test
+    public void queryOnMissingIndexIsValidationError() {
+        try {
+            dynamoDB.query(new QueryRequest(TABLE).withIndexName("missing-index")
+                    .withKeyConditionExpression("fileName = :f")
+                    .withExpressionAttributeValues(Collections.singletonMap(":f", new AttributeValue("a.xml"))));
+            fail("Expected a ValidationException");
+        } catch (AmazonDynamoDBException e) {
+            assertEquals("ValidationException", e.getErrorCode());
+            assertTrue(e.getErrorMessage().contains("does not have the specified index"));
+        }
+    }
+
+    @Test(expected = ResourceNotFoundException.class)
+    public void unknownTableIsNotFound() {
+        dynamoDB.getItem(new GetItemRequest("missing", key("a.xml", "2019/05/01")));
+    }
+
+    @Test
+    public void throttledCallsFailOrReturnUnprocessedKeys() {
+        dynamoDB.putItem(new PutItemRequest(TABLE, item("a.xml", "2019/05/01", "COPIED")));
+        dynamoDB.getFaults().setThrottleProbability(1);
+
+        try {
+            dynamoDB.getItem(new GetItemRequest(TABLE, key("a.xml", "2019/05/01")));
+            fail("Expected ProvisionedThroughputExceededException");
+        } catch (ProvisionedThroughputExceededException e) {
+            assertEquals("ProvisionedThroughputExceededException", e.getErrorCode());
+        }
+
+        List<Map<String, AttributeValue>> keys = new ArrayList<>();
+        keys.add(key("a.xml", "2019/05/01"));
+        BatchGetItemResult result = dynamoDB.batchGetItem(new BatchGetItemRequest(
+                Collections.singletonMap(TABLE, new KeysAndAttributes().withKeys(keys))));
+        assertEquals(1, result.getUnprocessedKeys().get(TABLE).getKeys().size());
+    }
+}
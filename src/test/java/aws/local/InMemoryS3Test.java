@@ -0,0 +1,128 @@
+package aws.local;
+
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.GetObjectTaggingRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.ObjectTagging;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.Tag;
+import com.amazonaws.util.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InMemoryS3Test {
+
+    private static final String BUCKET = "invoices-bucket";
+
+    private final InMemoryS3 s3 = new InMemoryS3();
+
+    private static String read(S3Object object) throws Exception {
+        try (S3Object closing = object) {
+            return new String(IOUtils.toByteArray(closing.getObjectContent()), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void putGetAndDelete() throws Exception {
+        s3.putObject(BUCKET, "uploaded/a.xml", "<invoice/>");
+
+        assertTrue(s3.doesObjectExist(BUCKET, "uploaded/a.xml"));
+        assertEquals("<invoice/>", read(s3.getObject(BUCKET, "uploaded/a.xml")));
+        assertEquals(10, s3.getObjectMetadata(BUCKET, "uploaded/a.xml").getContentLength());
+
+        s3.deleteObject(BUCKET, "uploaded/a.xml");
+        assertFalse(s3.doesObjectExist(BUCKET, "uploaded/a.xml"));
+        assertEquals(0, s3.getObjectCount());
+    }
+
+    @Test
+    public void rangedGetReturnsInclusiveRange() throws Exception {
+        s3.putObject(BUCKET, "a.txt", "0123456789");
+
+        assertEquals("234", read(s3.getObject(new GetObjectRequest(BUCKET, "a.txt").withRange(2, 4))));
+        assertEquals("89", read(s3.getObject(new GetObjectRequest(BUCKET, "a.txt").withRange(8, 100))));
+    }
+
+    @Test
+    public void missingKeyIsNotFound() {
+        try {
+            s3.getObject(BUCKET, "missing.xml");
+            fail("Expected AmazonS3Exception");
+        } catch (AmazonS3Exception e) {
+            assertEquals(404, e.getStatusCode());
+            assertEquals("NoSuchKey", e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void copyKeepsMetadataAndTags() throws Exception {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType("application/xml");
+        metadata.setCacheControl("no-cache");
+        byte[] content = "<invoice/>".getBytes(StandardCharsets.UTF_8);
+        s3.putObject(new PutObjectRequest(BUCKET, "uploaded/a.xml", new ByteArrayInputStream(content), metadata)
+                .withTagging(new ObjectTagging(Collections.singletonList(new Tag("owner", "billing")))));
+
+        s3.copyObject(new CopyObjectRequest(BUCKET, "uploaded/a.xml", BUCKET, "moved/a.xml"));
+
+        ObjectMetadata copied = s3.getObjectMetadata(BUCKET, "moved/a.xml");
+        assertEquals("application/xml", copied.getContentType());
+        assertEquals("no-cache", copied.getCacheControl());
+        List<Tag> tags = s3.getObjectTagging(new GetObjectTaggingRequest(BUCKET, "moved/a.xml")).getTagSet();
+        assertEquals(1, tags.size());
+        assertEquals("billing", tags.get(0).getValue());
+        assertEquals("<invoice/>", read(s3.getObject(BUCKET, "moved/a.xml")));
+    }
+
+    @Test
+    public void multipartCopyAssemblesPartsInOrder() throws Exception {
+        s3.putObject(BUCKET, "big.txt", "abcdefghij");
+
+        String uploadId = s3.initiateMultipartUpload(new InitiateMultipartUploadRequest(BUCKET, "copy.txt")).getUploadId();
+        List<PartETag> parts = new ArrayList<>();
+        for (int part = 1; part <= 3; part++) {
+            long first = (part - 1) * 4L;
+            long last = Math.min(first + 3, 9);
+            parts.add(s3.copyPart(new CopyPartRequest()
+                    .withUploadId(uploadId)
+                    .withSourceBucketName(BUCKET).withSourceKey("big.txt")
+                    .withDestinationBucketName(BUCKET).withDestinationKey("copy.txt")
+                    .withFirstByte(first).withLastByte(last)
+                    .withPartNumber(part)).getPartETag());
+        }
+        s3.completeMultipartUpload(new CompleteMultipartUploadRequest(BUCKET, "copy.txt", uploadId, parts));
+
+        assertEquals("abcdefghij", read(s3.getObject(BUCKET, "copy.txt")));
+        assertEquals(10, s3.getObjectMetadata(BUCKET, "copy.txt").getContentLength());
+    }
+
+    @Test
+    public void throttledCallsFailWithSlowDown() {
+        s3.putObject(BUCKET, "a.txt", "content");
+        s3.getFaults().setThrottleProbability(1);
+        try {
+            s3.getObjectMetadata(BUCKET, "a.txt");
+            fail("Expected AmazonS3Exception");
+        } catch (AmazonS3Exception e) {
+            assertEquals(503, e.getStatusCode());
+            assertEquals("SlowDown", e.getErrorCode());
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package aws.local;
+
+import com.amazonaws.services.sqs.model.AmazonSQSException;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.QueueAttributeName;
+import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
+import com.amazonaws.services.sqs.model.ReceiptHandleIsInvalidException;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InMemorySQSTest {
+
+    private InMemorySQS sqs;
+    private String queueUrl;
+
+    @Before
+    public void setUp() {
+        sqs = new InMemorySQS();
+        queueUrl = sqs.createQueue("invoices").getQueueUrl();
+    }
+
+    private List<Message> receive(int max, int visibilityTimeoutSeconds) {
+        return sqs.receiveMessage(new ReceiveMessageRequest(queueUrl)
+                .withMaxNumberOfMessages(max)
+                .withVisibilityTimeout(visibilityTimeoutSeconds)).getMessages();
+    }
+
+    @Test
+    public void receivedMessageIsInvisibleUntilDeleted() {
+        sqs.sendMessage(new SendMessageRequest(queueUrl, "body"));
+
+        List<Message> messages = receive(10, 30);
+        assertEquals(1, messages.size());
+        assertEquals("body", messages.get(0).getBody());
+        assertTrue(receive(10, 30).isEmpty());
+        assertEquals(1, sqs.getMessageCount(queueUrl));
+
+        sqs.deleteMessage(queueUrl, messages.get(0).getReceiptHandle());
+        assertEquals(0, sqs.getMessageCount(queueUrl));
+    }
+
+    @Test
+    public void zeroVisibilityReturnsMessageToQueue() {
+        sqs.sendMessage(new SendMessageRequest(queueUrl, "body"));
+        Message message = receive(1, 30).get(0);
+
+        sqs.changeMessageVisibility(new ChangeMessageVisibilityRequest(queueUrl, message.getReceiptHandle(), 0));
+
+        List<Message> again = receive(1, 30);
+        assertEquals(1, again.size());
+        assertEquals(message.getMessageId(), again.get(0).getMessageId());
+    }
+
+    @Test
+    public void staleReceiptHandleIsRejected() {
+        sqs.sendMessage(new SendMessageRequest(queueUrl, "body"));
+        Message first = receive(1, 0).get(0);
+        Message second = receive(1, 30).get(0);
+
+        try {
+            sqs.deleteMessage(queueUrl, first.getReceiptHandle());
+            fail("Expected ReceiptHandleIsInvalidException");
+        } catch (ReceiptHandleIsInvalidException e) {
+            // the message was received again with a new handle
+        }
+        sqs.deleteMessage(queueUrl, second.getReceiptHandle());
+        assertEquals(0, sqs.getMessageCount(queueUrl));
+    }
+
+    @Test
+    public void batchSendAndDeleteReportPerEntry() {
+        List<SendMessageBatchRequestEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            entries.add(new SendMessageBatchRequestEntry(String.valueOf(i), "body-" + i));
+        }
+        assertEquals(3, sqs.sendMessageBatch(new SendMessageBatchRequest(queueUrl, entries)).getSuccessful().size());
+
+        List<Message> messages = receive(10, 30);
+        assertEquals(3, messages.size());
+        DeleteMessageBatchResult result = sqs.deleteMessageBatch(new DeleteMessageBatchRequest(queueUrl, Arrays.asList(
+                new DeleteMessageBatchRequestEntry("0", messages.get(0).getReceiptHandle()),
+                new DeleteMessageBatchRequestEntry("1", "invalid-handle"))));
+
+        assertEquals(1, result.getSuccessful().size());
+        assertEquals(1, result.getFailed().size());
+        assertEquals("1", result.getFailed().get(0).getId());
+        assertEquals(2, sqs.getMessageCount(queueUrl));
+    }
+
+    @Test
+    public void batchLargerThanTenEntriesIsRejected() {
+        List<SendMessageBatchRequestEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            entries.add(new SendMessageBatchRequestEntry(String.valueOf(i), "body"));
+        }
+        try {
+            sqs.sendMessageBatch(new SendMessageBatchRequest(queueUrl, entries));
+            fail("Expected AmazonSQSException");
+        } catch (AmazonSQSException e) {
+            assertEquals("AWS.SimpleQueueService.TooManyEntriesInBatchRequest", e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void attributesCountVisibleAndInFlightMessages() {
+        sqs.sendMessage(new SendMessageRequest(queueUrl, "a"));
+        sqs.sendMessage(new SendMessageRequest(queueUrl, "b"));
+        receive(1, 30);
+
+        Map<String, String> attributes = sqs.getQueueAttributes(new GetQueueAttributesRequest(queueUrl)
+                .withAttributeNames(QueueAttributeName.All)).getAttributes();
+        assertEquals("1", attributes.get(QueueAttributeName.ApproximateNumberOfMessages.toString()));
+        assertEquals("1", attributes.get(QueueAttributeName.ApproximateNumberOfMessagesNotVisible.toString()));
+    }
+
+    @Test
+    public void longPollWaitsForMessage() throws Exception {
+        Thread sender = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                return;
+            }
+            sqs.sendMessage(new SendMessageRequest(queueUrl, "late"));
+        });
+        sender.start();
+
+        List<Message> messages = sqs.receiveMessage(new ReceiveMessageRequest(queueUrl).withWaitTimeSeconds(5)).getMessages();
+        sender.join();
+        assertEquals(1, messages.size());
+        assertEquals("late", messages.get(0).getBody());
+    }
+
+    @Test(expected = QueueDoesNotExistException.class)
+    public void unknownQueueDoesNotExist() {
+        sqs.getQueueUrl("missing");
+    }
+}
@@ -0,0 +1,177 @@
+package aws.pipeline;
+
+import aws.dynamoDB.service.DynamoService;
+import aws.idempotency.IdempotencyStore;
+import aws.local.InMemoryDynamoDB;
+import aws.local.InMemoryS3;
+import aws.local.InMemorySQS;
+import aws.s3.service.S3Service;
+import aws.sqs.service.SQSService;
+import aws.sqs.util.SQSMessage;
+import aws.sqs.util.SQSUtil;
+import com.amazonaws.services.lambda.runtime.events.S3Event;
+import com.amazonaws.services.s3.event.S3EventNotification;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import exception.AWSException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UploadPipelineTest {
+
+    private static final String BUCKET = "invoices-bucket";
+    private static final String TABLE = "invoices";
+    private static final String INVOICE = "<invoice><date>2019/05/01</date><time>2019/05/01 10:15:30</time></invoice>";
+
+    private InMemoryS3 s3;
+    private InMemoryDynamoDB dynamoDB;
+    private InMemorySQS sqs;
+    private String queueUrl;
+    private DynamoService dynamoService;
+    private UploadPipeline pipeline;
+
+    @Before
+    public void setUp() {
+        s3 = new InMemoryS3();
+        dynamoDB = new InMemoryDynamoDB();
+        dynamoDB.createTable(TABLE, "fileName", "date");
+        sqs = new InMemorySQS();
+        sqs.createQueue("invoices-dlq");
+        queueUrl = sqs.createQueue("invoices").getQueueUrl();
+
+        dynamoService = new DynamoService("local", TABLE, dynamoDB);
+        pipeline = new UploadPipeline(new S3Service("local", s3),
+                new SQSService("local", queueUrl, "invoices-dlq", sqs), dynamoService);
+        pipeline.setConcurrency(2);
+    }
+
+    @After
+    public void tearDown() {
+        pipeline.close();
+    }
+
+    private static S3Event event(String... keys) {
+        return event(Arrays.asList(keys), Collections.nCopies(keys.length, "etag"));
+    }
+
+    private static S3Event event(List<String> keys, List<String> eTags) {
+        StringBuilder json = new StringBuilder("{\"Records\":[");
+        for (int i = 0; i < keys.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"eventVersion\":\"2.0\",\"eventSource\":\"aws:s3\",\"awsRegion\":\"eu-west-1\",")
+                    .append("\"eventTime\":\"2019-05-01T10:15:30.000Z\",\"eventName\":\"ObjectCreated:Put\",")
+                    .append("\"s3\":{\"s3SchemaVersion\":\"1.0\",\"configurationId\":\"config\",")
+                    .append("\"bucket\":{\"name\":\"").append(BUCKET).append("\",\"arn\":\"arn:aws:s3:::").append(BUCKET).append("\"},")
+                    .append("\"object\":{\"key\":\"").append(keys.get(i)).append("\",\"size\":128,")
+                    .append("\"eTag\":\"").append(eTags.get(i)).append("\",\"sequencer\":\"0055AED6DCD9028").append(i).append("\"}}}");
+        }
+        json.append("]}");
+        return new S3Event(S3EventNotification.parseJson(json.toString()).getRecords());
+    }
+
+    private List<SQSMessage> receivedMessages() throws Exception {
+        List<SQSMessage> messages = new ArrayList<>();
+        for (Message message : sqs.receiveMessage(new ReceiveMessageRequest(queueUrl).withMaxNumberOfMessages(10)).getMessages()) {
+            messages.add(SQSUtil.parseMessage(message.getBody(), Collections.emptyMap()));
+        }
+        return messages;
+    }
+
+    @Test
+    public void xmlFilesAreRecordedAndQueued() throws Exception {
+        s3.putObject(BUCKET, "uploaded/a.xml", INVOICE);
+        s3.putObject(BUCKET, "uploaded/b.xml", INVOICE);
+
+        UploadReport report = pipeline.process(event("uploaded/a.xml", "uploaded/b.xml"));
+        assertTrue(report.isSuccessful());
+        assertEquals(2, report.getProcessed().size());
+        assertEquals("COPIED", dynamoService.getItem("a.xml", "2019/05/01").getString("file_status"));
+        assertEquals("COPIED", dynamoService.getItem("b.xml", "2019/05/01").getString("file_status"));
+
+        TreeSet<String> fileNames = new TreeSet<>();
+        for (SQSMessage message : receivedMessages()) {
+            assertEquals(BUCKET, message.getBucketName());
+            assertEquals("2019/05/01", message.getDate());
+            fileNames.add(message.getFileName());
+        }
+        assertEquals(new TreeSet<>(Arrays.asList("a.xml", "b.xml")), fileNames);
+    }
+
+    @Test
+    public void otherFilesAndRepeatedRecordsAreSkipped() throws Exception {
+        s3.putObject(BUCKET, "uploaded/a.xml", INVOICE);
+        s3.putObject(BUCKET, "uploaded/a.pdf", "%PDF");
+
+        UploadReport report = pipeline.process(event("uploaded/a.xml", "uploaded/a.pdf", "uploaded/a.xml"));
+        assertEquals(1, report.getProcessed().size());
+        assertEquals(2, report.getSkipped().size());
+        assertTrue(report.isSuccessful());
+        assertEquals(1, receivedMessages().size());
+    }
+
+    @Test
+    public void newVersionOfTheSameKeyIsNotARepeatedRecord() throws Exception {
+        s3.putObject(BUCKET, "uploaded/a.xml", INVOICE);
+
+        UploadReport report = pipeline.process(event(Arrays.asList("uploaded/a.xml", "uploaded/a.xml", "uploaded/a.xml"),
+                Arrays.asList("etag-1", "etag-2", "etag-1")));
+        assertEquals(2, report.getProcessed().size());
+        assertEquals(1, report.getSkipped().size());
+        assertEquals("Repeated record of the same object", report.getSkipped().get(0).getError());
+        assertEquals(2, receivedMessages().size());
+    }
+
+    @Test
+    public void failureIsReportedPerRecord() throws Exception {
+        s3.putObject(BUCKET, "uploaded/a.xml", INVOICE);
+        s3.putObject(BUCKET, "uploaded/b.xml", "<invoice><time>2019/05/01 10:15:30</time></invoice>");
+
+        UploadReport report = pipeline.process(event("uploaded/a.xml", "uploaded/b.xml", "uploaded/missing.xml"));
+        assertFalse(report.isSuccessful());
+        assertEquals(1, report.getProcessed().size());
+        assertEquals(2, report.getFailed().size());
+        assertEquals("b.xml", report.getFailed().get(0).getFileName());
+        assertTrue(report.getFailed().get(0).getError().contains("There is no date tag"));
+        assertEquals(1, dynamoDB.getItemCount(TABLE));
+        assertEquals(1, receivedMessages().size());
+    }
+
+    @Test
+    public void redeliveredEventIsNotProcessedTwice() throws Exception {
+        pipeline.setIdempotencyStore(new IdempotencyStore(100, 3600));
+        s3.putObject(BUCKET, "uploaded/a.xml", INVOICE);
+        s3.putObject(BUCKET, "uploaded/b.xml", "<invoice/>");
+
+        pipeline.process(event("uploaded/a.xml", "uploaded/b.xml"));
+        s3.putObject(BUCKET, "uploaded/b.xml", INVOICE);
+        UploadReport report = pipeline.process(event("uploaded/a.xml", "uploaded/b.xml"));
+        assertEquals("Already processed", report.getSkipped().get(0).getError());
+        assertEquals("b.xml", report.getProcessed().get(0).getFileName());
+        assertEquals(2, receivedMessages().size());
+    }
+
+    @Test
+    public void closedPipelineRejectsEvents() throws Exception {
+        pipeline.close();
+        try {
+            pipeline.process(event("uploaded/a.xml"));
+            fail("Expected AWSException");
+        } catch (AWSException e) {
+            assertTrue(e.getMessage().contains("closed"));
+        }
+    }
+}
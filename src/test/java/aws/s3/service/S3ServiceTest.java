@@ -0,0 +1,289 @@
+package aws.s3.service;
+
+import aws.local.InMemoryS3;
+import aws.s3.util.KeyPair;
+import aws.s3.util.MoveReport;
+import aws.s3.util.XmlFields;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyObjectResult;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.CopyPartResult;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.GetObjectTaggingRequest;
+import com.amazonaws.services.s3.model.GetObjectTaggingResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.ObjectTagging;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.Tag;
+import com.amazonaws.util.IOUtils;
+import exception.AWSException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class S3ServiceTest {
+
+    private static final String BUCKET = "invoices-bucket";
+
+    private RecordingS3 s3;
+    private S3Service s3Service;
+
+    /**
+     * Records the copy-related calls and can deny tag reads or fail a part copy.
+     */
+    private static class RecordingS3 extends InMemoryS3 {
+        final List<String> calls = new CopyOnWriteArrayList<>();
+        volatile boolean denyTagging;
+        volatile boolean failPartCopy;
+
+        @Override
+        public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+            calls.add("head");
+            return super.getObjectMetadata(request);
+        }
+
+        @Override
+        public CopyObjectResult copyObject(CopyObjectRequest request) {
+            calls.add("copy");
+            return super.copyObject(request);
+        }
+
+        @Override
+        public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+            calls.add("multipart");
+            return super.initiateMultipartUpload(request);
+        }
+
+        @Override
+        public CopyPartResult copyPart(CopyPartRequest request) {
+            if (failPartCopy) {
+                AmazonS3Exception e = new AmazonS3Exception("injected failure");
+                e.setStatusCode(500);
+                throw e;
+            }
+            return super.copyPart(request);
+        }
+
+        @Override
+        public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+            calls.add("abort");
+            super.abortMultipartUpload(request);
+        }
+
+        @Override
+        public GetObjectTaggingResult getObjectTagging(GetObjectTaggingRequest request) {
+            if (denyTagging) {
+                AmazonS3Exception e = new AmazonS3Exception("Access Denied");
+                e.setStatusCode(403);
+                e.setErrorCode("AccessDenied");
+                throw e;
+            }
+            return super.getObjectTagging(request);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        s3 = new RecordingS3();
+        s3Service = new S3Service("local", s3);
+        s3Service.setMultipartCopyThreshold(16);
+    }
+
+    private void putTagged(String key, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(bytes.length);
+        metadata.setContentType("application/xml");
+        s3.putObject(new PutObjectRequest(BUCKET, key, new ByteArrayInputStream(bytes), metadata)
+                .withTagging(new ObjectTagging(Collections.singletonList(new Tag("source", "upload")))));
+    }
+
+    private String read(String key) throws Exception {
+        return content(s3Service.readObject(BUCKET, key, null));
+    }
+
+    private static String content(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int spilledFiles() {
+        File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles((dir, name) -> name.startsWith("s3-object-"));
+        return files == null ? 0 : files.length;
+    }
+
+    @Test
+    public void moveOfUnknownSizeReadsSizeAndCopiesSmallObjectAtOnce() throws Exception {
+        s3.putObject(BUCKET, "uploaded/a.xml", "<invoice/>");
+
+        s3Service.moveFile(BUCKET, "uploaded/a.xml", "moved/a.xml");
+        assertEquals(Arrays.asList("head", "copy"), s3.calls);
+        assertEquals("<invoice/>", read("moved/a.xml"));
+        assertFalse(s3.doesObjectExist(BUCKET, "uploaded/a.xml"));
+    }
+
+    @Test
+    public void moveOfUnknownSizeUsesMultipartCopyAboveThreshold() throws Exception {
+        putTagged("uploaded/large.xml", "<invoice><date>2019/05/01</date></invoice>");
+
+        s3Service.moveFile(BUCKET, "uploaded/large.xml", "moved/large.xml");
+        assertEquals(Arrays.asList("head", "multipart"), s3.calls);
+        assertEquals("<invoice><date>2019/05/01</date></invoice>", read("moved/large.xml"));
+        assertEquals("application/xml", s3.getObjectMetadata(BUCKET, "moved/large.xml").getContentType());
+        assertEquals("upload", s3.getObjectTagging(new GetObjectTaggingRequest(BUCKET, "moved/large.xml"))
+                .getTagSet().get(0).getValue());
+        assertFalse(s3.doesObjectExist(BUCKET, "uploaded/large.xml"));
+    }
+
+    @Test
+    public void knownSmallSizeSkipsHeadRequest() throws Exception {
+        s3.putObject(BUCKET, "uploaded/a.xml", "<invoice/>");
+        s3.putObject(BUCKET, "uploaded/b.xml", "<invoice/>");
+
+        s3Service.moveFile(BUCKET, "uploaded/a.xml", "moved/a.xml", 10);
+        MoveReport report = s3Service.moveFiles(BUCKET, Collections.singletonList(new KeyPair("uploaded/b.xml", "moved/b.xml", 10)));
+        assertEquals(Arrays.asList("copy", "copy"), s3.calls);
+        assertTrue(report.isSuccessful());
+    }
+
+    @Test
+    public void multipartCopyWithoutTaggingPermissionCopiesWithoutTags() throws Exception {
+        putTagged("uploaded/large.xml", "<invoice><date>2019/05/01</date></invoice>");
+        s3.denyTagging = true;
+
+        s3Service.moveFile(BUCKET, "uploaded/large.xml", "moved/large.xml");
+        s3.denyTagging = false;
+        assertEquals("<invoice><date>2019/05/01</date></invoice>", read("moved/large.xml"));
+        assertTrue(s3.getObjectTagging(new GetObjectTaggingRequest(BUCKET, "moved/large.xml")).getTagSet().isEmpty());
+    }
+
+    @Test
+    public void failedPartCopyAbortsUploadAndKeepsSource() throws Exception {
+        putTagged("uploaded/large.xml", "<invoice><date>2019/05/01</date></invoice>");
+        s3.failPartCopy = true;
+
+        try {
+            s3Service.moveFile(BUCKET, "uploaded/large.xml", "moved/large.xml");
+            fail("Expected AWSException");
+        } catch (AWSException e) {
+            assertTrue(e.getMessage().contains("injected failure"));
+        }
+        assertEquals(Arrays.asList("head", "multipart", "abort"), s3.calls);
+        assertFalse(s3.doesObjectExist(BUCKET, "moved/large.xml"));
+        assertTrue(s3.doesObjectExist(BUCKET, "uploaded/large.xml"));
+    }
+
+    @Test
+    public void smallObjectIsReadIntoReusableBuffer() throws Exception {
+        s3.putObject(BUCKET, "a.xml", "<invoice/>");
+        ByteBuffer reusable = ByteBuffer.allocate(64);
+
+        ByteBuffer content = s3Service.readObject(BUCKET, "a.xml", reusable);
+        assertSame(reusable, content);
+        assertEquals("<invoice/>", content(content));
+    }
+
+    @Test
+    public void objectOverMemoryThresholdIsSpilledAndMapped() throws Exception {
+        s3.putObject(BUCKET, "large.xml", "<invoice><date>2019/05/01</date></invoice>");
+        s3Service.setMemoryThreshold(16);
+        int filesBefore = spilledFiles();
+
+        ByteBuffer content = s3Service.readObject(BUCKET, "large.xml", ByteBuffer.allocate(1024));
+        assertTrue(content instanceof MappedByteBuffer);
+        assertEquals("<invoice><date>2019/05/01</date></invoice>", content(content));
+        assertEquals(filesBefore, spilledFiles());
+    }
+
+    @Test
+    public void objectOverTwoGigabytesIsRejectedBeforeDownload() throws Exception {
+        InMemoryS3 hugeObjects = new InMemoryS3() {
+            @Override
+            public S3Object getObject(GetObjectRequest request) {
+                S3Object object = super.getObject(request);
+                object.getObjectMetadata().setContentLength(3L * 1024 * 1024 * 1024);
+                return object;
+            }
+        };
+        hugeObjects.putObject(BUCKET, "huge.xml", "<invoice/>");
+        S3Service service = new S3Service("local", hugeObjects);
+        service.setMemoryThreshold(16);
+        int filesBefore = spilledFiles();
+
+        try {
+            service.readObject(BUCKET, "huge.xml", null);
+            fail("Expected AWSException");
+        } catch (AWSException e) {
+            assertTrue(e.getMessage().contains("too large"));
+        }
+        assertEquals(filesBefore, spilledFiles());
+    }
+
+    @Test
+    public void objectHeadIsReadWithRangedGet() throws Exception {
+        s3.putObject(BUCKET, "a.xml", "<invoice><date>2019/05/01</date></invoice>");
+
+        assertEquals("<invoice>", content(s3Service.readObjectHead(BUCKET, "a.xml", 9)));
+        assertEquals("<invoice><date>2019/05/01</date></invoice>", content(s3Service.readObjectHead(BUCKET, "a.xml", 1024)));
+    }
+
+    @Test
+    public void rangedStreamReadsInclusiveRange() throws Exception {
+        s3.putObject(BUCKET, "a.xml", "<invoice><date>2019/05/01</date></invoice>");
+
+        try (InputStream input = s3Service.openObjectStream(BUCKET, "a.xml", 15, 24)) {
+            assertEquals("2019/05/01", new String(IOUtils.toByteArray(input), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void xmlFieldsAreStreamedUntilAllTagsAreFound() throws Exception {
+        s3.putObject(BUCKET, "a.xml", "<invoice><date>2019/05/01</date><time>2019/05/01 10:15:30</time><lines><broken</invoice>");
+
+        XmlFields fields = s3Service.extractXmlFields(BUCKET, "a.xml", Arrays.asList(XmlFields.DATE_TAG, XmlFields.TIME_TAG));
+        assertEquals("2019/05/01", fields.getDate());
+        assertEquals(LocalDateTime.of(2019, 5, 1, 10, 15, 30), fields.getTime());
+    }
+
+    @Test
+    public void objectContentIsDecodedAsUtf8() throws Exception {
+        s3Service.putObjectContent(BUCKET, "a.xml", "<invoice>\u0141\u00f3d\u017a</invoice>", "application/xml");
+
+        assertEquals("<invoice>\u0141\u00f3d\u017a</invoice>", s3Service.getObjectContent(BUCKET, "a.xml"));
+        assertEquals("application/xml", s3.getObjectMetadata(BUCKET, "a.xml").getContentType());
+    }
+
+    @Test
+    public void missingObjectFailsWithAWSException() {
+        try {
+            s3Service.getObjectContent(BUCKET, "missing.xml");
+            fail("Expected AWSException");
+        } catch (AWSException e) {
+            assertTrue(e.getMessage().contains("missing.xml"));
+        }
+    }
+}
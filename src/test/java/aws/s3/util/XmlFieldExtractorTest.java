@@ -0,0 +1,71 @@
+package aws.s3.util;
+
+import exception.AWSException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class XmlFieldExtractorTest {
+
+    private static XmlFields extract(String xml, String... tagNames) throws AWSException {
+        InputStream input = new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+        return XmlFieldExtractor.extract(input, "invoice.xml", Arrays.asList(tagNames));
+    }
+
+    @Test
+    public void firstOccurrenceOfEachTagIsExtracted() throws Exception {
+        XmlFields fields = extract("<invoice><date>2019/05/01</date><line><date>2019/04/30</date></line>"
+                + "<time>2019/05/01 10:15:30</time></invoice>", "date", "time");
+
+        assertEquals("2019/05/01", fields.getDate());
+        assertEquals("2019/05/01 10:15:30", fields.get("time"));
+    }
+
+    @Test
+    public void textOfNestedElementsAndCdataIsJoined() throws Exception {
+        XmlFields fields = extract("<invoice><seller>ACME <b>Ltd</b></seller><note><![CDATA[a < b]]></note></invoice>",
+                "seller", "note");
+
+        assertEquals("ACME Ltd", fields.get("seller"));
+        assertEquals("a < b", fields.get("note"));
+    }
+
+    @Test
+    public void missingTagIsAbsentFromResult() throws Exception {
+        XmlFields fields = extract("<invoice><date>2019/05/01</date></invoice>", "date", "time");
+
+        assertTrue(fields.contains("date"));
+        assertFalse(fields.contains("time"));
+        try {
+            fields.getTime();
+            fail("Expected AWSException");
+        } catch (AWSException e) {
+            assertEquals("There is no time tag in XML message invoice.xml", e.getMessage());
+        }
+    }
+
+    @Test
+    public void readingStopsOnceAllTagsAreFound() throws Exception {
+        XmlFields fields = extract("<invoice><date>2019/05/01</date><lines><line></invoice>", "date");
+
+        assertEquals("2019/05/01", fields.getDate());
+    }
+
+    @Test
+    public void invalidXmlFailsWithAWSException() {
+        try {
+            extract("<invoice><date>2019/05/01</invoice>", "date");
+            fail("Expected AWSException");
+        } catch (AWSException e) {
+            assertTrue(e.getMessage().startsWith("Message invoice.xml is not valid XML"));
+        }
+    }
+}
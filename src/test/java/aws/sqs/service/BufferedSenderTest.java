@@ -0,0 +1,168 @@
+package aws.sqs.service;
+
+import aws.local.InMemorySQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import exception.AWSException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BufferedSenderTest {
+
+    private static final AtomicInteger QUEUES = new AtomicInteger();
+
+    private RecordingSQS sqs;
+    private String queueUrl;
+    private BufferedSender sender;
+
+    /**
+     * Records the size of every batch and fails the first {@code failures} entries it sees.
+     */
+    private static class RecordingSQS extends InMemorySQS {
+        final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        final AtomicInteger failures = new AtomicInteger();
+        volatile boolean senderFault;
+
+        @Override
+        public SendMessageBatchResult sendMessageBatch(SendMessageBatchRequest request) {
+            batchSizes.add(request.getEntries().size());
+            List<SendMessageBatchRequestEntry> accepted = new ArrayList<>();
+            List<BatchResultErrorEntry> failed = new ArrayList<>();
+            for (SendMessageBatchRequestEntry entry : request.getEntries()) {
+                if (failures.getAndDecrement() > 0) {
+                    failed.add(new BatchResultErrorEntry().withId(entry.getId())
+                            .withCode(senderFault ? "InvalidParameterValue" : "InternalError")
+                            .withMessage("injected failure").withSenderFault(senderFault));
+                } else {
+                    accepted.add(entry);
+                }
+            }
+            SendMessageBatchResult result = accepted.isEmpty() ? new SendMessageBatchResult()
+                    : super.sendMessageBatch(new SendMessageBatchRequest(request.getQueueUrl(), accepted));
+            return result.withFailed(failed);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        sqs = new RecordingSQS();
+        // each test gets its own queue, and so its own throttle guard
+        queueUrl = sqs.createQueue("buffered-" + QUEUES.incrementAndGet()).getQueueUrl();
+        sender = new BufferedSender(sqs, queueUrl, 20, 2, 3);
+    }
+
+    @After
+    public void tearDown() {
+        sender.close();
+    }
+
+    @Test
+    public void sendsInBatchesOfAtMostTen() throws Exception {
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            futures.add(sender.send("message-" + i));
+        }
+        for (CompletableFuture<String> future : futures) {
+            assertNotNull(future.get(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(25, sqs.getMessageCount(queueUrl));
+        for (int size : sqs.batchSizes) {
+            assertTrue(size <= BufferedSender.MAX_BATCH_ENTRIES);
+        }
+        assertTrue(sqs.batchSizes.size() >= 3);
+    }
+
+    @Test
+    public void flushesPartialBatchAfterLinger() throws Exception {
+        assertNotNull(sender.send("single").get(5, TimeUnit.SECONDS));
+        assertEquals(1, sqs.batchSizes.size());
+        assertEquals(1, (int) sqs.batchSizes.get(0));
+    }
+
+    @Test
+    public void splitsBatchesAtPayloadLimit() throws Exception {
+        char[] chars = new char[100 * 1024];
+        Arrays.fill(chars, 'x');
+        String body = new String(chars);
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(sender.send(body));
+        }
+        for (CompletableFuture<String> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(3, sqs.getMessageCount(queueUrl));
+        for (int size : sqs.batchSizes) {
+            assertTrue(size <= 2);
+        }
+    }
+
+    @Test
+    public void rejectsOversizedBody() throws Exception {
+        char[] chars = new char[BufferedSender.MAX_BATCH_BYTES + 1];
+        Arrays.fill(chars, 'x');
+        assertFailed(sender.send(new String(chars)));
+        assertTrue(sqs.batchSizes.isEmpty());
+    }
+
+    @Test
+    public void retriesServerSideFailures() throws Exception {
+        sqs.failures.set(2);
+        assertNotNull(sender.send("retried").get(10, TimeUnit.SECONDS));
+        assertEquals(1, sqs.getMessageCount(queueUrl));
+        assertEquals(3, sqs.batchSizes.size());
+    }
+
+    @Test
+    public void failsWhenRetriesAreExhausted() throws Exception {
+        sqs.failures.set(100);
+        assertFailed(sender.send("lost"));
+        assertEquals(4, sqs.batchSizes.size());
+    }
+
+    @Test
+    public void doesNotRetrySenderFaults() throws Exception {
+        sqs.senderFault = true;
+        sqs.failures.set(1);
+        assertFailed(sender.send("invalid"));
+        assertEquals(1, sqs.batchSizes.size());
+    }
+
+    @Test
+    public void closeSendsPendingMessagesAndRejectsNewOnes() throws Exception {
+        BufferedSender lingering = new BufferedSender(sqs, queueUrl, 60_000, 1, 3);
+        CompletableFuture<String> pending = lingering.send("pending");
+        lingering.close();
+
+        assertNotNull(pending.get(1, TimeUnit.SECONDS));
+        assertFailed(lingering.send("too late"));
+    }
+
+    private static void assertFailed(CompletableFuture<String> future) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Expected the send to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AWSException);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package aws.sqs.service;
+
+import aws.idempotency.IdempotencyStore;
+import aws.local.InMemorySQS;
+import aws.sqs.util.SQSMessageHandler;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SQSConsumerTest {
+
+    private InMemorySQS sqs;
+    private String queueUrl;
+    private SQSConsumer consumer;
+
+    @Before
+    public void setUp() {
+        sqs = new InMemorySQS();
+        queueUrl = sqs.createQueue("consumer").getQueueUrl();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (consumer != null) {
+            consumer.stop();
+        }
+    }
+
+    private SQSConsumer consumer(SQSMessageHandler handler) {
+        consumer = new SQSConsumer(sqs, queueUrl, handler);
+        consumer.setWaitTimeSeconds(1);
+        return consumer;
+    }
+
+    private void send(int count) {
+        for (int i = 0; i < count; i++) {
+            sqs.sendMessage(new SendMessageRequest(queueUrl, "message-" + i));
+        }
+    }
+
+    private void awaitEmptyQueue() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (sqs.getMessageCount(queueUrl) > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    public void handlesAndDeletesEveryMessage() throws Exception {
+        Set<String> bodies = ConcurrentHashMap.newKeySet();
+        CountDownLatch handled = new CountDownLatch(50);
+        consumer(message -> {
+            bodies.add(message.getBody());
+            handled.countDown();
+        });
+        send(50);
+
+        consumer.start();
+        assertTrue(handled.await(10, TimeUnit.SECONDS));
+        awaitEmptyQueue();
+        consumer.stop();
+
+        assertEquals(50, bodies.size());
+        assertEquals(50, consumer.getProcessedCount());
+        assertEquals(0, consumer.getFailedCount());
+        assertEquals(0, sqs.getMessageCount(queueUrl));
+    }
+
+    @Test
+    public void failedMessagesStayInQueue() throws Exception {
+        CountDownLatch handled = new CountDownLatch(4);
+        consumer(message -> {
+            handled.countDown();
+            if (message.getBody().endsWith("1")) {
+                throw new IllegalStateException("handler failure");
+            }
+        });
+        consumer.setVisibilityTimeoutSeconds(60);
+        send(4);
+
+        consumer.start();
+        assertTrue(handled.await(10, TimeUnit.SECONDS));
+        consumer.stop();
+
+        assertEquals(3, consumer.getProcessedCount());
+        assertEquals(1, consumer.getFailedCount());
+        assertEquals(1, sqs.getMessageCount(queueUrl));
+    }
+
+    @Test
+    public void limitsMessagesInFlight() throws Exception {
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        CountDownLatch handled = new CountDownLatch(30);
+        consumer((Message message) -> {
+            int now = concurrent.incrementAndGet();
+            maxConcurrent.accumulateAndGet(now, Math::max);
+            Thread.sleep(10);
+            concurrent.decrementAndGet();
+            handled.countDown();
+        });
+        consumer.setWorkerThreads(8);
+        consumer.setMaxInFlight(3);
+        send(30);
+
+        consumer.start();
+        assertTrue(handled.await(10, TimeUnit.SECONDS));
+        consumer.stop();
+
+        assertTrue("at most 3 messages in flight, saw " + maxConcurrent.get(), maxConcurrent.get() <= 3);
+    }
+
+    @Test
+    public void heartbeatKeepsSlowMessageInvisible() throws Exception {
+        CountDownLatch handled = new CountDownLatch(1);
+        AtomicInteger deliveries = new AtomicInteger();
+        consumer(message -> {
+            deliveries.incrementAndGet();
+            Thread.sleep(3_000);
+            handled.countDown();
+        });
+        consumer.setVisibilityTimeoutSeconds(2);
+        send(1);
+
+        consumer.start();
+        assertTrue(handled.await(10, TimeUnit.SECONDS));
+        awaitEmptyQueue();
+        consumer.stop();
+
+        assertEquals(1, deliveries.get());
+        assertEquals(0, sqs.getMessageCount(queueUrl));
+    }
+
+    @Test
+    public void messageInProgressElsewhereIsNotAcknowledged() throws Exception {
+        IdempotencyStore store = new IdempotencyStore(100, 3600);
+        String inProgress = sqs.sendMessage(new SendMessageRequest(queueUrl, "in-progress")).getMessageId();
+        String completed = sqs.sendMessage(new SendMessageRequest(queueUrl, "completed")).getMessageId();
+        store.claim(inProgress);
+        store.claim(completed);
+        store.complete(completed);
+
+        Set<String> bodies = ConcurrentHashMap.newKeySet();
+        consumer(message -> bodies.add(message.getBody()));
+        consumer.setIdempotencyStore(store);
+        consumer.setVisibilityTimeoutSeconds(60);
+        send(1);
+
+        consumer.start();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (sqs.getMessageCount(queueUrl) > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        consumer.stop();
+
+        assertEquals(Collections.singleton("message-0"), bodies);
+        assertEquals(1, consumer.getDuplicateCount());
+        assertEquals(1, sqs.getMessageCount(queueUrl));
+        assertEquals(IdempotencyStore.Claim.IN_PROGRESS, store.claim(inProgress));
+    }
+
+    @Test
+    public void stopIsIdempotent() throws Exception {
+        consumer(message -> { });
+        consumer.start();
+        assertTrue(consumer.isRunning());
+
+        consumer.stop();
+        consumer.stop();
+        assertFalse(consumer.isRunning());
+    }
+}
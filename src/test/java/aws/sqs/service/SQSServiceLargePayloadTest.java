@@ -0,0 +1,147 @@
+package aws.sqs.service;
+
+import aws.local.InMemoryS3;
+import aws.local.InMemorySQS;
+import aws.s3.service.S3Service;
+import aws.sqs.util.PayloadCodec;
+import aws.sqs.util.SQSMessage;
+import aws.sqs.util.SQSUtil;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import exception.AWSException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SQSServiceLargePayloadTest {
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2019, 5, 1, 10, 15, 30);
+
+    private InMemorySQS sqs;
+    private String queueUrl;
+    private SQSService sqsService;
+
+    @Before
+    public void setUp() {
+        sqs = new InMemorySQS();
+        sqs.createQueue("invoices-dlq");
+        queueUrl = sqs.createQueue("invoices").getQueueUrl();
+        sqsService = new SQSService("local", queueUrl, "invoices-dlq", sqs);
+
+        InMemoryS3 s3 = new InMemoryS3();
+        S3Service s3Service = new S3Service("local", s3);
+        sqsService.enableLargePayloads(s3Service, "payload-bucket", 1024);
+        SQSUtil.setPayloadStore(s3Service);
+    }
+
+    @After
+    public void tearDown() {
+        sqsService.disableBuffering();
+        SQSUtil.setPayloadStore(null);
+    }
+
+    private static String message(int metadataBytes, boolean compressible) throws AWSException {
+        StringBuilder value = new StringBuilder(metadataBytes);
+        long seed = 42;
+        while (value.length() < metadataBytes) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            value.append(compressible ? 'x' : (char) ('a' + (seed >>> 60)));
+        }
+        SQSMessage message = new SQSMessage();
+        message.setBucketName("invoices-bucket");
+        message.setFileName("invoice.xml");
+        message.setDate("2019/05/01");
+        message.setTime(TIME);
+        message.setMetadata(Collections.singletonMap("items", value.toString()));
+        return SQSUtil.generateMessage(message);
+    }
+
+    private Message receive() {
+        List<Message> messages = sqs.receiveMessage(new ReceiveMessageRequest(queueUrl)
+                .withMessageAttributeNames("All")).getMessages();
+        assertEquals(1, messages.size());
+        return messages.get(0);
+    }
+
+    @Test
+    public void smallBodyIsSentAsIs() throws Exception {
+        String body = message(10, true);
+        sqsService.sendMessage(body);
+
+        Message received = receive();
+        assertEquals(body, received.getBody());
+        assertTrue(received.getMessageAttributes().isEmpty());
+    }
+
+    @Test
+    public void compressedBodyIsMarkedWithEncodingAttribute() throws Exception {
+        String body = message(10_000, true);
+        sqsService.sendMessage(body);
+
+        Message received = receive();
+        assertEquals(PayloadCodec.GZIP_ENCODING,
+                received.getMessageAttributes().get(PayloadCodec.ENCODING_ATTRIBUTE).getStringValue());
+        assertTrue(received.getBody().length() < body.length());
+        assertEquals(body.length(), SQSUtil.resolveBody(received.getBody(), SQSUtil.getMessageAttributes(received)).length());
+        assertEquals(10_000, SQSUtil.parseMessage(received).getMetadata().get("items").length());
+    }
+
+    @Test
+    public void offloadedBodyCarriesExtendedClientSizeAttribute() throws Exception {
+        String body = message(500 * 1024, false);
+        sqsService.sendMessage(body);
+
+        Message received = receive();
+        assertTrue(received.getBody().contains("software.amazon.payloadoffloading.PayloadS3Pointer"));
+        assertEquals("Number", received.getMessageAttributes().get(PayloadCodec.SIZE_ATTRIBUTE).getDataType());
+        assertEquals(String.valueOf(body.length()),
+                received.getMessageAttributes().get(PayloadCodec.SIZE_ATTRIBUTE).getStringValue());
+        assertNull(received.getMessageAttributes().get(PayloadCodec.ENCODING_ATTRIBUTE));
+        assertEquals(body, SQSUtil.resolveBody(received.getBody(), SQSUtil.getMessageAttributes(received)));
+    }
+
+    @Test
+    public void bufferedSendKeepsAttributesPerEntry() throws Exception {
+        sqsService.enableBuffering(20, 1, 3);
+        String compressed = message(10_000, true);
+        String offloaded = message(500 * 1024, false);
+        String plain = message(10, true);
+        sqsService.sendMessageBuffered(compressed).get(5, TimeUnit.SECONDS);
+        sqsService.sendMessageBuffered(offloaded).get(5, TimeUnit.SECONDS);
+        sqsService.sendMessageBuffered(plain).get(5, TimeUnit.SECONDS);
+
+        Map<String, Message> byBody = new HashMap<>();
+        List<Message> messages = sqs.receiveMessage(new ReceiveMessageRequest(queueUrl)
+                .withMaxNumberOfMessages(10).withMessageAttributeNames("All")).getMessages();
+        assertEquals(3, messages.size());
+        for (Message message : messages) {
+            byBody.put(SQSUtil.resolveBody(message.getBody(), SQSUtil.getMessageAttributes(message)), message);
+        }
+        assertTrue(byBody.get(compressed).getMessageAttributes().containsKey(PayloadCodec.ENCODING_ATTRIBUTE));
+        assertTrue(byBody.get(offloaded).getMessageAttributes().containsKey(PayloadCodec.SIZE_ATTRIBUTE));
+        assertTrue(byBody.get(plain).getMessageAttributes().isEmpty());
+    }
+
+    @Test
+    public void bodyIsNotDecodedWithoutAttributes() throws Exception {
+        String gzipLooking = "H4sIAAAAAAAA";
+        assertEquals(gzipLooking, SQSUtil.resolveBody(gzipLooking, Collections.emptyMap()));
+
+        String pointer = PayloadCodec.createPointer("payload-bucket", "sqs-payloads/missing");
+        assertEquals(pointer, SQSUtil.resolveBody(pointer, Collections.emptyMap()));
+        assertFalse(PayloadCodec.isPointer(pointer, Collections.emptyMap()));
+        assertTrue(PayloadCodec.isPointer(pointer, Collections.singletonMap(PayloadCodec.LEGACY_SIZE_ATTRIBUTE, "10")));
+    }
+}